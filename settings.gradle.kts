@@ -1 +1 @@
-include(":termux-api", ":termux-app", ":terminal-emulator", ":terminal-view", ":termux-style", ":termux-widget")
+include(":termux-api", ":termux-app", ":terminal-emulator", ":terminal-emulator-core", ":terminal-view", ":termux-style", ":termux-widget")
@@ -3,59 +3,63 @@ package com.termux.terminal;
 import java.util.HashMap;
 import java.util.Map;
 
-import static android.view.KeyEvent.KEYCODE_BACK;
-import static android.view.KeyEvent.KEYCODE_BREAK;
-import static android.view.KeyEvent.KEYCODE_DEL;
-import static android.view.KeyEvent.KEYCODE_DPAD_CENTER;
-import static android.view.KeyEvent.KEYCODE_DPAD_DOWN;
-import static android.view.KeyEvent.KEYCODE_DPAD_LEFT;
-import static android.view.KeyEvent.KEYCODE_DPAD_RIGHT;
-import static android.view.KeyEvent.KEYCODE_DPAD_UP;
-import static android.view.KeyEvent.KEYCODE_ENTER;
-import static android.view.KeyEvent.KEYCODE_ESCAPE;
-import static android.view.KeyEvent.KEYCODE_F1;
-import static android.view.KeyEvent.KEYCODE_F10;
-import static android.view.KeyEvent.KEYCODE_F11;
-import static android.view.KeyEvent.KEYCODE_F12;
-import static android.view.KeyEvent.KEYCODE_F2;
-import static android.view.KeyEvent.KEYCODE_F3;
-import static android.view.KeyEvent.KEYCODE_F4;
-import static android.view.KeyEvent.KEYCODE_F5;
-import static android.view.KeyEvent.KEYCODE_F6;
-import static android.view.KeyEvent.KEYCODE_F7;
-import static android.view.KeyEvent.KEYCODE_F8;
-import static android.view.KeyEvent.KEYCODE_F9;
-import static android.view.KeyEvent.KEYCODE_FORWARD_DEL;
-import static android.view.KeyEvent.KEYCODE_INSERT;
-import static android.view.KeyEvent.KEYCODE_MOVE_END;
-import static android.view.KeyEvent.KEYCODE_MOVE_HOME;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_0;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_1;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_2;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_3;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_4;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_5;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_6;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_7;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_8;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_9;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_ADD;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_COMMA;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_DIVIDE;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_DOT;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_ENTER;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_EQUALS;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_MULTIPLY;
-import static android.view.KeyEvent.KEYCODE_NUMPAD_SUBTRACT;
-import static android.view.KeyEvent.KEYCODE_NUM_LOCK;
-import static android.view.KeyEvent.KEYCODE_PAGE_DOWN;
-import static android.view.KeyEvent.KEYCODE_PAGE_UP;
-import static android.view.KeyEvent.KEYCODE_SPACE;
-import static android.view.KeyEvent.KEYCODE_SYSRQ;
-import static android.view.KeyEvent.KEYCODE_TAB;
-
 public final class KeyHandler {
 
+    /**
+     * The key codes of {@code android.view.KeyEvent} handled here, which are fixed by the Android API, declared here so
+     * that the emulator does not depend on Android.
+     */
+    static final int KEYCODE_BACK = 4;
+    static final int KEYCODE_DPAD_UP = 19;
+    static final int KEYCODE_DPAD_DOWN = 20;
+    static final int KEYCODE_DPAD_LEFT = 21;
+    static final int KEYCODE_DPAD_RIGHT = 22;
+    static final int KEYCODE_DPAD_CENTER = 23;
+    static final int KEYCODE_TAB = 61;
+    static final int KEYCODE_SPACE = 62;
+    static final int KEYCODE_ENTER = 66;
+    static final int KEYCODE_DEL = 67;
+    static final int KEYCODE_PAGE_UP = 92;
+    static final int KEYCODE_PAGE_DOWN = 93;
+    static final int KEYCODE_ESCAPE = 111;
+    static final int KEYCODE_FORWARD_DEL = 112;
+    static final int KEYCODE_SYSRQ = 120;
+    static final int KEYCODE_BREAK = 121;
+    static final int KEYCODE_MOVE_HOME = 122;
+    static final int KEYCODE_MOVE_END = 123;
+    static final int KEYCODE_INSERT = 124;
+    static final int KEYCODE_F1 = 131;
+    static final int KEYCODE_F2 = 132;
+    static final int KEYCODE_F3 = 133;
+    static final int KEYCODE_F4 = 134;
+    static final int KEYCODE_F5 = 135;
+    static final int KEYCODE_F6 = 136;
+    static final int KEYCODE_F7 = 137;
+    static final int KEYCODE_F8 = 138;
+    static final int KEYCODE_F9 = 139;
+    static final int KEYCODE_F10 = 140;
+    static final int KEYCODE_F11 = 141;
+    static final int KEYCODE_F12 = 142;
+    static final int KEYCODE_NUM_LOCK = 143;
+    static final int KEYCODE_NUMPAD_0 = 144;
+    static final int KEYCODE_NUMPAD_1 = 145;
+    static final int KEYCODE_NUMPAD_2 = 146;
+    static final int KEYCODE_NUMPAD_3 = 147;
+    static final int KEYCODE_NUMPAD_4 = 148;
+    static final int KEYCODE_NUMPAD_5 = 149;
+    static final int KEYCODE_NUMPAD_6 = 150;
+    static final int KEYCODE_NUMPAD_7 = 151;
+    static final int KEYCODE_NUMPAD_8 = 152;
+    static final int KEYCODE_NUMPAD_9 = 153;
+    static final int KEYCODE_NUMPAD_DIVIDE = 154;
+    static final int KEYCODE_NUMPAD_MULTIPLY = 155;
+    static final int KEYCODE_NUMPAD_SUBTRACT = 156;
+    static final int KEYCODE_NUMPAD_ADD = 157;
+    static final int KEYCODE_NUMPAD_DOT = 158;
+    static final int KEYCODE_NUMPAD_COMMA = 159;
+    static final int KEYCODE_NUMPAD_ENTER = 160;
+    static final int KEYCODE_NUMPAD_EQUALS = 161;
+
     public static final int KEYMOD_ALT = 0x80000000;
     public static final int KEYMOD_CTRL = 0x40000000;
     public static final int KEYMOD_SHIFT = 0x20000000;
@@ -0,0 +1,307 @@
+package com.termux.terminal;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decoder of commands of the kitty graphics protocol, https://sw.kovidgoyal.net/kitty/graphics-protocol/, sent as
+ * "APC G control-data ; payload ST" where the control data is comma separated key=value pairs and the payload is base64.
+ * <p>
+ * The code points after the G are fed one at a time as they are received, and the payload is decoded into pixels as it
+ * arrives, so that neither a command nor an image sent in chunks of several commands (m=1) need to be collected first.
+ * Images may be transmitted directly (t=d) as 24 or 32 bit pixels (f=24 or f=32), optionally zlib compressed (o=z).
+ * PNG images and transmission through files or shared memory are not supported.
+ */
+final class KittyGraphicsDecoder {
+
+    private static final int STATE_KEY = 0;
+    private static final int STATE_VALUE = 1;
+    private static final int STATE_PAYLOAD = 2;
+
+    /** The most bytes an image may take, as it is not kept if larger than the budget of the image cache. */
+    private int mMaxBytes;
+
+    // The control data of the current transfer, from its first command:
+    private char mAction;
+    private int mFormat;
+    private char mMedium;
+    private int mWidth, mHeight;
+    private int mId;
+    private boolean mCompressed;
+    private int mQuiet;
+    private int mCursorMovement;
+    private char mDelete;
+    private boolean mMore;
+    /** If the current command continues a transfer started by an earlier command with m=1. */
+    private boolean mContinuation;
+    private String mError;
+
+    private int mState;
+    private int mKey;
+    private int mNumberValue;
+    private int mCharValue;
+
+    private int[] mPixels;
+    private int mBytesPerPixel;
+    /** The number of bytes of pixel data decoded. */
+    private int mDataIndex;
+    private int mBase64Quantum, mBase64Chars;
+    private Inflater mInflater;
+    private byte[] mCompressedData, mInflatedData;
+    private int mCompressedLength;
+
+    /** Start a command, after the "APC G" introducing it, where images may take at most maxBytes. */
+    void startCommand(int maxBytes) {
+        mMaxBytes = maxBytes;
+        mState = STATE_KEY;
+        mKey = 0;
+        mMore = false;
+        if (mContinuation) return;
+        mAction = 't';
+        mFormat = 32;
+        mMedium = 'd';
+        mWidth = mHeight = mId = mQuiet = mCursorMovement = 0;
+        mCompressed = false;
+        mDelete = 'a';
+        mError = null;
+        mPixels = null;
+        mDataIndex = mBase64Quantum = mBase64Chars = mCompressedLength = 0;
+    }
+
+    void accept(int c) {
+        switch (mState) {
+            case STATE_KEY:
+                if (c == '=') {
+                    mState = STATE_VALUE;
+                    mNumberValue = 0;
+                    mCharValue = 0;
+                } else if (c == ';') {
+                    startPayload();
+                } else if (c != ',') {
+                    mKey = c;
+                }
+                break;
+            case STATE_VALUE:
+                if (c == ',' || c == ';') {
+                    applyKey();
+                    mState = STATE_KEY;
+                    mKey = 0;
+                    if (c == ';') startPayload();
+                } else if (c >= '0' && c <= '9') {
+                    mNumberValue = (int) Math.min(mNumberValue * 10L + (c - '0'), Integer.MAX_VALUE);
+                } else {
+                    mCharValue = c;
+                }
+                break;
+            case STATE_PAYLOAD:
+                acceptBase64(c);
+                break;
+        }
+    }
+
+    /** End the current command, returning true if it ends the transfer and false if more commands follow (m=1). */
+    boolean endCommand() {
+        if (mState == STATE_VALUE) applyKey();
+        if (mState != STATE_PAYLOAD) startPayload();
+        if (mMore && mError == null) {
+            mContinuation = true;
+            return false;
+        }
+        mContinuation = false;
+        if (mPixels != null && mError == null) {
+            flushBase64();
+            if (mCompressed) inflate(true);
+            if (mError == null && mDataIndex != mPixels.length * mBytesPerPixel)
+                mError = "ENODATA:Insufficient image data: " + mDataIndex + " < " + mPixels.length * mBytesPerPixel;
+        }
+        if (mInflater != null) {
+            mInflater.end();
+            mInflater = null;
+        }
+        return true;
+    }
+
+    char getAction() {
+        return mAction;
+    }
+
+    int getId() {
+        return mId;
+    }
+
+    int getQuiet() {
+        return mQuiet;
+    }
+
+    /** The C key, which is 1 if the cursor should not be moved after placing the image. */
+    int getCursorMovement() {
+        return mCursorMovement;
+    }
+
+    /** The d key of a delete action. */
+    char getDelete() {
+        return mDelete;
+    }
+
+    /** The error of the last transfer as "ECODE:message", or null if none. */
+    String getError() {
+        return mError;
+    }
+
+    /** The image decoded by the last transfer, laid out with the specified cell size, or null if none. */
+    TerminalImage takeImage(int cellWidthPixels, int cellHeightPixels) {
+        if (mPixels == null || mError != null) return null;
+        TerminalImage image = new TerminalImage(mWidth, mHeight, mPixels, Math.max(1, cellWidthPixels), Math.max(1, cellHeightPixels));
+        mPixels = null;
+        return image;
+    }
+
+    private void applyKey() {
+        final boolean number = mCharValue == 0;
+        if (mContinuation) {
+            // Continuing commands should only have these:
+            if (mKey == 'm') mMore = mNumberValue == 1;
+            else if (mKey == 'q') mQuiet = mNumberValue;
+            return;
+        }
+        switch (mKey) {
+            case 'a':
+                mAction = (char) mCharValue;
+                break;
+            case 'f':
+                mFormat = mNumberValue;
+                break;
+            case 't':
+                mMedium = (char) mCharValue;
+                break;
+            case 's':
+                mWidth = mNumberValue;
+                break;
+            case 'v':
+                mHeight = mNumberValue;
+                break;
+            case 'i':
+                mId = mNumberValue;
+                break;
+            case 'm':
+                mMore = mNumberValue == 1;
+                break;
+            case 'o':
+                mCompressed = mCharValue == 'z';
+                break;
+            case 'q':
+                mQuiet = mNumberValue;
+                break;
+            case 'C':
+                mCursorMovement = mNumberValue;
+                break;
+            case 'd':
+                if (!number) mDelete = (char) mCharValue;
+                break;
+        }
+    }
+
+    private void startPayload() {
+        mState = STATE_PAYLOAD;
+        if (mContinuation || (mAction != 't' && mAction != 'T' && mAction != 'q')) return;
+        if (mFormat != 24 && mFormat != 32) {
+            mError = "ENOTSUPPORTED:Unsupported format: " + mFormat;
+        } else if (mMedium != 'd') {
+            mError = "ENOTSUPPORTED:Unsupported transmission medium: " + mMedium;
+        } else if (mWidth < 1 || mHeight < 1) {
+            mError = "EINVAL:Missing image size";
+        } else if (4L * mWidth * mHeight > mMaxBytes) {
+            mError = "EFBIG:Image too large: " + mWidth + "x" + mHeight;
+        } else {
+            mPixels = new int[mWidth * mHeight];
+            mBytesPerPixel = mFormat / 8;
+            if (mCompressed) {
+                mInflater = new Inflater();
+                if (mCompressedData == null) {
+                    mCompressedData = new byte[4096];
+                    mInflatedData = new byte[4096];
+                }
+            }
+        }
+    }
+
+    private void acceptBase64(int c) {
+        if (mPixels == null || mError != null) return;
+        final int value;
+        if (c >= 'A' && c <= 'Z') value = c - 'A';
+        else if (c >= 'a' && c <= 'z') value = c - 'a' + 26;
+        else if (c >= '0' && c <= '9') value = c - '0' + 52;
+        else if (c == '+') value = 62;
+        else if (c == '/') value = 63;
+        else {
+            if (c == '=') flushBase64();
+            return;
+        }
+        mBase64Quantum = (mBase64Quantum << 6) | value;
+        if (++mBase64Chars == 4) {
+            acceptByte(mBase64Quantum >> 16);
+            acceptByte(mBase64Quantum >> 8);
+            acceptByte(mBase64Quantum);
+            mBase64Quantum = mBase64Chars = 0;
+        }
+    }
+
+    /** Decode the bytes of an unpadded or padded last base64 quantum. */
+    private void flushBase64() {
+        if (mBase64Chars == 2) {
+            acceptByte(mBase64Quantum >> 4);
+        } else if (mBase64Chars == 3) {
+            acceptByte(mBase64Quantum >> 10);
+            acceptByte(mBase64Quantum >> 2);
+        }
+        mBase64Quantum = mBase64Chars = 0;
+    }
+
+    private void acceptByte(int b) {
+        if (mCompressed) {
+            mCompressedData[mCompressedLength++] = (byte) b;
+            if (mCompressedLength == mCompressedData.length) inflate(false);
+        } else {
+            acceptPixelData(b & 0xFF);
+        }
+    }
+
+    private void inflate(boolean finish) {
+        if (mError != null) return;
+        mInflater.setInput(mCompressedData, 0, mCompressedLength);
+        mCompressedLength = 0;
+        try {
+            while (!mInflater.needsInput() && !mInflater.finished()) {
+                final int count = mInflater.inflate(mInflatedData);
+                for (int i = 0; i < count; i++) acceptPixelData(mInflatedData[i] & 0xFF);
+                if (count == 0 && mInflater.needsDictionary()) throw new DataFormatException("Dictionary needed");
+            }
+        } catch (DataFormatException e) {
+            mError = "EINVAL:Invalid compressed data";
+        }
+        if (finish && mError == null && !mInflater.finished()) mError = "EINVAL:Truncated compressed data";
+    }
+
+    private void acceptPixelData(int b) {
+        if (mDataIndex == mPixels.length * mBytesPerPixel) {
+            if (mError == null) mError = "EINVAL:More image data than the image size";
+            return;
+        }
+        final int pixel = mDataIndex / mBytesPerPixel;
+        switch (mDataIndex++ % mBytesPerPixel) {
+            case 0:
+                mPixels[pixel] = 0xFF000000 | (b << 16);
+                break;
+            case 1:
+                mPixels[pixel] |= b << 8;
+                break;
+            case 2:
+                mPixels[pixel] |= b;
+                break;
+            case 3:
+                mPixels[pixel] = (mPixels[pixel] & 0x00FFFFFF) | (b << 24);
+                break;
+        }
+    }
+
+}
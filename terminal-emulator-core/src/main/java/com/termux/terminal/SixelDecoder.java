@@ -0,0 +1,223 @@
+package com.termux.terminal;
+
+import java.util.Arrays;
+
+/**
+ * Decoder of sixel images, fed the data of a "DCS P1 ; P2 ; P3 q ... ST" sequence one code point at a time as it is
+ * received, so that the data need not be collected first. See https://vt100.net/docs/vt3xx-gp/chapter14.html.
+ * <p>
+ * Pixels are drawn into an ARGB canvas which grows as needed, up to a maximum number of bytes beyond which the rest of the
+ * image is ignored. The pixel aspect ratio is taken to be 1:1.
+ */
+final class SixelDecoder {
+
+    /** The VT340 default colors of the first 16 color registers, as RGB percentages. */
+    private static final int[] DEFAULT_COLORS_PERCENT = {
+        0, 0, 0, 20, 20, 80, 80, 13, 13, 20, 80, 20, 80, 20, 80, 20, 80, 80, 80, 80, 20, 53, 53, 53,
+        26, 26, 26, 33, 33, 60, 60, 26, 26, 33, 60, 33, 60, 33, 60, 33, 60, 60, 60, 60, 33, 80, 80, 80};
+
+    private static final int MAX_PARAMETERS = 5;
+
+    private final int[] mPalette = new int[256];
+    private final int mBackgroundColor;
+    private final int mMaxBytes;
+    /** The most pixels fitting in {@link #mMaxBytes}, beyond which positions and repeat counts need not go. */
+    private final int mMaxPixels;
+
+    private int[] mPixels = new int[0];
+    /** The size of {@link #mPixels}. */
+    private int mCanvasWidth, mCanvasHeight;
+    /** The size of the image, from the raster attributes or as far as drawn. */
+    private int mWidth, mHeight;
+    private boolean mTooLarge;
+
+    private int mX, mY;
+    private int mColor;
+    /** The number of times to draw the next sixel, from a Graphics Repeat Introducer. */
+    private int mRepeat = 1;
+
+    /** The introducer of the control function whose parameters are being read, or 0 if none. */
+    private int mFunction;
+    private final int[] mParameters = new int[MAX_PARAMETERS];
+    private int mParameterIndex;
+
+    /**
+     * Create a decoder for an image whose pixels not drawn are transparent if backgroundColor is 0, and otherwise of that
+     * color, which is what the P2 parameter of the sequence selects.
+     */
+    SixelDecoder(int backgroundColor, int maxBytes) {
+        mBackgroundColor = backgroundColor;
+        mMaxBytes = maxBytes;
+        mMaxPixels = maxBytes / 4;
+        for (int i = 0; i < 16; i++)
+            mPalette[i] = rgbFromPercent(DEFAULT_COLORS_PERCENT[3 * i], DEFAULT_COLORS_PERCENT[3 * i + 1], DEFAULT_COLORS_PERCENT[3 * i + 2]);
+        Arrays.fill(mPalette, 16, mPalette.length, 0xFF000000);
+        mColor = mPalette[0];
+    }
+
+    void accept(int c) {
+        if (mFunction != 0) {
+            if (c >= '0' && c <= '9') {
+                final int value = mParameters[mParameterIndex];
+                // Saturate instead of overflowing:
+                mParameters[mParameterIndex] = Math.min(((value < 0) ? 0 : value * 10) + (c - '0'), 100_000);
+                return;
+            } else if (c == ';') {
+                if (mParameterIndex < MAX_PARAMETERS - 1) mParameterIndex++;
+                return;
+            }
+            endFunction();
+        }
+
+        if (c >= '?' && c <= '~') {
+            draw(c - '?', mRepeat);
+            mRepeat = 1;
+        } else {
+            mRepeat = 1;
+            switch (c) {
+                case '!': // Graphics Repeat Introducer: "! Pn sixel".
+                case '#': // Color Introducer: "# Pc" to select a color, "# Pc ; Pu ; Px ; Py ; Pz" to define it.
+                case '"': // Raster Attributes: "\" Pan ; Pad ; Ph ; Pv".
+                    mFunction = c;
+                    Arrays.fill(mParameters, -1);
+                    mParameterIndex = 0;
+                    break;
+                case '$': // Graphics Carriage Return.
+                    mX = 0;
+                    break;
+                case '-': // Graphics New Line.
+                    mX = 0;
+                    mY = Math.min(mY + 6, mMaxPixels);
+                    break;
+                default:
+                    // Ignore anything else, such as line breaks inserted into the data.
+                    break;
+            }
+        }
+    }
+
+    private void endFunction() {
+        final int function = mFunction;
+        mFunction = 0;
+        switch (function) {
+            case '!':
+                mRepeat = Math.min(Math.max(1, mParameters[0]), mMaxPixels);
+                break;
+            case '#':
+                final int register = Math.max(0, mParameters[0]) % mPalette.length;
+                if (mParameterIndex >= 4) {
+                    final int x = Math.max(0, mParameters[2]), y = Math.max(0, mParameters[3]), z = Math.max(0, mParameters[4]);
+                    if (mParameters[1] == 1) {
+                        mPalette[register] = rgbFromHls(x, y, z);
+                    } else if (mParameters[1] == 2) {
+                        mPalette[register] = rgbFromPercent(x, y, z);
+                    }
+                }
+                mColor = mPalette[register];
+                break;
+            case '"':
+                if (mParameters[2] > 0 && mParameters[3] > 0) {
+                    ensureCanvas(mParameters[2], mParameters[3]);
+                    if (!mTooLarge) {
+                        mWidth = Math.max(mWidth, mParameters[2]);
+                        mHeight = Math.max(mHeight, mParameters[3]);
+                    }
+                }
+                break;
+        }
+    }
+
+    private void draw(int sixel, int count) {
+        if (sixel != 0 && !mTooLarge) {
+            ensureCanvas(mX + count, mY + 6);
+            if (!mTooLarge) {
+                for (int bit = 0; bit < 6; bit++) {
+                    if ((sixel & (1 << bit)) == 0) continue;
+                    final int offset = (mY + bit) * mCanvasWidth + mX;
+                    Arrays.fill(mPixels, offset, offset + count, mColor);
+                    mHeight = Math.max(mHeight, mY + bit + 1);
+                }
+                mWidth = Math.max(mWidth, mX + count);
+            }
+        }
+        mX = Math.min(mX + count, mMaxPixels);
+    }
+
+    /** Grow the canvas to at least the specified size, or mark the image as too large if that would exceed the maximum. */
+    private void ensureCanvas(int width, int height) {
+        if (width <= mCanvasWidth && height <= mCanvasHeight) return;
+        // The canvas never shrinks in either direction, so a wide band followed by many narrow ones takes the product:
+        width = Math.max(width, mCanvasWidth);
+        height = Math.max(height, mCanvasHeight);
+        if ((long) width * height * 4 > mMaxBytes) {
+            mTooLarge = true;
+            return;
+        }
+        final int newWidth = Math.max(width, Math.min(2 * mCanvasWidth, width + 1024));
+        final int newHeight = Math.max(height, Math.min(2 * mCanvasHeight, height + 1024));
+        if ((long) newWidth * newHeight * 4 > mMaxBytes) {
+            growCanvas(width, height);
+        } else {
+            growCanvas(newWidth, newHeight);
+        }
+    }
+
+    private void growCanvas(int width, int height) {
+        final int[] pixels = new int[width * height];
+        for (int y = 0; y < mCanvasHeight; y++)
+            System.arraycopy(mPixels, y * mCanvasWidth, pixels, y * width, mCanvasWidth);
+        mPixels = pixels;
+        mCanvasWidth = width;
+        mCanvasHeight = height;
+    }
+
+    /** Whether part of the image was beyond the maximum size and ignored. */
+    boolean isTooLarge() {
+        return mTooLarge;
+    }
+
+    /** The decoded image laid out with the specified cell size, or null if nothing was drawn. */
+    TerminalImage finish(int cellWidthPixels, int cellHeightPixels) {
+        if (mFunction != 0) endFunction();
+        if (mWidth == 0 || mHeight == 0) return null;
+        final int[] pixels = new int[mWidth * mHeight];
+        for (int y = 0; y < mHeight; y++)
+            System.arraycopy(mPixels, y * mCanvasWidth, pixels, y * mWidth, mWidth);
+        if (mBackgroundColor != 0) {
+            for (int i = 0; i < pixels.length; i++)
+                if (pixels[i] == 0) pixels[i] = mBackgroundColor;
+        }
+        mPixels = null;
+        return new TerminalImage(mWidth, mHeight, pixels, Math.max(1, cellWidthPixels), Math.max(1, cellHeightPixels));
+    }
+
+    private static int rgbFromPercent(int r, int g, int b) {
+        return 0xFF000000 | (percentToByte(r) << 16) | (percentToByte(g) << 8) | percentToByte(b);
+    }
+
+    private static int percentToByte(int percent) {
+        return (Math.min(percent, 100) * 255 + 50) / 100;
+    }
+
+    /** Convert a sixel HLS color, where blue is at a hue of 0 degrees, to RGB. */
+    private static int rgbFromHls(int hue, int lightness, int saturation) {
+        final double l = Math.min(lightness, 100) / 100.0, s = Math.min(saturation, 100) / 100.0;
+        final double h = ((hue + 240) % 360) / 360.0;
+        if (s == 0) return rgbFromPercent(lightness, lightness, lightness);
+        final double q = (l < 0.5) ? l * (1 + s) : l + s - l * s;
+        final double p = 2 * l - q;
+        return 0xFF000000 | (hueToByte(p, q, h + 1 / 3.0) << 16) | (hueToByte(p, q, h) << 8) | hueToByte(p, q, h - 1 / 3.0);
+    }
+
+    private static int hueToByte(double p, double q, double t) {
+        if (t < 0) t += 1;
+        if (t > 1) t -= 1;
+        final double value;
+        if (t < 1 / 6.0) value = p + (q - p) * 6 * t;
+        else if (t < 1 / 2.0) value = q;
+        else if (t < 2 / 3.0) value = p + (q - p) * (2 / 3.0 - t) * 6;
+        else value = p;
+        return (int) Math.round(value * 255);
+    }
+
+}
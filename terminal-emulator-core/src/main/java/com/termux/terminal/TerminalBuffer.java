@@ -1,12 +1,20 @@
 package com.termux.terminal;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
  * A circular buffer of {@link TerminalRow}:s which keeps notes about what is visible on a logical screen and the scroll
  * history.
  * <p>
- * See {@link #externalToInternalRow(int)} for how to map from logical screen rows to array indices.
+ * See {@link #externalToInternalRow(int)} for how to map from logical screen rows to array indices. With a
+ * {@link TranscriptArchive}, rows scrolling out of the circular buffer are kept there, above the rows in memory.
  */
 public final class TerminalBuffer {
 
@@ -19,6 +27,27 @@ public final class TerminalBuffer {
     private int mActiveTranscriptRows = 0;
     /** The index in the circular buffer where the visible screen starts. */
     private int mScreenFirstRow = 0;
+    /**
+     * The number of rows which have scrolled into the transcript, and a count of the times the transcript has otherwise
+     * changed, by being cleared, resized or restored. Rows in the transcript are not changed after scrolling into it, so
+     * while the generation is the same, the rows added since an earlier count are the newest rows of the transcript.
+     */
+    private long mTranscriptRowsAdded;
+    private int mTranscriptGeneration;
+    /** Where rows are kept when scrolling out of the transcript, or null to drop them. */
+    private TranscriptArchive mArchive;
+    /** Where rows scrolling into the transcript are interned, shared with other buffers, or null to keep them as is. */
+    private TranscriptRowInterner mInterner;
+    /** The id of this buffer with {@link #mInterner}, see {@link TerminalRow#mInternedBy}. */
+    private int mInternerBufferId;
+    /**
+     * Rows dropped by {@link #clearTranscript()} or replaced by interned rows, taken by {@link #newRow(long)} before
+     * allocating new ones. Only the first {@link #mFreeRowCount} are set.
+     */
+    private TerminalRow[] mFreeRows = new TerminalRow[0];
+    private int mFreeRowCount;
+    /** See {@link #getAllocatedRowCount()} and {@link #getReusedRowCount()}. */
+    private int mAllocatedRowCount, mReusedRowCount;
 
     /**
      * Create a transcript screen.
@@ -58,7 +87,37 @@ public final class TerminalBuffer {
     }
 
     public String getSelectedText(int selX1, int selY1, int selX2, int selY2, boolean joinBackLines, boolean joinFullLines) {
-        final StringBuilder builder = new StringBuilder();
+        final StringWriter writer = new StringWriter();
+        try {
+            writeSelectedText(writer, selX1, selY1, selX2, selY2, joinBackLines, joinFullLines);
+        } catch (IOException e) {
+            // Not thrown by a StringWriter.
+            throw new AssertionError(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Write the text of the transcript and screen as one of {@link #getTranscriptText()},
+     * {@link #getTranscriptTextWithoutJoinedLines()} or {@link #getTranscriptTextWithFullLinesJoined()} would return
+     * it, but a row at a time instead of building a string of it all.
+     */
+    public void writeTranscriptText(Writer writer, boolean joinBackLines, boolean joinFullLines) throws IOException {
+        writeSelectedText(new TrimmingWriter(writer), 0, -getActiveTranscriptRows(), mColumns, mScreenRows, joinBackLines, joinFullLines);
+    }
+
+    /**
+     * Write the text of the transcript and screen as by {@link #writeTranscriptText(Writer, boolean, boolean)}, encoded
+     * as UTF-8. The stream is flushed but not closed.
+     */
+    public void writeTranscriptText(OutputStream out, boolean joinBackLines, boolean joinFullLines) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeTranscriptText(writer, joinBackLines, joinFullLines);
+        writer.flush();
+    }
+
+    /** Write the text which {@link #getSelectedText(int, int, int, int, boolean, boolean)} returns, a row at a time. */
+    public void writeSelectedText(Writer writer, int selX1, int selY1, int selX2, int selY2, boolean joinBackLines, boolean joinFullLines) throws IOException {
         final int columns = mColumns;
 
         if (selY1 < -getActiveTranscriptRows()) selY1 = -getActiveTranscriptRows();
@@ -73,7 +132,7 @@ public final class TerminalBuffer {
             } else {
                 x2 = columns;
             }
-            TerminalRow lineObject = mLines[externalToInternalRow(row)];
+            TerminalRow lineObject = getRow(row);
             int x1Index = lineObject.findStartOfColumn(x1);
             int x2Index = (x2 < mColumns) ? lineObject.findStartOfColumn(x2) : lineObject.getSpaceUsed();
             if (x2Index == x1Index) {
@@ -83,7 +142,7 @@ public final class TerminalBuffer {
             char[] line = lineObject.mText;
             int lastPrintingCharIndex = -1;
             int i;
-            boolean rowLineWrap = getLineWrap(row);
+            boolean rowLineWrap = lineObject.mLineWrap;
             if (rowLineWrap && x2 == columns) {
                 // If the line was wrapped, we shouldn't lose trailing space:
                 lastPrintingCharIndex = x2Index - 1;
@@ -96,13 +155,59 @@ public final class TerminalBuffer {
 
             int len = lastPrintingCharIndex - x1Index + 1;
             if (lastPrintingCharIndex != -1 && len > 0)
-                builder.append(line, x1Index, len);
+                writer.write(line, x1Index, len);
 
             boolean lineFillsWidth = lastPrintingCharIndex == x2Index - 1;
             if ((!joinBackLines || !rowLineWrap) && (!joinFullLines || !lineFillsWidth)
-                && row < selY2 && row < mScreenRows - 1) builder.append('\n');
+                && row < selY2 && row < mScreenRows - 1) writer.write('\n');
+        }
+    }
+
+    /**
+     * Passes on what is written except for leading and trailing whitespace, as {@link String#trim()}. Whitespace is held
+     * back until followed by something else, so only trailing whitespace is kept in memory.
+     */
+    private static final class TrimmingWriter extends Writer {
+        private final Writer mOut;
+        private final StringBuilder mPendingWhitespace = new StringBuilder();
+        private boolean mStarted;
+
+        TrimmingWriter(Writer out) {
+            mOut = out;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            final int end = offset + length;
+            int start = offset;
+            for (int i = offset; i < end; i++) {
+                if (chars[i] > ' ') continue;
+                // Write what precedes this whitespace, after any whitespace before that:
+                if (i > start) writeNonWhitespace(chars, start, i);
+                if (mStarted) mPendingWhitespace.append(chars[i]);
+                start = i + 1;
+            }
+            if (end > start) writeNonWhitespace(chars, start, end);
+        }
+
+        private void writeNonWhitespace(char[] chars, int start, int end) throws IOException {
+            if (mPendingWhitespace.length() > 0) {
+                mOut.append(mPendingWhitespace);
+                mPendingWhitespace.setLength(0);
+            }
+            mOut.write(chars, start, end - start);
+            mStarted = true;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mOut.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mOut.close();
         }
-        return builder.toString();
     }
 
     public String getWordAtLocation(int x, int y) {
@@ -144,12 +249,92 @@ public final class TerminalBuffer {
         return text.substring(x1 + 1, x2);
     }
 
+    /** The number of rows in the transcript, including those in the {@link TranscriptArchive} if there is one. */
     public int getActiveTranscriptRows() {
-        return mActiveTranscriptRows;
+        return (mArchive == null) ? mActiveTranscriptRows : (mActiveTranscriptRows + mArchive.getRowCount());
     }
 
     public int getActiveRows() {
-        return mActiveTranscriptRows + mScreenRows;
+        return getActiveTranscriptRows() + mScreenRows;
+    }
+
+    /**
+     * Keep rows scrolling out of the transcript in an archive, or drop them if null. The archive is cleared along with
+     * the transcript, but not closed by this buffer.
+     */
+    public void setTranscriptArchive(TranscriptArchive archive) {
+        mArchive = archive;
+    }
+
+    public TranscriptArchive getTranscriptArchive() {
+        return mArchive;
+    }
+
+    /**
+     * Intern rows scrolling into the transcript, so that identical rows are kept once by all buffers with the same
+     * interner, or stop interning them if null. Rows already interned stay shared.
+     */
+    public void setTranscriptRowInterner(TranscriptRowInterner interner) {
+        mInterner = interner;
+        mInternerBufferId = (interner == null) ? 0 : interner.newBufferId();
+    }
+
+    /**
+     * An estimate in bytes of the memory saved by sharing rows through a {@link TranscriptRowInterner}, being the size
+     * of the rows in the transcript which were interned by other buffers.
+     */
+    public long getSharedTranscriptMemory() {
+        long size = 0;
+        for (int row = -mActiveTranscriptRows; row < 0; row++) {
+            final TerminalRow line = mLines[externalToInternalRow(row)];
+            if (line != null && line.mInternedBy != 0 && line.mInternedBy != mInternerBufferId)
+                size += line.getApproximateMemoryUsage();
+        }
+        return size;
+    }
+
+    /** The number of rows of the transcript kept in memory, not counting those in the {@link TranscriptArchive}. */
+    int getTranscriptRowsInMemory() {
+        return mActiveTranscriptRows;
+    }
+
+    /** See {@link #mTranscriptRowsAdded}. */
+    long getTranscriptRowsAdded() {
+        return mTranscriptRowsAdded;
+    }
+
+    /** See {@link #mTranscriptGeneration}. */
+    int getTranscriptGeneration() {
+        return mTranscriptGeneration;
+    }
+
+    /**
+     * Replace all rows with rows restored by {@link TerminalSnapshot}, the last of which are the screen, keeping as many
+     * of the others as fit in the transcript.
+     */
+    void restoreRows(int columns, int screenRows, int totalRows, TerminalRow[] rows, int rowCount) {
+        final int keptRows = Math.min(rowCount, totalRows);
+        mColumns = columns;
+        mScreenRows = screenRows;
+        mTotalRows = totalRows;
+        mLines = new TerminalRow[totalRows];
+        System.arraycopy(rows, rowCount - keptRows, mLines, 0, keptRows);
+        mActiveTranscriptRows = keptRows - screenRows;
+        mScreenFirstRow = mActiveTranscriptRows;
+        mTranscriptGeneration++;
+        if (mArchive != null) mArchive.clear();
+    }
+
+    /**
+     * Get a row for reading, from -{@link #getActiveTranscriptRows()} to mScreenRows-1. Rows above the in-memory
+     * transcript are read back from the {@link TranscriptArchive}, and must not be modified.
+     */
+    public TerminalRow getRow(int externalRow) {
+        if (externalRow < -mActiveTranscriptRows && mArchive != null) {
+            final int archivedRow = mArchive.getRowCount() + mActiveTranscriptRows + externalRow;
+            if (archivedRow >= 0) return mArchive.getRow(archivedRow, mColumns);
+        }
+        return allocateFullLineIfNecessary(externalToInternalRow(externalRow));
     }
 
     /**
@@ -185,7 +370,7 @@ public final class TerminalBuffer {
     }
 
     public boolean getLineWrap(int row) {
-        return mLines[externalToInternalRow(row)].mLineWrap;
+        return getRow(row).mLineWrap;
     }
 
     public void clearLineWrap(int row) {
@@ -201,6 +386,7 @@ public final class TerminalBuffer {
      * @param cursor     An int[2] containing the (column, row) cursor location.
      */
     public void resize(int newColumns, int newRows, int newTotalRows, int[] cursor, long currentStyle, boolean altScreen) {
+        mTranscriptGeneration++;
         // newRows > mTotalRows should not normally happen since mTotalRows is TRANSCRIPT_ROWS (10000):
         if (newColumns == mColumns && newRows <= mTotalRows) {
             // Fast resize where just the rows changed.
@@ -220,7 +406,7 @@ public final class TerminalBuffer {
                 if (shiftDownOfTopRow != actualShift) {
                     // The new lines revealed by the resizing are not all from the transcript. Blank the below ones.
                     for (int i = 0; i < actualShift - shiftDownOfTopRow; i++)
-                        allocateFullLineIfNecessary((mScreenFirstRow + mScreenRows + i) % mTotalRows).clear(currentStyle);
+                        blankRow((mScreenFirstRow + mScreenRows + i) % mTotalRows, currentStyle);
                     shiftDownOfTopRow = actualShift;
                 }
             }
@@ -230,12 +416,14 @@ public final class TerminalBuffer {
             mActiveTranscriptRows = altScreen ? 0 : Math.max(0, mActiveTranscriptRows + shiftDownOfTopRow);
             cursor[1] -= shiftDownOfTopRow;
             mScreenRows = newRows;
+            // Rows moved from the transcript to the screen may be written to again:
+            for (int row = 0; row < -shiftDownOfTopRow; row++)
+                unshareRow(externalToInternalRow(row));
         } else {
-            // Copy away old state and update new:
+            // Copy away old state and update new. Only the screen is allocated up front, the rest of the rows are
+            // taken from the old state once copied from:
             TerminalRow[] oldLines = mLines;
             mLines = new TerminalRow[newTotalRows];
-            for (int i = 0; i < newTotalRows; i++)
-                mLines[i] = new TerminalRow(newColumns, currentStyle);
 
             final int oldActiveTranscriptRows = mActiveTranscriptRows;
             final int oldScreenFirstRow = mScreenFirstRow;
@@ -246,6 +434,10 @@ public final class TerminalBuffer {
             mActiveTranscriptRows = mScreenFirstRow = 0;
             mColumns = newColumns;
 
+            for (int i = 0; i < newRows; i++)
+                mLines[i] = newRow(currentStyle);
+            int nextFreeRow = newRows;
+
             int newCursorRow = -1;
             int newCursorColumn = -1;
             int oldCursorRow = cursor[1];
@@ -269,6 +461,7 @@ public final class TerminalBuffer {
                 // The cursor may only be on a non-null line, which we should not skip:
                 if (oldLine == null || (!(!newCursorPlaced && cursorAtThisRow)) && oldLine.isBlank()) {
                     skippedBlankLines++;
+                    nextFreeRow = reuseRow(oldLine, nextFreeRow, currentStyle);
                     continue;
                 } else if (skippedBlankLines > 0) {
                     // After skipping some blank lines we encounter a non-blank line. Insert the skipped blank lines.
@@ -290,51 +483,91 @@ public final class TerminalBuffer {
                     lastNonSpaceIndex = oldLine.getSpaceUsed();
                     if (cursorAtThisRow) justToCursor = true;
                 } else {
-                    for (int i = 0; i < oldLine.getSpaceUsed(); i++)
+                    for (int i = oldLine.getSpaceUsed() - 1; i >= 0; i--) {
                         // NEWLY INTRODUCED BUG! Should not index oldLine.mStyle with char indices
-                        if (oldLine.mText[i] != ' '/* || oldLine.mStyle[i] != currentStyle */)
+                        if (oldLine.mText[i] != ' '/* || oldLine.mStyle[i] != currentStyle */) {
                             lastNonSpaceIndex = i + 1;
+                            break;
+                        }
+                    }
                 }
 
-                int currentOldCol = 0;
-                long styleAtCol = 0;
-                for (int i = 0; i < lastNonSpaceIndex; i++) {
-                    // Note that looping over java character, not cells.
-                    char c = oldLine.mText[i];
-                    int codePoint = (Character.isHighSurrogate(c)) ? Character.toCodePoint(c, oldLine.mText[++i]) : c;
-                    int displayWidth = WcWidth.width(codePoint);
-                    // Use the last style if this is a zero-width character:
-                    if (displayWidth > 0) styleAtCol = oldLine.getStyle(currentOldCol);
-
-                    // Line wrap as necessary:
-                    if (currentOutputExternalColumn + displayWidth > mColumns) {
-                        setLineWrap(currentOutputExternalRow);
-                        if (currentOutputExternalRow == mScreenRows - 1) {
-                            if (newCursorPlaced) newCursorRow--;
-                            scrollDownOneLine(0, mScreenRows, currentStyle);
-                        } else {
-                            currentOutputExternalRow++;
+                if (!oldLine.mHasNonOneWidthOrSurrogateChars) {
+                    // Each char is a column, so copy as many as fit on the current row at once:
+                    final int endIndex = (justToCursor && oldCursorColumn >= 0 && oldCursorColumn < lastNonSpaceIndex) ? oldCursorColumn + 1 : lastNonSpaceIndex;
+                    for (int i = 0; i < endIndex; ) {
+                        if (currentOutputExternalColumn == mColumns) {
+                            setLineWrap(currentOutputExternalRow);
+                            if (currentOutputExternalRow == mScreenRows - 1) {
+                                if (newCursorPlaced) newCursorRow--;
+                                scrollDownOneLine(0, mScreenRows, currentStyle);
+                            } else {
+                                currentOutputExternalRow++;
+                            }
+                            currentOutputExternalColumn = 0;
                         }
-                        currentOutputExternalColumn = 0;
+                        final int count = Math.min(endIndex - i, mColumns - currentOutputExternalColumn);
+                        mLines[externalToInternalRow(currentOutputExternalRow)].copyOneWidthColumns(oldLine, i, currentOutputExternalColumn, count);
+                        if (cursorAtThisRow && oldCursorColumn >= i && oldCursorColumn < i + count) {
+                            newCursorColumn = currentOutputExternalColumn + oldCursorColumn - i;
+                            newCursorRow = currentOutputExternalRow;
+                            newCursorPlaced = true;
+                        }
+                        i += count;
+                        currentOutputExternalColumn += count;
                     }
+                } else {
+                    int currentOldCol = 0;
+                    long styleAtCol = 0;
+                    // If a combining char has been put in the current column, so that it is no longer blank:
+                    boolean currentColumnWritten = false;
+                    for (int i = 0; i < lastNonSpaceIndex; i++) {
+                        // Note that looping over java character, not cells.
+                        char c = oldLine.mText[i];
+                        int codePoint = (Character.isHighSurrogate(c)) ? Character.toCodePoint(c, oldLine.mText[++i]) : c;
+                        int displayWidth = WcWidth.width(codePoint);
+                        // Use the last style if this is a zero-width character:
+                        if (displayWidth > 0) styleAtCol = oldLine.getStyle(currentOldCol);
+
+                        // Line wrap as necessary:
+                        if (currentOutputExternalColumn + displayWidth > mColumns) {
+                            setLineWrap(currentOutputExternalRow);
+                            if (currentOutputExternalRow == mScreenRows - 1) {
+                                if (newCursorPlaced) newCursorRow--;
+                                scrollDownOneLine(0, mScreenRows, currentStyle);
+                            } else {
+                                currentOutputExternalRow++;
+                            }
+                            currentOutputExternalColumn = 0;
+                        }
 
-                    int offsetDueToCombiningChar = ((displayWidth <= 0 && currentOutputExternalColumn > 0) ? 1 : 0);
-                    int outputColumn = currentOutputExternalColumn - offsetDueToCombiningChar;
-                    setChar(outputColumn, currentOutputExternalRow, codePoint, styleAtCol);
+                        int offsetDueToCombiningChar = ((displayWidth <= 0 && currentOutputExternalColumn > 0) ? 1 : 0);
+                        int outputColumn = currentOutputExternalColumn - offsetDueToCombiningChar;
+                        if (displayWidth > 0 && !currentColumnWritten) {
+                            // The row is filled from the left, so the rest of it is still blank:
+                            mLines[externalToInternalRow(currentOutputExternalRow)].appendChar(outputColumn, codePoint, displayWidth, styleAtCol);
+                        } else {
+                            setChar(outputColumn, currentOutputExternalRow, codePoint, styleAtCol);
+                            currentColumnWritten = displayWidth <= 0 && offsetDueToCombiningChar == 0;
+                        }
 
-                    if (displayWidth > 0) {
-                        if (oldCursorRow == externalOldRow && oldCursorColumn == currentOldCol) {
-                            newCursorColumn = currentOutputExternalColumn;
-                            newCursorRow = currentOutputExternalRow;
-                            newCursorPlaced = true;
+                        if (displayWidth > 0) {
+                            if (oldCursorRow == externalOldRow && oldCursorColumn == currentOldCol) {
+                                newCursorColumn = currentOutputExternalColumn;
+                                newCursorRow = currentOutputExternalRow;
+                                newCursorPlaced = true;
+                            }
+                            currentOldCol += displayWidth;
+                            currentOutputExternalColumn += displayWidth;
+                            if (justToCursor && newCursorPlaced) break;
                         }
-                        currentOldCol += displayWidth;
-                        currentOutputExternalColumn += displayWidth;
-                        if (justToCursor && newCursorPlaced) break;
                     }
                 }
+
                 // Old row has been copied. Check if we need to insert newline if old line was not wrapping:
-                if (externalOldRow != (oldScreenRows - 1) && !oldLine.mLineWrap) {
+                final boolean oldLineWrap = oldLine.mLineWrap;
+                nextFreeRow = reuseRow(oldLine, nextFreeRow, currentStyle);
+                if (externalOldRow != (oldScreenRows - 1) && !oldLineWrap) {
                     if (currentOutputExternalRow == mScreenRows - 1) {
                         if (newCursorPlaced) newCursorRow--;
                         scrollDownOneLine(0, mScreenRows, currentStyle);
@@ -353,6 +586,19 @@ public final class TerminalBuffer {
         if (cursor[0] < 0 || cursor[1] < 0) cursor[0] = cursor[1] = 0;
     }
 
+    /**
+     * Put a row of the state before a resize, which has been copied from, in the first unused row of {@link #mLines}
+     * for the resized state to use. Returns the index to look for unused rows from next time.
+     */
+    private int reuseRow(TerminalRow oldLine, int nextFreeRow, long style) {
+        if (oldLine == null || oldLine.mInternedBy != 0) return nextFreeRow;
+        while (nextFreeRow < mTotalRows && mLines[nextFreeRow] != null) nextFreeRow++;
+        if (nextFreeRow == mTotalRows) return nextFreeRow;
+        oldLine.reuse(mColumns, style);
+        mLines[nextFreeRow] = oldLine;
+        return nextFreeRow + 1;
+    }
+
     /**
      * Block copy lines and associated metadata from one location to another in the circular buffer, taking wraparound
      * into account.
@@ -385,6 +631,10 @@ public final class TerminalBuffer {
         if (topMargin > bottomMargin - 1 || topMargin < 0 || bottomMargin > mScreenRows)
             throw new IllegalArgumentException("topMargin=" + topMargin + ", bottomMargin=" + bottomMargin + ", mScreenRows=" + mScreenRows);
 
+        // Keep the oldest transcript row, which is about to be overwritten if the transcript is full:
+        if (mArchive != null && mActiveTranscriptRows > 0 && mActiveTranscriptRows == mTotalRows - mScreenRows)
+            mArchive.add(mLines[(mScreenFirstRow + mScreenRows) % mTotalRows], mColumns);
+
         // Copy the fixed topMargin lines one line down so that they remain on screen in same position:
         blockCopyLinesDown(mScreenFirstRow, topMargin);
         // Copy the fixed mScreenRows-bottomMargin lines one line down so that they remain on screen in same
@@ -395,16 +645,47 @@ public final class TerminalBuffer {
         mScreenFirstRow = (mScreenFirstRow + 1) % mTotalRows;
         // Note that the history has grown if not already full:
         if (mActiveTranscriptRows < mTotalRows - mScreenRows) mActiveTranscriptRows++;
+        if (mTotalRows > mScreenRows) mTranscriptRowsAdded++;
 
         // Blank the newly revealed line above the bottom margin:
-        int blankRow = externalToInternalRow(bottomMargin - 1);
-        if (mLines[blankRow] == null) {
-            mLines[blankRow] = new TerminalRow(mColumns, style);
+        blankRow(externalToInternalRow(bottomMargin - 1), style);
+
+        if (mInterner != null && mTotalRows > mScreenRows) {
+            // The row which scrolled into the transcript is no longer written to, so can be shared:
+            final int transcriptRow = externalToInternalRow(-1);
+            final TerminalRow row = mLines[transcriptRow];
+            if (row != null && row.mInternedBy == 0) {
+                final TerminalRow internedRow = mInterner.intern(row, mInternerBufferId);
+                if (internedRow != row) {
+                    mLines[transcriptRow] = internedRow;
+                    freeRow(row);
+                }
+            }
+        }
+    }
+
+    /** Blank a row of {@link #mLines}, replacing it instead if there is none or if it is interned. */
+    private void blankRow(int internalRow, long style) {
+        final TerminalRow row = mLines[internalRow];
+        if (row == null) {
+            mLines[internalRow] = newRow(style);
+        } else if (row.mInternedBy != 0) {
+            // Keep the line wrap as clearing the row would:
+            (mLines[internalRow] = newRow(style)).mLineWrap = row.mLineWrap;
         } else {
-            mLines[blankRow].clear(style);
+            row.clear(style);
         }
     }
 
+    /** Replace an interned row of {@link #mLines}, which may be shared with other buffers, with a copy to write to. */
+    private void unshareRow(int internalRow) {
+        final TerminalRow row = mLines[internalRow];
+        if (row == null || row.mInternedBy == 0) return;
+        final TerminalRow copy = newRow(TextStyle.NORMAL);
+        copy.copyFrom(row);
+        mLines[internalRow] = copy;
+    }
+
     /**
      * Block copy characters from one position in the screen to another. The two positions can overlap. All characters
      * of the source and destination must be within the bounds of the screen, or else an InvalidParameterException will
@@ -445,7 +726,51 @@ public final class TerminalBuffer {
     }
 
     public TerminalRow allocateFullLineIfNecessary(int row) {
-        return (mLines[row] == null) ? (mLines[row] = new TerminalRow(mColumns, 0)) : mLines[row];
+        return (mLines[row] == null) ? (mLines[row] = newRow(0)) : mLines[row];
+    }
+
+    /** Get a blank row, reusing one from {@link #mFreeRows} if there is one. */
+    private TerminalRow newRow(long style) {
+        if (mFreeRowCount > 0) {
+            final TerminalRow row = mFreeRows[--mFreeRowCount];
+            mFreeRows[mFreeRowCount] = null;
+            row.reuse(mColumns, style);
+            mReusedRowCount++;
+            return row;
+        }
+        mAllocatedRowCount++;
+        return new TerminalRow(mColumns, style);
+    }
+
+    /** Keep the rows of a range of {@link #mLines} in {@link #mFreeRows}, and clear the range. */
+    private void freeRows(int startRow, int endRow) {
+        for (int row = startRow; row < endRow; row++) {
+            freeRow(mLines[row]);
+            mLines[row] = null;
+        }
+    }
+
+    /** Keep a row no longer in {@link #mLines} in {@link #mFreeRows}, unless null or interned. */
+    private void freeRow(TerminalRow row) {
+        if (row == null || row.mInternedBy != 0) return;
+        if (mFreeRowCount == mFreeRows.length) mFreeRows = Arrays.copyOf(mFreeRows, Math.max(16, 2 * mFreeRowCount));
+        mFreeRows[mFreeRowCount++] = row;
+    }
+
+    /**
+     * The number of rows this buffer has allocated. Once the transcript is full, scrolling reuses the oldest row, and
+     * rows dropped by {@link #clearTranscript()} are reused as it fills up again, so this only grows with the transcript.
+     */
+    public int getAllocatedRowCount() {
+        return mAllocatedRowCount;
+    }
+
+    /**
+     * The number of rows dropped by {@link #clearTranscript()}, or replaced by interned rows, which have been reused
+     * instead of allocating new ones.
+     */
+    public int getReusedRowCount() {
+        return mReusedRowCount;
     }
 
     public void setChar(int column, int row, int codePoint, long style) {
@@ -455,6 +780,14 @@ public final class TerminalBuffer {
         allocateFullLineIfNecessary(row).setChar(column, codePoint, style);
     }
 
+    /** Set a run of printable ASCII characters on a row. See {@link TerminalRow#setAsciiRun(int, int[], int, int, long)}. */
+    public void setAsciiRun(int column, int row, int[] codePoints, int offset, int count, long style) {
+        if (row < 0 || row >= mScreenRows || column < 0 || column + count > mColumns)
+            throw new IllegalArgumentException("TerminalBuffer.setAsciiRun(): row=" + row + ", column=" + column + ", count=" + count + ", mScreenRows=" + mScreenRows + ", mColumns=" + mColumns);
+        row = externalToInternalRow(row);
+        allocateFullLineIfNecessary(row).setAsciiRun(column, codePoints, offset, count, style);
+    }
+
     public long getStyleAt(int externalRow, int column) {
         return allocateFullLineIfNecessary(externalToInternalRow(externalRow)).getStyle(column);
     }
@@ -479,19 +812,21 @@ public final class TerminalBuffer {
                 } else {
                     effect &= ~bits;
                 }
-                line.mStyle[x] = TextStyle.encode(foreColor, backColor, effect);
+                line.setStyle(x, TextStyle.encode(foreColor, backColor, effect));
             }
         }
     }
 
     public void clearTranscript() {
         if (mScreenFirstRow < mActiveTranscriptRows) {
-            Arrays.fill(mLines, mTotalRows + mScreenFirstRow - mActiveTranscriptRows, mTotalRows, null);
-            Arrays.fill(mLines, 0, mScreenFirstRow, null);
+            freeRows(mTotalRows + mScreenFirstRow - mActiveTranscriptRows, mTotalRows);
+            freeRows(0, mScreenFirstRow);
         } else {
-            Arrays.fill(mLines, mScreenFirstRow - mActiveTranscriptRows, mScreenFirstRow, null);
+            freeRows(mScreenFirstRow - mActiveTranscriptRows, mScreenFirstRow);
         }
         mActiveTranscriptRows = 0;
+        mTranscriptGeneration++;
+        if (mArchive != null) mArchive.clear();
     }
 
 }
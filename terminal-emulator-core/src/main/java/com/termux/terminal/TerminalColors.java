@@ -0,0 +1,120 @@
+package com.termux.terminal;
+
+/** Current terminal colors (if different from default). */
+public final class TerminalColors {
+
+    /** Static data - a bit ugly but ok for now. */
+    public static final TerminalColorScheme COLOR_SCHEME = new TerminalColorScheme();
+
+    /**
+     * The current terminal colors, which are normally set from the color theme, but may be set dynamically with the OSC
+     * 4 control sequence.
+     */
+    public final int[] mCurrentColors = new int[TextStyle.NUM_INDEXED_COLORS];
+
+    /** Create a new instance with default colors from the theme. */
+    public TerminalColors() {
+        reset();
+    }
+
+    /** Reset a particular indexed color with the default color from the color theme. */
+    public void reset(int index) {
+        mCurrentColors[index] = COLOR_SCHEME.mDefaultColors[index];
+    }
+
+    /** Reset all indexed colors with the default color from the color theme. */
+    public void reset() {
+        System.arraycopy(COLOR_SCHEME.mDefaultColors, 0, mCurrentColors, 0, TextStyle.NUM_INDEXED_COLORS);
+    }
+
+    /**
+     * Parse color according to http://manpages.ubuntu.com/manpages/intrepid/man3/XQueryColor.3.html
+     * <p/>
+     * Highest bit is set if successful, so return value is 0xFF${R}${G}${B}. Return 0 if failed.
+     */
+    static int parse(String c) {
+        return parse(c.toCharArray(), 0, c.length());
+    }
+
+    /** Parse a color as {@link #parse(String)} from the chars of c between start (inclusive) and end (exclusive). */
+    static int parse(char[] c, int start, int end) {
+        int skipInitial, skipBetween;
+        if (end > start && c[start] == '#') {
+            // #RGB, #RRGGBB, #RRRGGGBBB or #RRRRGGGGBBBB. Most significant bits.
+            skipInitial = 1;
+            skipBetween = 0;
+        } else if (end - start >= 4 && c[start] == 'r' && c[start + 1] == 'g' && c[start + 2] == 'b' && c[start + 3] == ':') {
+            // rgb:<red>/<green>/<blue> where <red>, <green>, <blue> := h | hh | hhh | hhhh. Scaled.
+            skipInitial = 4;
+            skipBetween = 1;
+        } else {
+            return 0;
+        }
+        int charsForColors = end - start - skipInitial - 2 * skipBetween;
+        if (charsForColors % 3 != 0) return 0; // Unequal lengths.
+        int componentLength = charsForColors / 3;
+        double mult = 255 / (Math.pow(2, componentLength * 4) - 1);
+
+        int currentPosition = start + skipInitial;
+        long r = parseHex(c, currentPosition, currentPosition + componentLength);
+        currentPosition += componentLength + skipBetween;
+        long g = parseHex(c, currentPosition, currentPosition + componentLength);
+        currentPosition += componentLength + skipBetween;
+        long b = parseHex(c, currentPosition, currentPosition + componentLength);
+        if (r == Long.MIN_VALUE || g == Long.MIN_VALUE || b == Long.MIN_VALUE) return 0;
+
+        return 0xFF << 24 | (int) (r * mult) << 16 | (int) (g * mult) << 8 | (int) (b * mult);
+    }
+
+    /**
+     * Parse the chars between start and end as {@link Integer#parseInt(String, int)} with radix 16 does, but returning
+     * {@link Long#MIN_VALUE} instead of throwing if not a valid int.
+     */
+    private static long parseHex(char[] c, int start, int end) {
+        if (start >= end || end > c.length) return Long.MIN_VALUE;
+        boolean negative = false;
+        if (c[start] == '-' || c[start] == '+') {
+            negative = c[start] == '-';
+            if (++start == end) return Long.MIN_VALUE;
+        }
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(c[i], 16);
+            if (digit < 0) return Long.MIN_VALUE;
+            result = result * 16 + digit;
+            if (result > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) return Long.MIN_VALUE;
+        }
+        return negative ? -result : result;
+    }
+
+    /** Try parse a color from a text parameter and into a specified index. */
+    public void tryParseColor(int intoIndex, String textParameter) {
+        int c = parse(textParameter);
+        if (c != 0) mCurrentColors[intoIndex] = c;
+    }
+
+    /** Try parse a color from the chars of a text parameter between start and end and into a specified index. */
+    public void tryParseColor(int intoIndex, char[] textParameter, int start, int end) {
+        int c = parse(textParameter, start, end);
+        if (c != 0) mCurrentColors[intoIndex] = c;
+    }
+
+    /**
+     * Get the perceived brightness of the color based on its RGB components.
+     *
+     * https://www.nbdtech.com/Blog/archive/2008/04/27/Calculating-the-Perceived-Brightness-of-a-Color.aspx
+     * http://alienryderflex.com/hsp.html
+     *
+     * @param color The color code int.
+     * @return Returns value between 0-255.
+     */
+    public static int getPerceivedBrightnessOfColor(int color) {
+        return (int)
+            Math.floor(Math.sqrt(
+                Math.pow((color >> 16) & 0xff, 2) * 0.241 +
+                    Math.pow((color >> 8) & 0xff, 2) * 0.691 +
+                    Math.pow(color & 0xff, 2) * 0.068
+            ));
+    }
+
+}
@@ -1,15 +1,18 @@
 package com.termux.terminal;
 
-import android.util.Base64;
-import android.util.Log;
-
-import androidx.annotation.NonNull;
-
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Stack;
+import java.util.logging.Logger;
 
 /**
  * Renders text into a screen. Contains all the terminal-specific knowledge and state. Emulates a subset of the X Window
@@ -31,7 +34,8 @@ import java.util.Stack;
  */
 public final class TerminalEmulator {
 
-    private static final String LOG_TAG = "TerminalEmulator";
+    /** Logs to logcat on Android, where java.util.logging is routed there, and to standard error elsewhere. */
+    private static final Logger LOG = Logger.getLogger("TerminalEmulator");
 
     /**
      * Log unknown or unimplemented escape sequences received from the shell process.
@@ -132,6 +136,70 @@ public final class TerminalEmulator {
     private static final int ESC_APC = 20;
     /** Escape processing: "ESC _" or Application Program Command (APC), followed by Escape. */
     private static final int ESC_APC_ESCAPE = 21;
+    /** Escape processing: the data of a sixel image, "DCS P1 ; P2 ; P3 q". */
+    private static final int ESC_P_SIXEL = 22;
+    /** Escape processing: the data of a sixel image followed by Escape. */
+    private static final int ESC_P_SIXEL_ESCAPE = 23;
+    private static final int ESC_STATE_COUNT = 24;
+
+    /*
+     * The table-driven parser used by append(), in the style of the VT500 state machine: code points below 128 are
+     * mapped to a class, and the escape state and class to an action. The actions cover what most of the input of full
+     * screen programs is, text and the parameters and final characters of CSI sequences, so that these skip the nested
+     * switches of processCodePoint(). Everything else falls back to processCodePoint(), so both give the same result.
+     */
+    /** Code points of 128 and above, DEL and printable ASCII without a class of its own. */
+    private static final int CLASS_OTHER = 0;
+    /** C0 control characters other than ESC. */
+    private static final int CLASS_CONTROL = 1;
+    private static final int CLASS_ESCAPE = 2;
+    private static final int CLASS_DIGIT = 3;
+    private static final int CLASS_SEMICOLON = 4;
+    private static final int CLASS_LEFT_BRACKET = 5;
+    /** Printable ASCII not in one of the above classes. */
+    private static final int CLASS_PRINTABLE = 6;
+    private static final int CLASS_COUNT = 7;
+
+    private static final byte ACTION_FALLBACK = 0;
+    /** Write a run of printable ASCII, see {@link #emitAsciiRun(int[], int, int)}. */
+    private static final byte ACTION_PRINT = 1;
+    private static final byte ACTION_ESCAPE = 2;
+    private static final byte ACTION_CSI_ENTRY = 3;
+    private static final byte ACTION_PARAMETER_DIGIT = 4;
+    private static final byte ACTION_PARAMETER_SEPARATOR = 5;
+    /** Dispatch the final character of a CSI sequence without a private marker to {@link #doCsi(int)}. */
+    private static final byte ACTION_CSI_DISPATCH = 6;
+    /** Dispatch the final character of a "CSI ?" sequence to {@link #doCsiQuestionMark(int)}. */
+    private static final byte ACTION_CSI_QUESTIONMARK_DISPATCH = 7;
+
+    private static final byte[] CODE_POINT_CLASSES = new byte[128];
+    private static final byte[][] PARSE_ACTIONS = new byte[ESC_STATE_COUNT][CLASS_COUNT];
+
+    static {
+        for (int c = 0; c < 32; c++) CODE_POINT_CLASSES[c] = CLASS_CONTROL;
+        for (int c = 32; c < 127; c++) CODE_POINT_CLASSES[c] = CLASS_PRINTABLE;
+        for (int c = '0'; c <= '9'; c++) CODE_POINT_CLASSES[c] = CLASS_DIGIT;
+        CODE_POINT_CLASSES[27] = CLASS_ESCAPE;
+        CODE_POINT_CLASSES[';'] = CLASS_SEMICOLON;
+        CODE_POINT_CLASSES['['] = CLASS_LEFT_BRACKET;
+
+        for (int printableClass : new int[]{CLASS_DIGIT, CLASS_SEMICOLON, CLASS_LEFT_BRACKET, CLASS_PRINTABLE})
+            PARSE_ACTIONS[ESC_NONE][printableClass] = ACTION_PRINT;
+        for (int state = 0; state < ESC_STATE_COUNT; state++) {
+            // ESC is part of the string terminator in these:
+            if (state != ESC_P && state != ESC_OSC && state != ESC_APC && state != ESC_APC_ESCAPE && state != ESC_P_SIXEL && state != ESC_P_SIXEL_ESCAPE)
+                PARSE_ACTIONS[state][CLASS_ESCAPE] = ACTION_ESCAPE;
+        }
+        PARSE_ACTIONS[ESC][CLASS_LEFT_BRACKET] = ACTION_CSI_ENTRY;
+        for (int csiState : new int[]{ESC_CSI, ESC_CSI_QUESTIONMARK, ESC_CSI_BIGGERTHAN}) {
+            PARSE_ACTIONS[csiState][CLASS_DIGIT] = ACTION_PARAMETER_DIGIT;
+            PARSE_ACTIONS[csiState][CLASS_SEMICOLON] = ACTION_PARAMETER_SEPARATOR;
+        }
+        PARSE_ACTIONS[ESC_CSI][CLASS_LEFT_BRACKET] = ACTION_CSI_DISPATCH;
+        PARSE_ACTIONS[ESC_CSI][CLASS_PRINTABLE] = ACTION_CSI_DISPATCH;
+        PARSE_ACTIONS[ESC_CSI_QUESTIONMARK][CLASS_LEFT_BRACKET] = ACTION_CSI_QUESTIONMARK_DISPATCH;
+        PARSE_ACTIONS[ESC_CSI_QUESTIONMARK][CLASS_PRINTABLE] = ACTION_CSI_QUESTIONMARK_DISPATCH;
+    }
 
     /**
      * The number of parameter arguments. This name comes from the ANSI standard for terminal escape codes.
@@ -248,7 +316,7 @@ public final class TerminalEmulator {
     /**
      * The normal screen buffer. Stores the characters that appear on the screen of the emulated terminal.
      */
-    private final TerminalBuffer mMainBuffer;
+    final TerminalBuffer mMainBuffer;
     /**
      * The alternate screen buffer, exactly as large as the display and contains no additional saved lines (so that when
      * the alternate screen buffer is active, you cannot scroll back to view saved lines).
@@ -266,8 +334,6 @@ public final class TerminalEmulator {
      */
     private final TerminalOutput mSession;
 
-    TerminalSessionClient mClient;
-
     /**
      * Keeps track of the current argument of the current escape sequence. Ranges from 0 to MAX_ESCAPE_PARAMETERS-1.
      */
@@ -278,9 +344,26 @@ public final class TerminalEmulator {
     private final int[] mArgs = new int[MAX_ESCAPE_PARAMETERS];
 
     /**
-     * Holds OSC and device control arguments, which can be strings.
+     * Holds OSC and device control arguments, which can be strings. Reused between sequences and parsed in place, so
+     * that only the values which are kept, such as a changed title, are allocated.
      */
-    private final StringBuilder mOSCOrDeviceControlArgs = new StringBuilder();
+    private char[] mOSCOrDeviceControlArgs = new char[256];
+    /** The number of chars in {@link #mOSCOrDeviceControlArgs}. */
+    private int mOSCOrDeviceControlArgsLength;
+    /** Reused when decoding the names in a termcap/terminfo request, see {@link #doDeviceControl(int)}. */
+    private final StringBuilder mTermcapName = new StringBuilder();
+
+    /** The images shown in cells, see {@link TextStyle#encodeImageCell(int, int, int)}. */
+    private final TerminalImageCache mImageCache = new TerminalImageCache(TerminalImageCache.DEFAULT_MAX_BYTES);
+    /** The decoder of the sixel image being received in {@link #ESC_P_SIXEL}. */
+    private SixelDecoder mSixelDecoder;
+    /** The decoder of kitty graphics protocol commands, created when first used. */
+    private KittyGraphicsDecoder mKittyGraphicsDecoder;
+    /** The numbers in {@link #mImageCache} of images transmitted with the kitty graphics protocol, by their image id. */
+    private final Map<Integer, Integer> mKittyImageNumbers = new HashMap<>();
+    /** The number of code points received in the current APC sequence, and if it is a kitty graphics protocol command. */
+    private int mApcLength;
+    private boolean mApcIsKittyGraphics;
 
     /**
      * True if the current escape sequence should continue, false if the current escape sequence should be terminated.
@@ -355,9 +438,17 @@ public final class TerminalEmulator {
      */
     private boolean mAutoScrollDisabled;
 
-    private byte mUtf8ToFollow, mUtf8Index;
-    private final byte[] mUtf8InputBuffer = new byte[4];
+    /** Decoder of the UTF-8 input from the process into {@link #mDecodedCodePoints}. */
+    private final Utf8Decoder mUtf8Decoder = new Utf8Decoder();
+    private int[] mDecodedCodePoints = new int[Utf8Decoder.maxCodePointsFor(4096)];
+    /**
+     * If {@link #append(byte[], int)} is processing code points, in which case {@link #mUtf8Decoder} has already seen
+     * the rest of the chunk and should not be reset by escape sequences.
+     */
+    private boolean mDecodingAhead;
     private int mLastEmittedCodePoint = -1;
+    /** If {@link #append(byte[], int, int)} uses the table-driven parser, see {@link #setTableDrivenParsing(boolean)}. */
+    private boolean mTableDrivenParsing = true;
 
     public final TerminalColors mColors = new TerminalColors();
 
@@ -413,11 +504,10 @@ public final class TerminalEmulator {
         }
     }
 
-    public TerminalEmulator(TerminalOutput session, int columns, int rows, int cellWidthPixels, int cellHeightPixels, Integer transcriptRows, TerminalSessionClient client) {
+    public TerminalEmulator(TerminalOutput session, int columns, int rows, int cellWidthPixels, int cellHeightPixels, Integer transcriptRows) {
         mSession = session;
         mScreen = mMainBuffer = new TerminalBuffer(columns, getTerminalTranscriptRows(transcriptRows), rows);
         mAltBuffer = new TerminalBuffer(columns, rows, rows);
-        mClient = client;
         mRows = rows;
         mColumns = columns;
         mCellWidthPixels = cellWidthPixels;
@@ -426,15 +516,26 @@ public final class TerminalEmulator {
         reset();
     }
 
-    public void updateTerminalSessionClient(TerminalSessionClient client) {
-        mClient = client;
-        setCursorStyle();
-    }
-
     public TerminalBuffer getScreen() {
         return mScreen;
     }
 
+    /**
+     * Keep rows scrolling out of the transcript of the main screen in an archive, or drop them if null. See
+     * {@link TerminalBuffer#setTranscriptArchive(TranscriptArchive)}.
+     */
+    public void setTranscriptArchive(TranscriptArchive archive) {
+        mMainBuffer.setTranscriptArchive(archive);
+    }
+
+    /**
+     * Share rows scrolling into the transcript of the main screen with other emulators using the same interner, or stop
+     * if null. See {@link TerminalBuffer#setTranscriptRowInterner(TranscriptRowInterner)}.
+     */
+    public void setTranscriptRowInterner(TranscriptRowInterner interner) {
+        mMainBuffer.setTranscriptRowInterner(interner);
+    }
+
     public boolean isAlternateBufferActive() {
         return mScreen == mAltBuffer;
     }
@@ -450,6 +551,16 @@ public final class TerminalEmulator {
      * @param mouseButton one of the MOUSE_* constants of this class.
      */
     public void sendMouseEvent(int mouseButton, int column, int row, boolean pressed, boolean shiftPressed, boolean altPressed, boolean ctrlPressed) {
+        final byte[] code = getMouseEventCode(mouseButton, column, row, pressed, shiftPressed, altPressed, ctrlPressed);
+        if (code != null) mSession.write(code, 0, code.length);
+    }
+
+    /**
+     * The code to send to the process for a mouse event as with {@link #sendMouseEvent}, or null if none is to be sent.
+     * This lets the emulator be locked only while the code is made, and not while it is written, which blocks while the
+     * process does not read its input.
+     */
+    public byte[] getMouseEventCode(int mouseButton, int column, int row, boolean pressed, boolean shiftPressed, boolean altPressed, boolean ctrlPressed) {
         if (column < 1) column = 1;
         if (column > mColumns) column = mColumns;
         if (row < 1) row = 1;
@@ -459,16 +570,15 @@ public final class TerminalEmulator {
 
         if (mouseButton == MOUSE_LEFT_BUTTON_MOVED && !isDecsetInternalBitSet(DECSET_BIT_MOUSE_TRACKING_BUTTON_EVENT)) {
             // Do not send tracking.
+            return null;
         } else if (isDecsetInternalBitSet(DECSET_BIT_MOUSE_PROTOCOL_SGR)) {
-            mSession.write(String.format("\033[<%d;%d;%d" + (pressed ? 'M' : 'm'), mouseButton | modifiers, column, row));
+            return String.format("\033[<%d;%d;%d" + (pressed ? 'M' : 'm'), mouseButton | modifiers, column, row).getBytes(StandardCharsets.UTF_8);
         } else {
             mouseButton = pressed ? mouseButton : 3; // 3 for release of all buttons.
             // Clip to screen, and clip to the limits of 8-bit data.
             boolean out_of_bounds = column > 255 - 32 || row > 255 - 32;
-            if (!out_of_bounds) {
-                byte[] data = {'\033', '[', 'M', (byte) (32 + mouseButton | modifiers), (byte) (32 + column), (byte) (32 + row)};
-                mSession.write(data, 0, data.length);
-            }
+            if (out_of_bounds) return null;
+            return new byte[]{'\033', '[', 'M', (byte) (32 + mouseButton | modifiers), (byte) (32 + column), (byte) (32 + row)};
         }
     }
 
@@ -568,73 +678,142 @@ public final class TerminalEmulator {
      * @param length the number of bytes in the array to process
      */
     public void append(byte[] buffer, int length) {
-        for (int i = 0; i < length; i++)
-            processByte(buffer[i]);
-    }
-
-    private void processByte(byte byteToProcess) {
-        if (mUtf8ToFollow > 0) {
-            if ((byteToProcess & 0b11000000) == 0b10000000) {
-                // 10xxxxxx, a continuation byte.
-                mUtf8InputBuffer[mUtf8Index++] = byteToProcess;
-                if (--mUtf8ToFollow == 0) {
-                    byte firstByteMask = (byte) (mUtf8Index == 2 ? 0b00011111 : (mUtf8Index == 3 ? 0b00001111 : 0b00000111));
-                    int codePoint = (mUtf8InputBuffer[0] & firstByteMask);
-                    for (int i = 1; i < mUtf8Index; i++)
-                        codePoint = ((codePoint << 6) | (mUtf8InputBuffer[i] & 0b00111111));
-                    if (((codePoint <= 0b1111111) && mUtf8Index > 1) || (codePoint < 0b11111111111 && mUtf8Index > 2)
-                        || (codePoint < 0b1111111111111111 && mUtf8Index > 3)) {
-                        // Overlong encoding.
-                        codePoint = UNICODE_REPLACEMENT_CHAR;
-                    }
+        append(buffer, 0, length);
+    }
 
-                    mUtf8Index = mUtf8ToFollow = 0;
+    /** Accept bytes from buffer[offset] to buffer[offset + length - 1] (typically from the pseudo-teletype) and process them. */
+    public void append(byte[] buffer, int offset, int length) {
+        if (mDecodedCodePoints.length < Utf8Decoder.maxCodePointsFor(length))
+            mDecodedCodePoints = new int[Utf8Decoder.maxCodePointsFor(length)];
+        final int[] codePoints = mDecodedCodePoints;
+        final int codePointCount = mUtf8Decoder.decode(buffer, offset, length, codePoints);
 
-                    if (codePoint >= 0x80 && codePoint <= 0x9F) {
-                        // Sequence decoded to a C1 control character which we ignore. They are
-                        // not used nowadays and increases the risk of messing up the terminal state
-                        // on binary input. XTerm does not allow them in utf-8:
-                        // "It is not possible to use a C1 control obtained from decoding the
-                        // UTF-8 text" - http://invisible-island.net/xterm/ctlseqs/ctlseqs.html
+        mDecodingAhead = true;
+        try {
+            if (mTableDrivenParsing) {
+                parseCodePoints(codePoints, codePointCount);
+                return;
+            }
+            int i = 0;
+            while (i < codePointCount) {
+                final int codePoint = codePoints[i];
+                if (mEscapeState == ESC_NONE && isPrintableAscii(codePoint)) {
+                    int runEnd = i + 1;
+                    while (runEnd < codePointCount && isPrintableAscii(codePoints[runEnd])) runEnd++;
+                    emitAsciiRun(codePoints, i, runEnd);
+                    i = runEnd;
+                } else {
+                    if (codePoint == Utf8Decoder.MALFORMED_SEQUENCE) {
+                        emitCodePoint(UNICODE_REPLACEMENT_CHAR);
                     } else {
-                        switch (Character.getType(codePoint)) {
-                            case Character.UNASSIGNED:
-                            case Character.SURROGATE:
-                                codePoint = UNICODE_REPLACEMENT_CHAR;
-                        }
                         processCodePoint(codePoint);
                     }
+                    i++;
                 }
-            } else {
-                // Not a UTF-8 continuation byte so replace the entire sequence up to now with the replacement char:
-                mUtf8Index = mUtf8ToFollow = 0;
-                emitCodePoint(UNICODE_REPLACEMENT_CHAR);
-                // The Unicode Standard Version 6.2 – Core Specification
-                // (http://www.unicode.org/versions/Unicode6.2.0/ch03.pdf):
-                // "If the converter encounters an ill-formed UTF-8 code unit sequence which starts with a valid first
-                // byte, but which does not continue with valid successor bytes (see Table 3-7), it must not consume the
-                // successor bytes as part of the ill-formed subsequence
-                // whenever those successor bytes themselves constitute part of a well-formed UTF-8 code unit
-                // subsequence."
-                processByte(byteToProcess);
             }
-        } else {
-            if ((byteToProcess & 0b10000000) == 0) { // The leading bit is not set so it is a 7-bit ASCII character.
-                processCodePoint(byteToProcess);
-                return;
-            } else if ((byteToProcess & 0b11100000) == 0b11000000) { // 110xxxxx, a two-byte sequence.
-                mUtf8ToFollow = 1;
-            } else if ((byteToProcess & 0b11110000) == 0b11100000) { // 1110xxxx, a three-byte sequence.
-                mUtf8ToFollow = 2;
-            } else if ((byteToProcess & 0b11111000) == 0b11110000) { // 11110xxx, a four-byte sequence.
-                mUtf8ToFollow = 3;
-            } else {
-                // Not a valid UTF-8 sequence start, signal invalid data:
-                processCodePoint(UNICODE_REPLACEMENT_CHAR);
-                return;
+        } finally {
+            mDecodingAhead = false;
+        }
+    }
+
+    /**
+     * Set whether {@link #append(byte[], int, int)} parses using {@link #PARSE_ACTIONS}, the default, or passes every
+     * code point outside of runs of text through {@link #processCodePoint(int)}. The result is the same, so this is for
+     * comparing the two.
+     */
+    public void setTableDrivenParsing(boolean tableDrivenParsing) {
+        mTableDrivenParsing = tableDrivenParsing;
+    }
+
+    /** Process decoded code points using {@link #PARSE_ACTIONS}, falling back to {@link #processCodePoint(int)}. */
+    private void parseCodePoints(int[] codePoints, int codePointCount) {
+        int i = 0;
+        while (i < codePointCount) {
+            final int codePoint = codePoints[i];
+            final int action = ((codePoint & ~0x7F) == 0) ? PARSE_ACTIONS[mEscapeState][CODE_POINT_CLASSES[codePoint]] : ACTION_FALLBACK;
+            switch (action) {
+                case ACTION_PRINT:
+                    int runEnd = i + 1;
+                    while (runEnd < codePointCount && isPrintableAscii(codePoints[runEnd])) runEnd++;
+                    emitAsciiRun(codePoints, i, runEnd);
+                    i = runEnd;
+                    continue;
+                case ACTION_ESCAPE:
+                    startEscapeSequence();
+                    break;
+                case ACTION_CSI_ENTRY:
+                    mEscapeState = ESC_CSI;
+                    break;
+                case ACTION_PARAMETER_DIGIT:
+                    // As parseArg(), without passing through the switches to get there:
+                    if (mArgIndex < mArgs.length) {
+                        final int oldValue = mArgs[mArgIndex];
+                        final int digit = codePoint - '0';
+                        mArgs[mArgIndex] = (oldValue >= 0) ? Math.min(oldValue * 10 + digit, 9999) : digit;
+                    }
+                    break;
+                case ACTION_PARAMETER_SEPARATOR:
+                    if (mArgIndex < mArgs.length) mArgIndex++;
+                    break;
+                case ACTION_CSI_DISPATCH:
+                    mContinueSequence = false;
+                    doCsi(codePoint);
+                    if (!mContinueSequence) mEscapeState = ESC_NONE;
+                    break;
+                case ACTION_CSI_QUESTIONMARK_DISPATCH:
+                    mContinueSequence = false;
+                    doCsiQuestionMark(codePoint);
+                    if (!mContinueSequence) mEscapeState = ESC_NONE;
+                    break;
+                default:
+                    if (codePoint == Utf8Decoder.MALFORMED_SEQUENCE) {
+                        emitCodePoint(UNICODE_REPLACEMENT_CHAR);
+                    } else {
+                        processCodePoint(codePoint);
+                    }
+                    break;
+            }
+            i++;
+        }
+    }
+
+    private static boolean isPrintableAscii(int codePoint) {
+        return codePoint >= 32 && codePoint < 127;
+    }
+
+    /**
+     * Fast path for a run of printable 7-bit ASCII code points received in the ground state, which writes as much of
+     * the run as fits before the right margin into the current row in one batch. Gives the same result as passing each
+     * code point through {@link #processCodePoint(int)}.
+     *
+     * @param codePoints an array containing only printable ASCII in the range [start, end)
+     */
+    private void emitAsciiRun(int[] codePoints, int start, int end) {
+        if (mInsertMode || (mUseLineDrawingUsesG0 ? mUseLineDrawingG0 : mUseLineDrawingG1)) {
+            // Line drawing translates to non-ASCII and insert mode shifts the row for each character, so leave these
+            // to emitCodePoint().
+            while (start < end) emitCodePoint(codePoints[start++]);
+            return;
+        }
+
+        final boolean autoWrap = isDecsetInternalBitSet(DECSET_BIT_AUTOWRAP);
+        while (start < end) {
+            final int columnsToMargin = mRightMargin - mCursorCol;
+            if (columnsToMargin <= 1 || mAboutToAutoWrap || mCursorCol < 0 || mRightMargin > mColumns) {
+                // Wrapping, overwriting the last column or writing outside the margins or screen is left to emitCodePoint().
+                emitCodePoint(codePoints[start++]);
+                continue;
             }
-            mUtf8InputBuffer[mUtf8Index++] = byteToProcess;
+
+            final int count = Math.min(end - start, columnsToMargin);
+            mScreen.setAsciiRun(mCursorCol, mCursorRow, codePoints, start, count, getStyle());
+            start += count;
+
+            final boolean reachedMargin = count == columnsToMargin;
+            if (autoWrap) mAboutToAutoWrap = reachedMargin;
+            mCursorCol = reachedMargin ? mRightMargin - 1 : mCursorCol + count;
         }
+        mLastEmittedCodePoint = codePoints[end - 1];
     }
 
     public void processCodePoint(int b) {
@@ -645,6 +824,21 @@ public final class TerminalEmulator {
         } else if (mEscapeState == ESC_APC_ESCAPE) {
             doApcEscape(b);
             return;
+        } else if (mEscapeState == ESC_P_SIXEL) {
+            // Sixel data may contain '\\', which otherwise ends a device control string.
+            if (b == 27) continueSequence(ESC_P_SIXEL_ESCAPE);
+            else mSixelDecoder.accept(b);
+            return;
+        } else if (mEscapeState == ESC_P_SIXEL_ESCAPE) {
+            finishSixel();
+            if (b == '\\') {
+                finishSequence();
+            } else {
+                // Anything but a String Terminator (ST) cancels the sixel data and starts a new escape sequence:
+                startEscapeSequence();
+                processCodePoint(b);
+            }
+            return;
         }
 
         switch (b) {
@@ -925,7 +1119,7 @@ public final class TerminalEmulator {
                                 if (internalBit != -1) {
                                     value = isDecsetInternalBitSet(internalBit) ? 1 : 2; // 1=set, 2=reset.
                                 } else {
-                                    Log.e(LOG_TAG, "Got DECRQM for unrecognized private DEC mode=" + mode);
+                                    LOG.severe("Got DECRQM for unrecognized private DEC mode=" + mode);
                                     value = 0; // 0=not recognized, 3=permanently set, 4=permanently reset
                                 }
                             }
@@ -987,17 +1181,18 @@ public final class TerminalEmulator {
         switch (b) {
             case (byte) '\\': // End of ESC \ string Terminator
             {
-                String dcs = mOSCOrDeviceControlArgs.toString();
+                final char[] dcs = mOSCOrDeviceControlArgs;
+                final int dcsLength = mOSCOrDeviceControlArgsLength;
                 // DCS $ q P t ST. Request Status String (DECRQSS)
-                if (dcs.startsWith("$q")) {
-                    if (dcs.equals("$q\"p")) {
+                if (oscOrDeviceControlArgsRegionEquals(0, 2, "$q")) {
+                    if (oscOrDeviceControlArgsRegionEquals(0, dcsLength, "$q\"p")) {
                         // DECSCL, conformance level, http://www.vt100.net/docs/vt510-rm/DECSCL:
                         String csiString = "64;1\"p";
                         mSession.write("\033P1$r" + csiString + "\033\\");
                     } else {
-                        finishSequenceAndLogError("Unrecognized DECRQSS string: '" + dcs + "'");
+                        finishSequenceAndLogError("Unrecognized DECRQSS string: '" + new String(dcs, 0, dcsLength) + "'");
                     }
-                } else if (dcs.startsWith("+q")) {
+                } else if (oscOrDeviceControlArgsRegionEquals(0, 2, "+q")) {
                     // Request Termcap/Terminfo String. The string following the "q" is a list of names encoded in
                     // hexadecimal (2 digits per character) separated by ; which correspond to termcap or terminfo key
                     // names.
@@ -1035,21 +1230,27 @@ public final class TerminalEmulator {
                     // respond, as well as http://www.freebsd.org/cgi/man.cgi?query=termcap&sektion=5#CAPABILITIES for
                     // the meaning of e.g. "ku", "kd", "kr", "kl"
 
-                    for (String part : dcs.substring(2).split(";")) {
-                        if (part.length() % 2 == 0) {
-                            StringBuilder transBuffer = new StringBuilder();
-                            char c;
-                            for (int i = 0; i < part.length(); i += 2) {
-                                try {
-                                    c = (char) Long.decode("0x" + part.charAt(i) + "" + part.charAt(i + 1)).longValue();
-                                } catch (NumberFormatException e) {
-                                    Log.w(LOG_TAG, "Invalid device termcap/terminfo encoded name \"" + part + "\"", e);
+                    // The names are separated by ';', and like String.split() trailing empty names are ignored:
+                    int namesEnd = dcsLength;
+                    while (namesEnd > 2 && dcs[namesEnd - 1] == ';') namesEnd--;
+                    if (namesEnd == 2 && dcsLength > 2) namesEnd = -1;
+                    for (int partStart = 2; partStart <= namesEnd; ) {
+                        int partEnd = partStart;
+                        while (partEnd < namesEnd && dcs[partEnd] != ';') partEnd++;
+                        final int partLength = partEnd - partStart;
+                        if (partLength % 2 == 0) {
+                            mTermcapName.setLength(0);
+                            for (int i = partStart; i < partEnd; i += 2) {
+                                int high = Character.digit(dcs[i], 16);
+                                int low = Character.digit(dcs[i + 1], 16);
+                                if (high < 0 || low < 0) {
+                                    LOG.warning("Invalid device termcap/terminfo encoded name \"" + new String(dcs, partStart, partLength) + "\"");
                                     continue;
                                 }
-                                transBuffer.append(c);
+                                mTermcapName.append((char) (high * 16 + low));
                             }
 
-                            String trans = transBuffer.toString();
+                            String trans = mTermcapName.toString();
                             String responseValue;
                             switch (trans) {
                                 case "Co":
@@ -1065,13 +1266,14 @@ public final class TerminalEmulator {
                                         isDecsetInternalBitSet(DECSET_BIT_APPLICATION_KEYPAD));
                                     break;
                             }
+                            String part = new String(dcs, partStart, partLength);
                             if (responseValue == null) {
                                 switch (trans) {
                                     case "%1": // Help key - ignore
                                     case "&8": // Undo key - ignore.
                                         break;
                                     default:
-                                        Log.w(LOG_TAG, "Unhandled termcap/terminfo name: '" + trans + "'");
+                                        LOG.warning("Unhandled termcap/terminfo name: '" + trans + "'");
                                 }
                                 // Respond with invalid request:
                                 mSession.write("\033P0+r" + part + "\033\\");
@@ -1083,36 +1285,185 @@ public final class TerminalEmulator {
                                 mSession.write("\033P1+r" + part + "=" + hexEncoded + "\033\\");
                             }
                         } else {
-                            Log.e(LOG_TAG, "Invalid device termcap/terminfo name of odd length: " + part);
+                            LOG.severe("Invalid device termcap/terminfo name of odd length: " + new String(dcs, partStart, partLength));
                         }
+                        partStart = partEnd + 1;
                     }
                 } else {
                     if (LOG_ESCAPE_SEQUENCES)
-                        Log.e(LOG_TAG, "Unrecognized device control string: " + dcs);
+                        LOG.severe("Unrecognized device control string: " + new String(dcs, 0, dcsLength));
                 }
                 finishSequence();
             }
             break;
             default:
-                if (mOSCOrDeviceControlArgs.length() > MAX_OSC_STRING_LENGTH) {
+                if (mOSCOrDeviceControlArgsLength > MAX_OSC_STRING_LENGTH) {
                     // Too long.
-                    mOSCOrDeviceControlArgs.setLength(0);
+                    mOSCOrDeviceControlArgsLength = 0;
                     finishSequence();
+                } else if (b == 'q' && isSixelIntroducer()) {
+                    startSixel();
                 } else {
-                    mOSCOrDeviceControlArgs.appendCodePoint(b);
+                    appendOSCOrDeviceControlArg(b);
                     continueSequence(mEscapeState);
                 }
         }
     }
 
+    /** Whether the device control string so far is the parameters of a sixel image, so only digits and ';'. */
+    private boolean isSixelIntroducer() {
+        for (int i = 0; i < mOSCOrDeviceControlArgsLength; i++) {
+            char c = mOSCOrDeviceControlArgs[i];
+            if ((c < '0' || c > '9') && c != ';') return false;
+        }
+        return true;
+    }
+
+    /** Start decoding a sixel image, "DCS P1 ; P2 ; P3 q", where P2 is 1 if pixels not drawn should be transparent. */
+    private void startSixel() {
+        int parameter = 0, backgroundSelect = 0;
+        for (int i = 0; i < mOSCOrDeviceControlArgsLength; i++) {
+            char c = mOSCOrDeviceControlArgs[i];
+            if (c == ';') parameter++;
+            else if (parameter == 1) backgroundSelect = Math.min(backgroundSelect * 10 + (c - '0'), 10);
+        }
+        final int backgroundColor = (backgroundSelect == 1) ? 0 : 0xFF000000 | mColors.mCurrentColors[TextStyle.COLOR_INDEX_BACKGROUND];
+        mSixelDecoder = new SixelDecoder(backgroundColor, mImageCache.getMaxBytes());
+        continueSequence(ESC_P_SIXEL);
+    }
+
+    /** Place the sixel image decoded so far at the cursor, which is moved to the row below it. */
+    private void finishSixel() {
+        final TerminalImage image = mSixelDecoder.finish(mCellWidthPixels, mCellHeightPixels);
+        if (mSixelDecoder.isTooLarge()) LOG.warning("Ignoring the part of a sixel image beyond " + mImageCache.getMaxBytes() + " bytes");
+        mSixelDecoder = null;
+        if (image == null) return;
+        final int startColumn = mCursorCol;
+        placeImage(mImageCache.add(image), image, true);
+        doLinefeed();
+        setCursorCol(startColumn);
+    }
+
+    /** Act on a complete kitty graphics protocol command, see {@link KittyGraphicsDecoder}. */
+    private void doKittyGraphics() {
+        final KittyGraphicsDecoder decoder = mKittyGraphicsDecoder;
+        if (!decoder.endCommand()) return;
+
+        final int id = decoder.getId();
+        String error = decoder.getError();
+        switch (decoder.getAction()) {
+            case 'q': // Query support, by transmitting an image which is not kept.
+                decoder.takeImage(mCellWidthPixels, mCellHeightPixels);
+                break;
+            case 't': // Transmit.
+            case 'T': // Transmit and place.
+            {
+                final TerminalImage image = decoder.takeImage(mCellWidthPixels, mCellHeightPixels);
+                if (image == null) break;
+                final int number = mImageCache.add(image);
+                if (id != 0) {
+                    final Integer replaced = mKittyImageNumbers.put(id, number);
+                    if (replaced != null) mImageCache.remove(replaced);
+                    if (mKittyImageNumbers.size() > 256) {
+                        // Forget the ids of evicted images:
+                        Iterator<Integer> numbers = mKittyImageNumbers.values().iterator();
+                        while (numbers.hasNext()) if (mImageCache.get(numbers.next()) == null) numbers.remove();
+                    }
+                }
+                if (decoder.getAction() == 'T') placeKittyImage(number, image, decoder.getCursorMovement());
+                break;
+            }
+            case 'p': // Place an image transmitted before.
+            {
+                final Integer number = mKittyImageNumbers.get(id);
+                final TerminalImage image = (number == null) ? null : mImageCache.get(number);
+                if (image == null) {
+                    error = "ENOENT:Image not found: " + id;
+                    mKittyImageNumbers.remove(id);
+                } else {
+                    placeKittyImage(number, image, decoder.getCursorMovement());
+                }
+                break;
+            }
+            case 'd': // Delete images, after which the cells showing them show nothing.
+                switch (decoder.getDelete()) {
+                    case 'a':
+                    case 'A':
+                        for (int number : mKittyImageNumbers.values()) mImageCache.remove(number);
+                        mKittyImageNumbers.clear();
+                        break;
+                    case 'i':
+                    case 'I':
+                        final Integer number = mKittyImageNumbers.remove(id);
+                        if (number != null) mImageCache.remove(number);
+                        break;
+                }
+                // Deleting is not responded to:
+                return;
+            default:
+                error = "EINVAL:Unsupported action: " + decoder.getAction();
+                break;
+        }
+
+        // Only commands with an image id are responded to, and q=1 suppresses OK and q=2 also errors:
+        if (id != 0 && decoder.getQuiet() < ((error == null) ? 1 : 2))
+            mSession.write("\033_Gi=" + id + ";" + ((error == null) ? "OK" : error) + "\033\\");
+    }
+
+    /** Place a kitty image at the cursor, which unless C=1 is moved to after its last column on its last row. */
+    private void placeKittyImage(int number, TerminalImage image, int cursorMovement) {
+        final int startRow = mCursorRow, startColumn = mCursorCol;
+        placeImage(number, image, cursorMovement != 1);
+        if (cursorMovement == 1) {
+            setCursorRowCol(startRow, startColumn);
+        } else {
+            setCursorCol(Math.min(startColumn + image.getColumns(), mColumns - 1));
+        }
+    }
+
+    /**
+     * Show an image in the cells from the cursor and right and down, leaving the cursor on the last row of it. If scroll
+     * is false the image is cut off at the bottom of the screen instead of scrolling as for line feeds.
+     */
+    private void placeImage(int number, TerminalImage image, boolean scroll) {
+        if (number == 0) return;
+        // The cursor column may be out of range after a resize with left and right margins set:
+        final int startColumn = Math.max(0, Math.min(mCursorCol, mColumns - 1));
+        final int columns = Math.min(image.getColumns(), Math.min(mColumns - startColumn, TextStyle.MAX_IMAGE_CELLS));
+        final int rows = Math.min(image.getRows(), TextStyle.MAX_IMAGE_CELLS);
+        mAboutToAutoWrap = false;
+        for (int row = 0; row < rows; row++) {
+            if (row > 0) {
+                if (scroll) doLinefeed();
+                else if (mCursorRow < mRows - 1) setCursorRow(mCursorRow + 1);
+                else break;
+            }
+            for (int column = 0; column < columns; column++)
+                mScreen.setChar(startColumn + column, mCursorRow, ' ', TextStyle.encodeImageCell(number, column, row));
+        }
+    }
+
+    /** The images shown in cells of the screen and transcript. */
+    public TerminalImageCache getImageCache() {
+        return mImageCache;
+    }
+
     /**
      * When in {@link #ESC_APC} (APC, Application Program Command) sequence.
      */
     private void doApc(int b) {
         if (b == 27) {
             continueSequence(ESC_APC_ESCAPE);
+        } else if (mApcLength++ == 0) {
+            // Kitty graphics protocol commands start with a G, other APC sequences are eaten silently:
+            mApcIsKittyGraphics = b == 'G';
+            if (mApcIsKittyGraphics) {
+                if (mKittyGraphicsDecoder == null) mKittyGraphicsDecoder = new KittyGraphicsDecoder();
+                mKittyGraphicsDecoder.startCommand(mImageCache.getMaxBytes());
+            }
+        } else if (mApcIsKittyGraphics) {
+            mKittyGraphicsDecoder.accept(b);
         }
-        // Eat APC sequences silently for now.
     }
 
     /**
@@ -1121,6 +1472,7 @@ public final class TerminalEmulator {
     private void doApcEscape(int b) {
         if (b == '\\') {
             // A String Terminator (ST), ending the APC escape sequence.
+            if (mApcLength > 0 && mApcIsKittyGraphics) doKittyGraphics();
             finishSequence();
         } else {
             // The Escape character was not the start of a String Terminator (ST),
@@ -1204,7 +1556,7 @@ public final class TerminalEmulator {
                     int externalBit = mArgs[i];
                     int internalBit = mapDecSetBitToInternalBit(externalBit);
                     if (internalBit == -1) {
-                        Log.w(LOG_TAG, "Ignoring request to save/recall decset bit=" + externalBit);
+                        LOG.warning("Ignoring request to save/recall decset bit=" + externalBit);
                     } else {
                         if (b == 's') {
                             mSavedDecSetFlags |= internalBit;
@@ -1256,8 +1608,7 @@ public final class TerminalEmulator {
             case 9: // X10 mouse reporting - outdated. Do not implement.
             case 12: // Control cursor blinking - ignore.
             case 25: // Hide/show cursor - no action needed, renderer will check with shouldCursorBeVisible().
-                if (mClient != null)
-                    mClient.onTerminalCursorStateChange(setting);
+                mSession.onTerminalCursorStateChange(setting);
                 break;
             case 40: // Allow 80 => 132 Mode, ignore.
             case 45: // TODO: Reverse wrap-around. Implement???
@@ -1394,7 +1745,7 @@ public final class TerminalEmulator {
                 // (1) enables this feature for keys except for those with well-known behavior, e.g., Tab, Backarrow and
                 // some special control character cases, e.g., Control-Space to make a NUL.
                 // (2) enables this feature for keys including the exceptions listed.
-                Log.e(LOG_TAG, "(ignored) CSI > MODIFY RESOURCE: " + getArg0(-1) + " to " + getArg1(-1));
+                if (LOG_ESCAPE_SEQUENCES) LOG.severe("(ignored) CSI > MODIFY RESOURCE: " + getArg0(-1) + " to " + getArg1(-1));
                 break;
             default:
                 parseArg(b);
@@ -1512,7 +1863,7 @@ public final class TerminalEmulator {
             case '0': // SS3, ignore.
                 break;
             case 'P': // Device control string
-                mOSCOrDeviceControlArgs.setLength(0);
+                mOSCOrDeviceControlArgsLength = 0;
                 continueSequence(ESC_P);
                 break;
             case '[':
@@ -1522,13 +1873,14 @@ public final class TerminalEmulator {
                 setDecsetinternalBit(DECSET_BIT_APPLICATION_KEYPAD, true);
                 break;
             case ']': // OSC
-                mOSCOrDeviceControlArgs.setLength(0);
+                mOSCOrDeviceControlArgsLength = 0;
                 continueSequence(ESC_OSC);
                 break;
             case '>': // DECKPNM
                 setDecsetinternalBit(DECSET_BIT_APPLICATION_KEYPAD, false);
                 break;
             case '_': // APC - Application Program Command.
+                mApcLength = 0;
                 continueSequence(ESC_APC);
                 break;
             default:
@@ -1759,7 +2111,7 @@ public final class TerminalEmulator {
                 // The important part that may still be used by some (tmux stores this value but does not currently use it)
                 // is the first response parameter identifying the terminal service class, where we send 64 for "vt420".
                 // This is followed by a list of attributes which is probably unused by applications. Send like xterm.
-                if (getArg0(0) == 0) mSession.write("\033[?64;1;2;6;9;15;18;21;22c");
+                if (getArg0(0) == 0) mSession.write("\033[?64;1;2;4;6;9;15;18;21;22c");
                 break;
             case 'd': // ESC [ Pn d - Vert Position Absolute
                 setCursorRow(Math.min(Math.max(1, getArg0(1)), mRows) - 1);
@@ -1956,7 +2308,7 @@ public final class TerminalEmulator {
                 int firstArg = mArgs[i + 1];
                 if (firstArg == 2) {
                     if (i + 4 > mArgIndex) {
-                        Log.w(LOG_TAG, "Too few CSI" + code + ";2 RGB arguments");
+                        LOG.warning("Too few CSI" + code + ";2 RGB arguments");
                     } else {
                         int red = getArg(i + 2, 0, false);
                         int green = getArg(i + 3, 0, false);
@@ -1983,7 +2335,7 @@ public final class TerminalEmulator {
                             mBackColor = color;
                         }
                     } else {
-                        if (LOG_ESCAPE_SEQUENCES) Log.w(LOG_TAG, "Invalid color index: " + color);
+                        if (LOG_ESCAPE_SEQUENCES) LOG.warning("Invalid color index: " + color);
                     }
                 } else {
                     finishSequenceAndLogError("Invalid ISO-8613-3 SGR first argument: " + firstArg);
@@ -2000,7 +2352,7 @@ public final class TerminalEmulator {
                 mBackColor = code - 100 + 8;
             } else {
                 if (LOG_ESCAPE_SEQUENCES)
-                    Log.w(LOG_TAG, String.format("SGR unknown code %d", code));
+                    LOG.warning(String.format("SGR unknown code %d", code));
             }
         }
     }
@@ -2038,13 +2390,16 @@ public final class TerminalEmulator {
      * An Operating System Controls (OSC) Set Text Parameters. May come here from BEL or ST.
      */
     private void doOscSetTextParameters(String bellOrStringTerminator) {
+        final char[] args = mOSCOrDeviceControlArgs;
+        final int argsLength = mOSCOrDeviceControlArgsLength;
         int value = -1;
-        String textParameter = "";
+        // The text parameter is the args from textStart, and empty if there is no ';'.
+        int textStart = argsLength;
         // Extract initial $value from initial "$value;..." string.
-        for (int mOSCArgTokenizerIndex = 0; mOSCArgTokenizerIndex < mOSCOrDeviceControlArgs.length(); mOSCArgTokenizerIndex++) {
-            char b = mOSCOrDeviceControlArgs.charAt(mOSCArgTokenizerIndex);
+        for (int mOSCArgTokenizerIndex = 0; mOSCArgTokenizerIndex < argsLength; mOSCArgTokenizerIndex++) {
+            char b = args[mOSCArgTokenizerIndex];
             if (b == ';') {
-                textParameter = mOSCOrDeviceControlArgs.substring(mOSCArgTokenizerIndex + 1);
+                textStart = mOSCArgTokenizerIndex + 1;
                 break;
             } else if (b >= '0' && b <= '9') {
                 value = ((value < 0) ? 0 : value * 10) + (b - '0');
@@ -2058,7 +2413,9 @@ public final class TerminalEmulator {
             case 0: // Change icon name and window title to T.
             case 1: // Change icon name to T.
             case 2: // Change window title to T.
-                setTitle(textParameter);
+                // Prompts commonly set the same title again for every command, so only allocate a changed one:
+                if (mTitle == null || !oscOrDeviceControlArgsRegionEquals(textStart, argsLength, mTitle))
+                    setTitle(new String(args, textStart, argsLength - textStart));
                 break;
             case 4:
                 // P s = 4 ; c ; spec → Change Color Number c to the color specified by spec. This can be a name or RGB
@@ -2070,9 +2427,9 @@ public final class TerminalEmulator {
                 // and specification can be given in one control sequence, xterm can make more than one reply.
                 int colorIndex = -1;
                 int parsingPairStart = -1;
-                for (int i = 0; ; i++) {
-                    boolean endOfInput = i == textParameter.length();
-                    char b = endOfInput ? ';' : textParameter.charAt(i);
+                for (int i = textStart; ; i++) {
+                    boolean endOfInput = i == argsLength;
+                    char b = endOfInput ? ';' : args[i];
                     if (b == ';') {
                         if (parsingPairStart < 0) {
                             parsingPairStart = i + 1;
@@ -2081,7 +2438,7 @@ public final class TerminalEmulator {
                                 unknownSequence(b);
                                 return;
                             } else {
-                                mColors.tryParseColor(colorIndex, textParameter.substring(parsingPairStart, i));
+                                mColors.tryParseColor(colorIndex, args, parsingPairStart, i);
                                 mSession.onColorsChanged();
                                 colorIndex = -1;
                                 parsingPairStart = -1;
@@ -2102,41 +2459,38 @@ public final class TerminalEmulator {
             case 11: // Set background color.
             case 12: // Set cursor color.
                 int specialIndex = TextStyle.COLOR_INDEX_FOREGROUND + (value - 10);
-                int lastSemiIndex = 0;
-                for (int charIndex = 0; ; charIndex++) {
-                    boolean endOfInput = charIndex == textParameter.length();
-                    if (endOfInput || textParameter.charAt(charIndex) == ';') {
-                        try {
-                            String colorSpec = textParameter.substring(lastSemiIndex, charIndex);
-                            if ("?".equals(colorSpec)) {
-                                // Report current color in the same format xterm and gnome-terminal does.
-                                int rgb = mColors.mCurrentColors[specialIndex];
-                                int r = (65535 * ((rgb & 0x00FF0000) >> 16)) / 255;
-                                int g = (65535 * ((rgb & 0x0000FF00) >> 8)) / 255;
-                                int b = (65535 * ((rgb & 0x000000FF))) / 255;
-                                mSession.write("\033]" + value + ";rgb:" + String.format(Locale.US, "%04x", r) + "/" + String.format(Locale.US, "%04x", g) + "/"
-                                    + String.format(Locale.US, "%04x", b) + bellOrStringTerminator);
-                            } else {
-                                mColors.tryParseColor(specialIndex, colorSpec);
-                                mSession.onColorsChanged();
-                            }
-                            specialIndex++;
-                            if (endOfInput || (specialIndex > TextStyle.COLOR_INDEX_CURSOR) || ++charIndex >= textParameter.length())
-                                break;
-                            lastSemiIndex = charIndex;
-                        } catch (NumberFormatException e) {
-                            // Ignore.
+                int lastSemiIndex = textStart;
+                for (int charIndex = textStart; ; charIndex++) {
+                    boolean endOfInput = charIndex == argsLength;
+                    if (endOfInput || args[charIndex] == ';') {
+                        if (oscOrDeviceControlArgsRegionEquals(lastSemiIndex, charIndex, "?")) {
+                            // Report current color in the same format xterm and gnome-terminal does.
+                            int rgb = mColors.mCurrentColors[specialIndex];
+                            int r = (65535 * ((rgb & 0x00FF0000) >> 16)) / 255;
+                            int g = (65535 * ((rgb & 0x0000FF00) >> 8)) / 255;
+                            int b = (65535 * ((rgb & 0x000000FF))) / 255;
+                            mSession.write("\033]" + value + ";rgb:" + String.format(Locale.US, "%04x", r) + "/" + String.format(Locale.US, "%04x", g) + "/"
+                                + String.format(Locale.US, "%04x", b) + bellOrStringTerminator);
+                        } else {
+                            mColors.tryParseColor(specialIndex, args, lastSemiIndex, charIndex);
+                            mSession.onColorsChanged();
                         }
+                        specialIndex++;
+                        if (endOfInput || (specialIndex > TextStyle.COLOR_INDEX_CURSOR) || ++charIndex >= argsLength)
+                            break;
+                        lastSemiIndex = charIndex;
                     }
                 }
                 break;
             case 52: // Manipulate Selection Data. Skip the optional first selection parameter(s).
-                int startIndex = textParameter.indexOf(";") + 1;
+                int startIndex = textStart;
+                while (startIndex < argsLength && args[startIndex] != ';') startIndex++;
+                startIndex = (startIndex == argsLength) ? textStart : startIndex + 1;
                 try {
-                    String clipboardText = new String(Base64.decode(textParameter.substring(startIndex), 0), StandardCharsets.UTF_8);
+                    String clipboardText = new String(Base64.getMimeDecoder().decode(new String(args, startIndex, argsLength - startIndex)), StandardCharsets.UTF_8);
                     mSession.onCopyTextToClipboard(clipboardText);
                 } catch (Exception e) {
-                    Log.e(LOG_TAG, "OSC Manipulate selection, invalid string '" + textParameter + "");
+                    LOG.severe("OSC Manipulate selection, invalid string '" + new String(args, textStart, argsLength - textStart) + "");
                 }
                 break;
             case 104:
@@ -2144,24 +2498,26 @@ public final class TerminalEmulator {
                 // resource. Any number of c parameters may be given. These parameters correspond to the ANSI colors 0-7,
                 // their bright versions 8-15, and if supported, the remainder of the 88-color or 256-color table. If no
                 // parameters are given, the entire table will be reset.
-                if (textParameter.isEmpty()) {
+                if (textStart == argsLength) {
                     mColors.reset();
                     mSession.onColorsChanged();
                 } else {
-                    int lastIndex = 0;
-                    for (int charIndex = 0; ; charIndex++) {
-                        boolean endOfInput = charIndex == textParameter.length();
-                        if (endOfInput || textParameter.charAt(charIndex) == ';') {
-                            try {
-                                int colorToReset = Integer.parseInt(textParameter.substring(lastIndex, charIndex));
+                    int colorToReset = -1;
+                    for (int charIndex = textStart; ; charIndex++) {
+                        boolean endOfInput = charIndex == argsLength;
+                        char b = endOfInput ? ';' : args[charIndex];
+                        if (b == ';') {
+                            // Invalid color numbers are ignored:
+                            if (colorToReset >= 0 && colorToReset < TextStyle.NUM_INDEXED_COLORS) {
                                 mColors.reset(colorToReset);
                                 mSession.onColorsChanged();
-                                if (endOfInput) break;
-                                charIndex++;
-                                lastIndex = charIndex;
-                            } catch (NumberFormatException e) {
-                                // Ignore.
                             }
+                            if (endOfInput) break;
+                            colorToReset = -1;
+                        } else if (b >= '0' && b <= '9' && colorToReset < TextStyle.NUM_INDEXED_COLORS) {
+                            colorToReset = ((colorToReset < 0) ? 0 : colorToReset * 10) + (b - '0');
+                        } else {
+                            colorToReset = Integer.MAX_VALUE;
                         }
                     }
                 }
@@ -2300,14 +2656,28 @@ public final class TerminalEmulator {
     }
 
     private void collectOSCArgs(int b) {
-        if (mOSCOrDeviceControlArgs.length() < MAX_OSC_STRING_LENGTH) {
-            mOSCOrDeviceControlArgs.appendCodePoint(b);
+        if (mOSCOrDeviceControlArgsLength < MAX_OSC_STRING_LENGTH) {
+            appendOSCOrDeviceControlArg(b);
             continueSequence(mEscapeState);
         } else {
             unknownSequence(b);
         }
     }
 
+    private void appendOSCOrDeviceControlArg(int codePoint) {
+        if (mOSCOrDeviceControlArgsLength + 2 > mOSCOrDeviceControlArgs.length)
+            mOSCOrDeviceControlArgs = Arrays.copyOf(mOSCOrDeviceControlArgs, 2 * mOSCOrDeviceControlArgs.length);
+        mOSCOrDeviceControlArgsLength += Character.toChars(codePoint, mOSCOrDeviceControlArgs, mOSCOrDeviceControlArgsLength);
+    }
+
+    /** Whether the OSC or device control arguments between start and end are the chars of the string s. */
+    private boolean oscOrDeviceControlArgsRegionEquals(int start, int end, String s) {
+        if (end > mOSCOrDeviceControlArgsLength || end - start != s.length()) return false;
+        for (int i = 0; i < s.length(); i++)
+            if (mOSCOrDeviceControlArgs[start + i] != s.charAt(i)) return false;
+        return true;
+    }
+
     private void unimplementedSequence(int b) {
         logError("Unimplemented sequence char '" + (char) b + "' (U+" + String.format("%04x", b) + ")");
         finishSequence();
@@ -2349,7 +2719,7 @@ public final class TerminalEmulator {
     }
 
     private void finishSequenceAndLogError(String error) {
-        if (LOG_ESCAPE_SEQUENCES) Log.w(LOG_TAG, error);
+        if (LOG_ESCAPE_SEQUENCES) LOG.warning(error);
         finishSequence();
     }
 
@@ -2584,10 +2954,119 @@ public final class TerminalEmulator {
         mSavedDecSetFlags = mSavedStateMain.mSavedDecFlags = mSavedStateAlt.mSavedDecFlags = mCurrentDecSetFlags;
 
         // XXX: Should we set terminal driver back to IUTF8 with termios?
-        mUtf8Index = mUtf8ToFollow = 0;
+        if (!mDecodingAhead) mUtf8Decoder.reset();
 
         mColors.reset();
         mSession.onColorsChanged();
+
+        mSixelDecoder = null;
+        mImageCache.clear();
+        mKittyImageNumbers.clear();
+    }
+
+    /**
+     * Write the state of the emulator other than the contents of its buffers, for {@link TerminalSnapshot}. An escape
+     * sequence being parsed is not included, so parsing restarts from the ground state when restored.
+     */
+    void writeSnapshotState(DataOutput out) throws IOException {
+        out.writeShort(mColumns);
+        out.writeShort(mRows);
+        out.writeBoolean(isAlternateBufferActive());
+        out.writeShort(mCursorRow);
+        out.writeShort(mCursorCol);
+        out.writeByte(mCursorStyle);
+        writeSnapshotString(out, mTitle);
+        out.writeShort(mTitleStack.size());
+        for (String title : mTitleStack) writeSnapshotString(out, title);
+        for (SavedScreenState state : new SavedScreenState[]{mSavedStateMain, mSavedStateAlt}) {
+            out.writeShort(state.mSavedCursorRow);
+            out.writeShort(state.mSavedCursorCol);
+            out.writeInt(state.mSavedEffect);
+            out.writeInt(state.mSavedForeColor);
+            out.writeInt(state.mSavedBackColor);
+            out.writeInt(state.mSavedDecFlags);
+            out.writeBoolean(state.mUseLineDrawingG0);
+            out.writeBoolean(state.mUseLineDrawingG1);
+            out.writeBoolean(state.mUseLineDrawingUsesG0);
+        }
+        out.writeBoolean(mUseLineDrawingG0);
+        out.writeBoolean(mUseLineDrawingG1);
+        out.writeBoolean(mUseLineDrawingUsesG0);
+        out.writeInt(mCurrentDecSetFlags);
+        out.writeInt(mSavedDecSetFlags);
+        out.writeBoolean(mInsertMode);
+        for (boolean tabStop : mTabStop) out.writeBoolean(tabStop);
+        out.writeShort(mTopMargin);
+        out.writeShort(mBottomMargin);
+        out.writeShort(mLeftMargin);
+        out.writeShort(mRightMargin);
+        out.writeBoolean(mAboutToAutoWrap);
+        out.writeInt(mForeColor);
+        out.writeInt(mBackColor);
+        out.writeInt(mEffect);
+        out.writeInt(mLastEmittedCodePoint);
+        for (int color : mColors.mCurrentColors) out.writeInt(color);
+    }
+
+    /**
+     * Restore the state written by {@link #writeSnapshotState(DataOutput)}, along with the buffers restored to the size
+     * it was written with.
+     */
+    void restoreSnapshotState(DataInput in) throws IOException {
+        mColumns = in.readShort();
+        mRows = in.readShort();
+        mScreen = in.readBoolean() ? mAltBuffer : mMainBuffer;
+        mCursorRow = in.readShort();
+        mCursorCol = in.readShort();
+        mCursorStyle = in.readByte();
+        mTitle = readSnapshotString(in);
+        mTitleStack.clear();
+        for (int i = in.readShort(); i > 0; i--) mTitleStack.push(readSnapshotString(in));
+        for (SavedScreenState state : new SavedScreenState[]{mSavedStateMain, mSavedStateAlt}) {
+            state.mSavedCursorRow = in.readShort();
+            state.mSavedCursorCol = in.readShort();
+            state.mSavedEffect = in.readInt();
+            state.mSavedForeColor = in.readInt();
+            state.mSavedBackColor = in.readInt();
+            state.mSavedDecFlags = in.readInt();
+            state.mUseLineDrawingG0 = in.readBoolean();
+            state.mUseLineDrawingG1 = in.readBoolean();
+            state.mUseLineDrawingUsesG0 = in.readBoolean();
+        }
+        mUseLineDrawingG0 = in.readBoolean();
+        mUseLineDrawingG1 = in.readBoolean();
+        mUseLineDrawingUsesG0 = in.readBoolean();
+        mCurrentDecSetFlags = in.readInt();
+        mSavedDecSetFlags = in.readInt();
+        mInsertMode = in.readBoolean();
+        mTabStop = new boolean[mColumns];
+        for (int i = 0; i < mColumns; i++) mTabStop[i] = in.readBoolean();
+        mTopMargin = in.readShort();
+        mBottomMargin = in.readShort();
+        mLeftMargin = in.readShort();
+        mRightMargin = in.readShort();
+        mAboutToAutoWrap = in.readBoolean();
+        mForeColor = in.readInt();
+        mBackColor = in.readInt();
+        mEffect = in.readInt();
+        mLastEmittedCodePoint = in.readInt();
+        for (int i = 0; i < mColors.mCurrentColors.length; i++) mColors.mCurrentColors[i] = in.readInt();
+
+        mArgIndex = 0;
+        mContinueSequence = false;
+        mEscapeState = ESC_NONE;
+        mUtf8Decoder.reset();
+        mSession.onColorsChanged();
+    }
+
+    private static void writeSnapshotString(DataOutput out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        // Titles are set by escape sequences, so cut any unreasonably long one to fit in writeUTF():
+        if (string != null) out.writeUTF(string.length() > 4096 ? string.substring(0, 4096) : string);
+    }
+
+    private static String readSnapshotString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
     }
 
     public String getSelectedText(int x1, int y1, int x2, int y2) {
@@ -2616,16 +3095,26 @@ public final class TerminalEmulator {
      * If DECSET 2004 is set, prefix paste with "\033[200~" and suffix with "\033[201~".
      */
     public void paste(String text) {
+        mSession.write(getPasteCode(text, isBracketedPasteMode()));
+    }
+
+    /** If DECSET 2004 is set, so that pasted text is to be bracketed. */
+    public boolean isBracketedPasteMode() {
+        return isDecsetInternalBitSet(DECSET_BIT_BRACKETED_PASTE_MODE);
+    }
+
+    /**
+     * The code to send to the process to paste text as with {@link #paste(String)}, which only needs the emulator for
+     * {@link #isBracketedPasteMode()}, so that it need not be locked while the text is filtered and written.
+     */
+    public static String getPasteCode(String text, boolean bracketed) {
         // First: Always remove escape key and C1 control characters [0x80,0x9F]:
         text = text.replaceAll("(\u001B|[\u0080-\u009F])", "");
         // Second: Replace all newlines (\n) or CRLF (\r\n) with carriage returns (\r).
         text = text.replaceAll("\r?\n", "\r");
 
         // Then: Implement bracketed paste mode if enabled:
-        boolean bracketed = isDecsetInternalBitSet(DECSET_BIT_BRACKETED_PASTE_MODE);
-        if (bracketed) mSession.write("\033[200~");
-        mSession.write(text);
-        if (bracketed) mSession.write("\033[201~");
+        return bracketed ? "\033[200~" + text + "\033[201~" : text;
     }
 
     /**
@@ -2641,7 +3130,6 @@ public final class TerminalEmulator {
         boolean mUseLineDrawingG0, mUseLineDrawingG1, mUseLineDrawingUsesG0 = true;
     }
 
-    @NonNull
     @Override
     public String toString() {
         return "TerminalEmulator[size=" + mScreen.mColumns + "x" + mScreen.mScreenRows + ", margins={" + mTopMargin + "," + mRightMargin + "," + mBottomMargin
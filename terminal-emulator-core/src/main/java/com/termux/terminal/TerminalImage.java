@@ -0,0 +1,63 @@
+package com.termux.terminal;
+
+/**
+ * A decoded inline image, shown in cells of the terminal which refer to it with a style from
+ * {@link TextStyle#encodeImageCell(int, int, int)}. The image is laid out with the cell size at the time it was received,
+ * so each cell shows a rectangle of {@link #getCellWidthPixels()} by {@link #getCellHeightPixels()} pixels of it, which
+ * the renderer scales to the current cell size.
+ */
+public final class TerminalImage {
+
+    private final int mWidth, mHeight;
+    /** The pixels as ARGB, row by row. */
+    private final int[] mPixels;
+    private final int mCellWidthPixels, mCellHeightPixels;
+
+    TerminalImage(int width, int height, int[] pixels, int cellWidthPixels, int cellHeightPixels) {
+        if (width < 1 || height < 1 || pixels.length < width * height || cellWidthPixels < 1 || cellHeightPixels < 1)
+            throw new IllegalArgumentException("Invalid image: width=" + width + ", height=" + height + ", pixels=" + pixels.length
+                + ", cellWidthPixels=" + cellWidthPixels + ", cellHeightPixels=" + cellHeightPixels);
+        mWidth = width;
+        mHeight = height;
+        mPixels = pixels;
+        mCellWidthPixels = cellWidthPixels;
+        mCellHeightPixels = cellHeightPixels;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /** The pixels as ARGB, row by row, which must not be changed. */
+    public int[] getPixels() {
+        return mPixels;
+    }
+
+    public int getCellWidthPixels() {
+        return mCellWidthPixels;
+    }
+
+    public int getCellHeightPixels() {
+        return mCellHeightPixels;
+    }
+
+    /** The number of cell columns the image spans. */
+    public int getColumns() {
+        return (mWidth + mCellWidthPixels - 1) / mCellWidthPixels;
+    }
+
+    /** The number of cell rows the image spans. */
+    public int getRows() {
+        return (mHeight + mCellHeightPixels - 1) / mCellHeightPixels;
+    }
+
+    /** The memory taken by the pixels. */
+    public int getByteCount() {
+        return 4 * mPixels.length;
+    }
+
+}
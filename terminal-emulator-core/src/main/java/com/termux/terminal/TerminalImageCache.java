@@ -0,0 +1,100 @@
+package com.termux.terminal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The decoded images of an emulator by number, keeping the least recently used ones within a budget of bytes. Cells of
+ * an image which has been evicted show nothing, so the budget bounds the memory taken by images however many are sent.
+ * <p>
+ * Images are added by the thread doing emulation and looked up by the renderer, so access is synchronized.
+ */
+public final class TerminalImageCache {
+
+    public static final int DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+    private final Map<Integer, TerminalImage> mImages = new LinkedHashMap<>(16, 0.75f, true);
+    private int mMaxBytes;
+    private int mBytes;
+    /** The number of the last image added, which wraps around within what fits in a style. */
+    private int mLastNumber;
+    /** Incremented each time an image is added or removed, so that what was drawn from the cache can tell if it is stale. */
+    private long mGeneration;
+
+    public TerminalImageCache(int maxBytes) {
+        setMaxBytes(maxBytes);
+    }
+
+    public synchronized int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /** Set the budget of bytes, evicting the least recently used images if more are used. */
+    public synchronized void setMaxBytes(int maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes=" + maxBytes);
+        mMaxBytes = maxBytes;
+        evict(null);
+    }
+
+    /** The bytes taken by the images in the cache. */
+    public synchronized int getByteCount() {
+        return mBytes;
+    }
+
+    public synchronized int size() {
+        return mImages.size();
+    }
+
+    /** A number which changes each time an image is added, removed or evicted. */
+    public synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Add an image, evicting the least recently used images as needed to stay within budget, and return its number. An
+     * image larger than the budget is not added, and 0, which is never the number of an image, is returned.
+     */
+    public synchronized int add(TerminalImage image) {
+        if (image.getByteCount() > mMaxBytes) return 0;
+        do {
+            mLastNumber = (mLastNumber + 1) & 0xffffff;
+        } while (mLastNumber == 0 || mImages.containsKey(mLastNumber));
+        mImages.put(mLastNumber, image);
+        mBytes += image.getByteCount();
+        mGeneration++;
+        evict(image);
+        return mLastNumber;
+    }
+
+    /** Get an image by number, or null if there is none or it has been evicted. */
+    public synchronized TerminalImage get(int number) {
+        return mImages.get(number);
+    }
+
+    public synchronized void remove(int number) {
+        TerminalImage image = mImages.remove(number);
+        if (image != null) {
+            mBytes -= image.getByteCount();
+            mGeneration++;
+        }
+    }
+
+    public synchronized void clear() {
+        if (!mImages.isEmpty()) mGeneration++;
+        mImages.clear();
+        mBytes = 0;
+    }
+
+    private void evict(TerminalImage keep) {
+        Iterator<TerminalImage> iterator = mImages.values().iterator();
+        while (mBytes > mMaxBytes && iterator.hasNext()) {
+            TerminalImage eldest = iterator.next();
+            if (eldest == keep) continue;
+            iterator.remove();
+            mBytes -= eldest.getByteCount();
+            mGeneration++;
+        }
+    }
+
+}
@@ -0,0 +1,557 @@
+package com.termux.terminal;
+
+import java.util.Arrays;
+
+/**
+ * A row in a terminal, composed of a fixed number of cells.
+ * <p>
+ * The text in the row is stored in a char[] array, {@link #mText}, for quick access during rendering.
+ */
+public final class TerminalRow {
+
+    private static final float SPARE_CAPACITY_FACTOR = 1.5f;
+    /** The maximum number of distinct styles in {@link #mStylePalette}, as indexed by a byte. */
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    /** The number of columns in this terminal row, only changed by {@link #reuse(int, long)}. */
+    private int mColumns;
+    /** The text filling this terminal row. */
+    public char[] mText;
+    /** The number of java chars used in {@link #mText}. */
+    private short mSpaceUsed;
+    /** If this row has been line wrapped due to text output at the end of line. */
+    boolean mLineWrap;
+    /**
+     * The distinct styles used in the row, see {@link TextStyle}. Most rows only use a few styles, so instead of a long
+     * for each cell they store a palette of styles and a byte for each cell indexing it, see {@link #getStyle(int)}.
+     */
+    private long[] mStylePalette = new long[4];
+    /** The number of styles used in {@link #mStylePalette}. */
+    private int mStylePaletteSize;
+    /** The index into {@link #mStylePalette} of the style of each cell, or null while all cells use the first style. */
+    private byte[] mStyleIndices;
+    /** The style of each cell once the row uses more than {@link #MAX_PALETTE_SIZE} styles, otherwise null. */
+    private long[] mUnpalettedStyles;
+    /** If this row might contain chars with width != 1, used for deactivating fast path */
+    boolean mHasNonOneWidthOrSurrogateChars;
+    /**
+     * Incremented on every change to the text or style of this row, so that a renderer can skip redrawing it when
+     * unchanged. See {@link #getVersion()}.
+     */
+    private int mVersion;
+    /**
+     * The result of {@link #findStartOfColumn(int)} for each column, built lazily from the start of the row when it
+     * contains chars with width != 1. Only the first {@link #mIndexedColumns} entries are valid, so changes to
+     * {@link #mText} must lower that to the first column whose entry they may affect.
+     */
+    private short[] mColumnIndex;
+    private int mIndexedColumns;
+    /**
+     * The id of the buffer which interned this row through a {@link TranscriptRowInterner}, or 0 if it has not been
+     * interned. An interned row may be held by several buffers, so must not be changed.
+     */
+    int mInternedBy;
+
+    /** Construct a blank row (containing only whitespace, ' ') with a specified style. */
+    public TerminalRow(int columns, long style) {
+        mColumns = columns;
+        mText = new char[(int) (SPARE_CAPACITY_FACTOR * columns)];
+        clear(style);
+    }
+
+    /** NOTE: The sourceX2 is exclusive. */
+    public void copyInterval(TerminalRow line, int sourceX1, int sourceX2, int destinationX) {
+        mHasNonOneWidthOrSurrogateChars |= line.mHasNonOneWidthOrSurrogateChars;
+        final int x1 = line.findStartOfColumn(sourceX1);
+        final int x2 = line.findStartOfColumn(sourceX2);
+        boolean startingFromSecondHalfOfWideChar = (sourceX1 > 0 && line.wideDisplayCharacterStartingAt(sourceX1 - 1));
+        final char[] sourceChars = (this == line) ? Arrays.copyOf(line.mText, line.mText.length) : line.mText;
+        int latestNonCombiningWidth = 0;
+        for (int i = x1; i < x2; i++) {
+            char sourceChar = sourceChars[i];
+            int codePoint = Character.isHighSurrogate(sourceChar) ? Character.toCodePoint(sourceChar, sourceChars[++i]) : sourceChar;
+            if (startingFromSecondHalfOfWideChar) {
+                // Just treat copying second half of wide char as copying whitespace.
+                codePoint = ' ';
+                startingFromSecondHalfOfWideChar = false;
+            }
+            int w = WcWidth.width(codePoint);
+            if (w > 0) {
+                destinationX += latestNonCombiningWidth;
+                sourceX1 += latestNonCombiningWidth;
+                latestNonCombiningWidth = w;
+            }
+            setChar(destinationX, codePoint, line.getStyle(sourceX1));
+        }
+    }
+
+    public int getSpaceUsed() {
+        return mSpaceUsed;
+    }
+
+    /**
+     * The version of the contents of this row. As long as the same row object has the same version it displays the same
+     * text with the same styles, while rows moving between screen positions on scrolling are told apart by identity.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    public long getStyle(int column) {
+        if (mUnpalettedStyles != null) return mUnpalettedStyles[column];
+        if (mStyleIndices == null) return mStylePalette[0];
+        return mStylePalette[mStyleIndices[column] & 0xFF];
+    }
+
+    /** Set the style of a cell without changing its text. */
+    void setStyle(int column, long style) {
+        mVersion++;
+        fillStyle(column, column + 1, style);
+    }
+
+    /** NOTE: The endColumn is exclusive. */
+    void fillStyle(int startColumn, int endColumn, long style) {
+        if (mUnpalettedStyles == null) {
+            if (mStyleIndices == null) {
+                if (style == mStylePalette[0]) return;
+                mStyleIndices = new byte[mColumns];
+            }
+            int paletteIndex = findOrAddPaletteStyle(style);
+            if (paletteIndex >= 0) {
+                Arrays.fill(mStyleIndices, startColumn, endColumn, (byte) paletteIndex);
+                return;
+            }
+        }
+        Arrays.fill(mUnpalettedStyles, startColumn, endColumn, style);
+    }
+
+    /**
+     * Find the index of a style in {@link #mStylePalette}, adding it if necessary. If the palette is full of styles in
+     * use, switch to {@link #mUnpalettedStyles} and return -1.
+     */
+    private int findOrAddPaletteStyle(long style) {
+        long[] palette = mStylePalette;
+        for (int i = 0; i < mStylePaletteSize; i++)
+            if (palette[i] == style) return i;
+
+        if (mStylePaletteSize == MAX_PALETTE_SIZE) {
+            compactStylePalette();
+            if (mStylePaletteSize == MAX_PALETTE_SIZE) {
+                mUnpalettedStyles = new long[mColumns];
+                for (int column = 0; column < mColumns; column++)
+                    mUnpalettedStyles[column] = palette[mStyleIndices[column] & 0xFF];
+                mStyleIndices = null;
+                return -1;
+            }
+        } else if (mStylePaletteSize == palette.length) {
+            mStylePalette = palette = Arrays.copyOf(palette, Math.min(2 * palette.length, MAX_PALETTE_SIZE));
+        }
+        palette[mStylePaletteSize] = style;
+        return mStylePaletteSize++;
+    }
+
+    /** Drop styles from {@link #mStylePalette} which have been overwritten in all cells. */
+    private void compactStylePalette() {
+        final long[] palette = mStylePalette;
+        final byte[] indices = mStyleIndices;
+        final int[] newIndices = new int[MAX_PALETTE_SIZE];
+        Arrays.fill(newIndices, -1);
+        // Keep the first style in place, as it is used for all cells while there are no indices:
+        newIndices[0] = 0;
+        int newSize = 1;
+        for (int column = 0; column < mColumns; column++) {
+            int oldIndex = indices[column] & 0xFF;
+            int newIndex = newIndices[oldIndex];
+            if (newIndex < 0) {
+                newIndices[oldIndex] = newIndex = newSize++;
+                palette[newIndex] = palette[oldIndex];
+            }
+            indices[column] = (byte) newIndex;
+        }
+        mStylePaletteSize = newSize;
+    }
+
+    /** Note that the column may end of second half of wide character. */
+    public int findStartOfColumn(int column) {
+        if (column == mColumns) return getSpaceUsed();
+        if (!mHasNonOneWidthOrSurrogateChars) return column;
+        if (column >= mIndexedColumns) indexColumnsUpTo(column);
+        return mColumnIndex[column];
+    }
+
+    /**
+     * Extend {@link #mColumnIndex} to cover the specified column. A column in the second half of a wide character starts
+     * at that character, and combining characters belong to the preceding column.
+     */
+    private void indexColumnsUpTo(int column) {
+        if (mColumnIndex == null) mColumnIndex = new short[mColumns];
+        final short[] columnIndex = mColumnIndex;
+        final char[] text = mText;
+        final int spaceUsed = mSpaceUsed;
+
+        // Continue from the start of the character at the last indexed column, as the column after it starts after any
+        // combining chars which may follow:
+        int nextColumnToIndex = Math.max(mIndexedColumns - 1, 0);
+        while (nextColumnToIndex > 0 && columnIndex[nextColumnToIndex - 1] == columnIndex[nextColumnToIndex])
+            nextColumnToIndex--;
+        int currentColumn = nextColumnToIndex;
+        int currentCharIndex = (nextColumnToIndex == 0) ? 0 : columnIndex[nextColumnToIndex];
+
+        while (nextColumnToIndex <= column && currentCharIndex < spaceUsed) {
+            final int startCharIndex = currentCharIndex;
+            char c = text[currentCharIndex++];
+            int codePoint = Character.isHighSurrogate(c) ? Character.toCodePoint(c, text[currentCharIndex++]) : c;
+            int wcwidth = WcWidth.width(codePoint);
+            if (wcwidth <= 0) continue;
+
+            currentColumn += wcwidth;
+            // Columns before the end of this character start at it:
+            while (nextColumnToIndex < currentColumn && nextColumnToIndex < mColumns)
+                columnIndex[nextColumnToIndex++] = (short) startCharIndex;
+            // The column after it starts after any combining chars:
+            if (nextColumnToIndex == currentColumn && nextColumnToIndex < mColumns) {
+                while (currentCharIndex < spaceUsed) {
+                    if (Character.isHighSurrogate(text[currentCharIndex])) {
+                        if (WcWidth.width(Character.toCodePoint(text[currentCharIndex], text[currentCharIndex + 1])) <= 0) {
+                            currentCharIndex += 2;
+                        } else {
+                            break;
+                        }
+                    } else if (WcWidth.width(text[currentCharIndex]) <= 0) {
+                        currentCharIndex++;
+                    } else {
+                        break;
+                    }
+                }
+                columnIndex[nextColumnToIndex++] = (short) currentCharIndex;
+            }
+        }
+        mIndexedColumns = nextColumnToIndex;
+    }
+
+    private boolean wideDisplayCharacterStartingAt(int column) {
+        if (!mHasNonOneWidthOrSurrogateChars || column < 0 || column + 1 >= mColumns) return false;
+        // The second half of a wide character starts at the same char as the first half:
+        final int startOfColumn = findStartOfColumn(column);
+        return startOfColumn == findStartOfColumn(column + 1) && WcWidth.width(mText, startOfColumn) == 2;
+    }
+
+    public void clear(long style) {
+        mVersion++;
+        mIndexedColumns = 0;
+        Arrays.fill(mText, ' ');
+        mStylePalette[0] = style;
+        mStylePaletteSize = 1;
+        mUnpalettedStyles = null;
+        // Keep an index array which has been needed before, as the row is likely to be reused for similar output:
+        if (mStyleIndices != null) Arrays.fill(mStyleIndices, (byte) 0);
+        mSpaceUsed = (short) mColumns;
+        mHasNonOneWidthOrSurrogateChars = false;
+    }
+
+    /** Set the text of a row restored by {@link TranscriptArchive}, which must not have been written to since cleared. */
+    void restoreText(char[] text, boolean hasNonOneWidthOrSurrogateChars) {
+        mVersion++;
+        mIndexedColumns = 0;
+        if (text.length > mText.length) mText = new char[text.length];
+        System.arraycopy(text, 0, mText, 0, text.length);
+        mSpaceUsed = (short) text.length;
+        mHasNonOneWidthOrSurrogateChars = hasNonOneWidthOrSurrogateChars;
+    }
+
+    /**
+     * Clear the row for reuse with another number of columns, keeping arrays which are large enough. Used by
+     * {@link TerminalBuffer#resize(int, int, int, int[], long, boolean)} to reflow into the rows it copies from.
+     */
+    void reuse(int columns, long style) {
+        mColumns = columns;
+        if (mText.length < columns) mText = new char[(int) (SPARE_CAPACITY_FACTOR * columns)];
+        if (mStyleIndices != null && mStyleIndices.length < columns) mStyleIndices = null;
+        if (mColumnIndex != null && mColumnIndex.length < columns) mColumnIndex = null;
+        mLineWrap = false;
+        clear(style);
+    }
+
+    /** Make this row an exact copy of another row with the same number of columns. */
+    void copyFrom(TerminalRow source) {
+        mVersion++;
+        mIndexedColumns = 0;
+        if (mText.length < source.mSpaceUsed) mText = new char[source.mText.length];
+        System.arraycopy(source.mText, 0, mText, 0, source.mSpaceUsed);
+        mSpaceUsed = source.mSpaceUsed;
+        mHasNonOneWidthOrSurrogateChars = source.mHasNonOneWidthOrSurrogateChars;
+        mLineWrap = source.mLineWrap;
+        mStylePalette = source.mStylePalette.clone();
+        mStylePaletteSize = source.mStylePaletteSize;
+        mStyleIndices = (source.mStyleIndices == null) ? null : source.mStyleIndices.clone();
+        mUnpalettedStyles = (source.mUnpalettedStyles == null) ? null : source.mUnpalettedStyles.clone();
+    }
+
+    /**
+     * Copy columns from a row with only chars of width 1, where each column is one char, as if by {@link #setChar} for
+     * each column from the left.
+     */
+    void copyOneWidthColumns(TerminalRow source, int sourceColumn, int destinationColumn, int count) {
+        if (mHasNonOneWidthOrSurrogateChars) {
+            for (int i = 0; i < count; i++)
+                setChar(destinationColumn + i, source.mText[sourceColumn + i], source.getStyle(sourceColumn + i));
+            return;
+        }
+
+        mVersion++;
+        System.arraycopy(source.mText, sourceColumn, mText, destinationColumn, count);
+        int runStart = 0;
+        long runStyle = source.getStyle(sourceColumn);
+        for (int i = 1; i <= count; i++) {
+            final long style = (i == count) ? ~runStyle : source.getStyle(sourceColumn + i);
+            if (style != runStyle) {
+                fillStyle(destinationColumn + runStart, destinationColumn + i, runStyle);
+                runStart = i;
+                runStyle = style;
+            }
+        }
+    }
+
+    /**
+     * Set a char of width 1 or 2 in a column which has not been written to since the row was cleared, nor have any
+     * columns after it, as {@link #setChar(int, int, long)} would. As the columns from there on are single spaces, the
+     * chars of the column can be found without indexing the row.
+     */
+    void appendChar(int column, int codePoint, int displayWidth, long style) {
+        mVersion++;
+        fillStyle(column, column + 1, style);
+        if (!mHasNonOneWidthOrSurrogateChars) {
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT || displayWidth != 1) {
+                mHasNonOneWidthOrSurrogateChars = true;
+            } else {
+                mText[column] = (char) codePoint;
+                return;
+            }
+        }
+
+        final int oldSpaceUsed = mSpaceUsed;
+        final int startOfColumn = oldSpaceUsed - (mColumns - column);
+        final int charCount = Character.charCount(codePoint);
+        final int newSpaceUsed = startOfColumn + charCount + (mColumns - column - displayWidth);
+        if (newSpaceUsed > mText.length) mText = Arrays.copyOf(mText, mText.length + mColumns);
+        final char[] text = mText;
+        // Only blank columns follow, so the text after the new char is just spaces:
+        if (newSpaceUsed > oldSpaceUsed) Arrays.fill(text, oldSpaceUsed, newSpaceUsed, ' ');
+        Character.toChars(codePoint, text, startOfColumn);
+        mSpaceUsed = (short) newSpaceUsed;
+        mIndexedColumns = Math.min(mIndexedColumns, column);
+    }
+
+    /** A hash code of the text, styles and line wrap of this row, consistent with {@link #contentEquals(TerminalRow)}. */
+    int contentHashCode() {
+        int hash = 31 * mColumns + (mLineWrap ? 1 : 0);
+        final char[] text = mText;
+        for (int i = 0; i < mSpaceUsed; i++)
+            hash = 31 * hash + text[i];
+        // Hash the runs of equal styles rather than each column, as most rows only have a few:
+        long runStyle = getStyle(0);
+        hash = 31 * hash + Long.hashCode(runStyle);
+        for (int column = 1; column < mColumns; column++) {
+            final long style = getStyle(column);
+            if (style != runStyle) {
+                hash = 31 * (31 * hash + column) + Long.hashCode(style);
+                runStyle = style;
+            }
+        }
+        return hash;
+    }
+
+    /** If this row has the same number of columns, text, styles and line wrap as another. */
+    boolean contentEquals(TerminalRow other) {
+        if (other.mColumns != mColumns || other.mSpaceUsed != mSpaceUsed || other.mLineWrap != mLineWrap) return false;
+        for (int i = 0; i < mSpaceUsed; i++)
+            if (other.mText[i] != mText[i]) return false;
+        for (int column = 0; column < mColumns; column++)
+            if (other.getStyle(column) != getStyle(column)) return false;
+        return true;
+    }
+
+    /** An estimate in bytes of the heap used by this row, for reporting memory use. */
+    int getApproximateMemoryUsage() {
+        // The object itself, and each array with its header:
+        int size = 64 + (16 + 2 * mText.length) + (16 + 8 * mStylePalette.length);
+        if (mStyleIndices != null) size += 16 + mStyleIndices.length;
+        if (mUnpalettedStyles != null) size += 16 + 8 * mUnpalettedStyles.length;
+        if (mColumnIndex != null) size += 16 + 2 * mColumnIndex.length;
+        return size;
+    }
+
+    // https://github.com/steven676/Android-Terminal-Emulator/commit/9a47042620bec87617f0b4f5d50568535668fe26
+    public void setChar(int columnToSet, int codePoint, long style) {
+        if (columnToSet  < 0 || columnToSet >= mColumns)
+            throw new IllegalArgumentException("TerminalRow.setChar(): columnToSet=" + columnToSet + ", codePoint=" + codePoint + ", style=" + style);
+
+        mVersion++;
+        fillStyle(columnToSet, columnToSet + 1, style);
+
+        final int newCodePointDisplayWidth = WcWidth.width(codePoint);
+
+        // Fast path when we don't have any chars with width != 1
+        if (!mHasNonOneWidthOrSurrogateChars) {
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT || newCodePointDisplayWidth != 1) {
+                mHasNonOneWidthOrSurrogateChars = true;
+            } else {
+                mText[columnToSet] = (char) codePoint;
+                return;
+            }
+        }
+
+        final boolean newIsCombining = newCodePointDisplayWidth <= 0;
+
+        boolean wasExtraColForWideChar = (columnToSet > 0) && wideDisplayCharacterStartingAt(columnToSet - 1);
+
+        if (newIsCombining) {
+            // When standing at second half of wide character and inserting combining:
+            if (wasExtraColForWideChar) columnToSet--;
+        } else {
+            // Check if we are overwriting the second half of a wide character starting at the previous column:
+            if (wasExtraColForWideChar) setChar(columnToSet - 1, ' ', style);
+            // Check if we are overwriting the first half of a wide character starting at the next column:
+            boolean overwritingWideCharInNextColumn = newCodePointDisplayWidth == 2 && wideDisplayCharacterStartingAt(columnToSet + 1);
+            if (overwritingWideCharInNextColumn) setChar(columnToSet + 1, ' ', style);
+        }
+
+        char[] text = mText;
+        final int oldStartOfColumnIndex = findStartOfColumn(columnToSet);
+        final int oldCodePointDisplayWidth = WcWidth.width(text, oldStartOfColumnIndex);
+
+        // Get the number of elements in the mText array this column uses now
+        int oldCharactersUsedForColumn;
+        if (columnToSet + oldCodePointDisplayWidth < mColumns) {
+            int oldEndOfColumnIndex = findStartOfColumn(columnToSet + oldCodePointDisplayWidth);
+            oldCharactersUsedForColumn = oldEndOfColumnIndex - oldStartOfColumnIndex;
+        } else {
+            // Last character.
+            oldCharactersUsedForColumn = mSpaceUsed - oldStartOfColumnIndex;
+        }
+
+        // Find how many chars this column will need
+        int newCharactersUsedForColumn = Character.charCount(codePoint);
+        if (newIsCombining) {
+            // Combining characters are added to the contents of the column instead of overwriting them, so that they
+            // modify the existing contents.
+            // FIXME: Unassigned characters also get width=0.
+            if (newCharactersUsedForColumn + oldCharactersUsedForColumn > 15) {
+                // Protect against too many combining characters.
+                return;
+            }
+            newCharactersUsedForColumn += oldCharactersUsedForColumn;
+        }
+
+        int oldNextColumnIndex = oldStartOfColumnIndex + oldCharactersUsedForColumn;
+        int newNextColumnIndex = oldStartOfColumnIndex + newCharactersUsedForColumn;
+        // Columns before this one start at unchanged chars:
+        mIndexedColumns = Math.min(mIndexedColumns, columnToSet);
+
+        final int javaCharDifference = newCharactersUsedForColumn - oldCharactersUsedForColumn;
+        if (javaCharDifference > 0) {
+            // Shift the rest of the line right.
+            int oldCharactersAfterColumn = mSpaceUsed - oldNextColumnIndex;
+            if (mSpaceUsed + javaCharDifference > text.length) {
+                // We need to grow the array
+                char[] newText = new char[text.length + mColumns];
+                System.arraycopy(text, 0, newText, 0, oldStartOfColumnIndex + oldCharactersUsedForColumn);
+                System.arraycopy(text, oldNextColumnIndex, newText, newNextColumnIndex, oldCharactersAfterColumn);
+                mText = text = newText;
+            } else {
+                System.arraycopy(text, oldNextColumnIndex, text, newNextColumnIndex, oldCharactersAfterColumn);
+            }
+        } else if (javaCharDifference < 0) {
+            // Shift the rest of the line left.
+            System.arraycopy(text, oldNextColumnIndex, text, newNextColumnIndex, mSpaceUsed - oldNextColumnIndex);
+        }
+        mSpaceUsed += javaCharDifference;
+
+        // Store char. A combining character is stored at the end of the existing contents so that it modifies them:
+        //noinspection ResultOfMethodCallIgnored - since we already now how many java chars is used.
+        Character.toChars(codePoint, text, oldStartOfColumnIndex + (newIsCombining ? oldCharactersUsedForColumn : 0));
+
+        if (oldCodePointDisplayWidth == 2 && newCodePointDisplayWidth == 1) {
+            // Replace second half of wide char with a space. Which mean that we actually add a ' ' java character.
+            if (mSpaceUsed + 1 > text.length) {
+                char[] newText = new char[text.length + mColumns];
+                System.arraycopy(text, 0, newText, 0, newNextColumnIndex);
+                System.arraycopy(text, newNextColumnIndex, newText, newNextColumnIndex + 1, mSpaceUsed - newNextColumnIndex);
+                mText = text = newText;
+            } else {
+                System.arraycopy(text, newNextColumnIndex, text, newNextColumnIndex + 1, mSpaceUsed - newNextColumnIndex);
+            }
+            text[newNextColumnIndex] = ' ';
+
+            ++mSpaceUsed;
+        } else if (oldCodePointDisplayWidth == 1 && newCodePointDisplayWidth == 2) {
+            if (columnToSet == mColumns - 1) {
+                throw new IllegalArgumentException("Cannot put wide character in last column");
+            } else if (columnToSet == mColumns - 2) {
+                // Truncate the line to the second part of this wide char:
+                mSpaceUsed = (short) newNextColumnIndex;
+            } else {
+                // Overwrite the contents of the next column, which mean we actually remove java characters. Due to the
+                // check at the beginning of this method we know that we are not overwriting a wide char.
+                int newNextNextColumnIndex = newNextColumnIndex + (Character.isHighSurrogate(mText[newNextColumnIndex]) ? 2 : 1);
+                int nextLen = newNextNextColumnIndex - newNextColumnIndex;
+
+                // Shift the array leftwards.
+                System.arraycopy(text, newNextNextColumnIndex, text, newNextColumnIndex, mSpaceUsed - newNextNextColumnIndex);
+                mSpaceUsed -= nextLen;
+            }
+        }
+    }
+
+    /**
+     * Set a run of printable 7-bit ASCII code points, all with a display width of one, starting at the specified column.
+     * Equivalent to calling {@link #setChar(int, int, long)} for each code point, but only walks the row once.
+     */
+    public void setAsciiRun(int columnToSet, int[] codePoints, int offset, int count, long style) {
+        if (columnToSet < 0 || count < 0 || columnToSet + count > mColumns)
+            throw new IllegalArgumentException("TerminalRow.setAsciiRun(): columnToSet=" + columnToSet + ", count=" + count + ", mColumns=" + mColumns);
+        if (count == 0) return;
+
+        mVersion++;
+        fillStyle(columnToSet, columnToSet + count, style);
+
+        if (!mHasNonOneWidthOrSurrogateChars) {
+            // Fast path: java char index equals column index.
+            char[] text = mText;
+            for (int i = 0; i < count; i++)
+                text[columnToSet + i] = (char) codePoints[offset + i];
+            return;
+        }
+
+        // Let setChar() split any wide character straddling the start or end of the run, so that the run covers
+        // exactly the java chars of its columns:
+        final int lastColumn = columnToSet + count - 1;
+        setChar(lastColumn, codePoints[offset + count - 1], style);
+        setChar(columnToSet, codePoints[offset], style);
+
+        char[] text = mText;
+        final int startIndex = findStartOfColumn(columnToSet);
+        final int endIndex = (lastColumn + 1 == mColumns) ? mSpaceUsed : findStartOfColumn(lastColumn + 1);
+        final int javaCharDifference = count - (endIndex - startIndex);
+        mIndexedColumns = Math.min(mIndexedColumns, columnToSet);
+        if (mSpaceUsed + javaCharDifference > text.length) {
+            char[] newText = new char[mSpaceUsed + javaCharDifference + mColumns];
+            System.arraycopy(text, 0, newText, 0, startIndex);
+            System.arraycopy(text, endIndex, newText, endIndex + javaCharDifference, mSpaceUsed - endIndex);
+            mText = text = newText;
+        } else if (javaCharDifference != 0) {
+            System.arraycopy(text, endIndex, text, endIndex + javaCharDifference, mSpaceUsed - endIndex);
+        }
+        mSpaceUsed += javaCharDifference;
+
+        for (int i = 0; i < count; i++)
+            text[startIndex + i] = (char) codePoints[offset + i];
+    }
+
+    boolean isBlank() {
+        for (int charIndex = 0, charLen = getSpaceUsed(); charIndex < charLen; charIndex++)
+            if (mText[charIndex] != ' ') return false;
+        return true;
+    }
+
+}
@@ -0,0 +1,284 @@
+package com.termux.terminal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Checkpoints of the state of a {@link TerminalEmulator} in a file, from which an emulator can be restored after the
+ * process has been killed: the transcript and screen rows of both buffers, the cursor, modes, margins, tab stops,
+ * title and colors.
+ * <p>
+ * The file is a header followed by one compressed record per checkpoint. Rows are not changed after scrolling into the
+ * transcript, so a checkpoint only appends the rows which have scrolled into it since the previous checkpoint, along with
+ * the screens and the rest of the state, which are small. After the transcript has been cleared or resized, or once the
+ * file holds twice as many rows as fit in the transcript, a checkpoint instead rewrites the file with the whole
+ * transcript. Each record has a checksum, so a record cut short by the process being killed while writing it is ignored
+ * and the emulator is restored from the checkpoint before.
+ * <p>
+ * Rows in a {@link TranscriptArchive} are not included, as the archive is deleted with its session.
+ */
+public final class TerminalSnapshot {
+
+    private static final int MAGIC = 0x54534e50;
+    private static final int VERSION = 1;
+    /** The size of the header of a record: the compressed size, uncompressed size and checksum. */
+    private static final int RECORD_HEADER_SIZE = 12;
+    /** Set in the flags of a record with the whole transcript, replacing the rows of earlier records. */
+    private static final int FLAG_FULL = 1;
+
+    private final File mFile;
+
+    /** The buffer, its transcript generation and its count of rows added to the transcript at the last checkpoint. */
+    private TerminalBuffer mCheckpointedBuffer;
+    private int mTranscriptGeneration;
+    private long mTranscriptRowsAdded;
+    /** The number of transcript rows in the file. */
+    private long mRowsInFile;
+
+    /** Set once the file has been deleted, after which checkpoints are no longer written. */
+    private boolean mDeleted;
+
+    /** The record of the checkpoint last recorded by {@link #record(TerminalEmulator)} and what it contains. */
+    private ByteBuffer mRecord = ByteBuffer.allocate(64 * 1024);
+    private boolean mRecordFull;
+    private int mRecordRows;
+    private TerminalBuffer mRecordBuffer;
+    private int mRecordTranscriptGeneration;
+    private long mRecordTranscriptRowsAdded;
+    private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] mCompressed = new byte[16 * 1024];
+
+    public TerminalSnapshot(File file) {
+        mFile = file;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Write a checkpoint of the emulator, appending to the file or rewriting it as described above. The emulator must
+     * not be changed while this runs.
+     */
+    public void checkpoint(TerminalEmulator emulator) throws IOException {
+        record(emulator);
+        write();
+    }
+
+    /**
+     * Record the state of the emulator for a checkpoint to be written by {@link #write()}. Only recording needs the
+     * emulator to be left unchanged, so it need not be locked while the record is compressed and written.
+     */
+    public void record(TerminalEmulator emulator) throws IOException {
+        final TerminalBuffer mainBuffer = emulator.mMainBuffer;
+        final int transcriptRows = mainBuffer.getTranscriptRowsInMemory();
+        final long addedRows = mainBuffer.getTranscriptRowsAdded() - mTranscriptRowsAdded;
+        final boolean full = mainBuffer != mCheckpointedBuffer || mainBuffer.getTranscriptGeneration() != mTranscriptGeneration
+            || addedRows > transcriptRows || mRowsInFile + addedRows > 2L * mainBuffer.mTotalRows;
+        final int newRows = full ? transcriptRows : (int) addedRows;
+
+        mRecord.clear();
+        mRecord.put((byte) (full ? FLAG_FULL : 0));
+        mRecord.putShort((short) mainBuffer.mColumns);
+        mRecord.putInt(newRows);
+        for (int row = -newRows; row < 0; row++)
+            writeRow(mainBuffer.getRow(row), mainBuffer.mColumns);
+        writeScreen(mainBuffer);
+        writeScreen(emulator.mAltBuffer);
+        final ByteArrayOutputStream state = new ByteArrayOutputStream(2048);
+        emulator.writeSnapshotState(new DataOutputStream(state));
+        ensureRemaining(4 + state.size());
+        mRecord.putInt(state.size());
+        mRecord.put(state.toByteArray());
+
+        mRecordFull = full;
+        mRecordRows = newRows;
+        mRecordBuffer = mainBuffer;
+        mRecordTranscriptGeneration = mainBuffer.getTranscriptGeneration();
+        mRecordTranscriptRowsAdded = mainBuffer.getTranscriptRowsAdded();
+    }
+
+    /** Compress the state recorded by {@link #record(TerminalEmulator)} and write it to the file, unless deleted. */
+    public void write() throws IOException {
+        if (mDeleted || mRecordBuffer == null) return;
+        final boolean full = mRecordFull;
+        final int newRows = mRecordRows;
+        final int compressedSize = compressRecord();
+        final CRC32 crc = new CRC32();
+        crc.update(mCompressed, 0, compressedSize);
+        final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        recordHeader.putInt(compressedSize).putInt(mRecord.position()).putInt((int) crc.getValue());
+
+        // Until written, an append could leave the file without this checkpoint, so the next one should rewrite it:
+        mCheckpointedBuffer = null;
+        if (full) {
+            final File newFile = new File(mFile.getPath() + ".new");
+            try (OutputStream out = new FileOutputStream(newFile)) {
+                out.write(ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).array());
+                out.write(recordHeader.array());
+                out.write(mCompressed, 0, compressedSize);
+            }
+            Files.move(newFile.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            mRowsInFile = newRows;
+        } else {
+            try (OutputStream out = new FileOutputStream(mFile, true)) {
+                out.write(recordHeader.array());
+                out.write(mCompressed, 0, compressedSize);
+            }
+            mRowsInFile += newRows;
+        }
+        mCheckpointedBuffer = mRecordBuffer;
+        mTranscriptGeneration = mRecordTranscriptGeneration;
+        mTranscriptRowsAdded = mRecordTranscriptRowsAdded;
+        mRecordBuffer = null;
+    }
+
+    /**
+     * Restore an emulator from the latest complete checkpoint in the file, at the size it had then. The emulator should
+     * be newly created, and be resized to the current size of its view afterwards. Returns false, leaving the emulator
+     * unchanged, if there is no checkpoint to restore.
+     */
+    public boolean restore(TerminalEmulator emulator) throws IOException {
+        if (!mFile.exists()) return false;
+        final ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(mFile.toPath()));
+        if (file.remaining() < 8 || file.getInt() != MAGIC || file.getInt() != VERSION) return false;
+
+        TerminalRow[] transcript = new TerminalRow[0];
+        int transcriptRowCount = 0;
+        ByteBuffer lastScreens = null;
+        int records = 0;
+        final Inflater inflater = new Inflater();
+        try {
+            while (true) {
+                final ByteBuffer record = readRecord(file, inflater);
+                if (record == null) break;
+                final boolean full = (record.get() & FLAG_FULL) != 0;
+                final int columns = record.getShort();
+                final int newRows = record.getInt();
+                if (full) transcriptRowCount = 0;
+                if (transcriptRowCount + newRows > transcript.length)
+                    transcript = Arrays.copyOf(transcript, Math.max(2 * transcript.length, transcriptRowCount + newRows));
+                for (int i = 0; i < newRows; i++)
+                    transcript[transcriptRowCount++] = TranscriptArchive.readRow(record, columns);
+                lastScreens = record;
+                records++;
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // A record which passed its checksum but could not be read, so written by something else. Use those before:
+        } finally {
+            inflater.end();
+        }
+        if (lastScreens == null) return false;
+
+        final TerminalBuffer mainBuffer = emulator.mMainBuffer;
+        final int mainColumns = lastScreens.getShort();
+        final int mainRows = lastScreens.getShort();
+        final TerminalRow[] mainLines = Arrays.copyOf(transcript, transcriptRowCount + mainRows);
+        for (int i = 0; i < mainRows; i++)
+            mainLines[transcriptRowCount + i] = TranscriptArchive.readRow(lastScreens, mainColumns);
+        final int altColumns = lastScreens.getShort();
+        final int altRows = lastScreens.getShort();
+        final TerminalRow[] altLines = new TerminalRow[altRows];
+        for (int i = 0; i < altRows; i++)
+            altLines[i] = TranscriptArchive.readRow(lastScreens, altColumns);
+        final byte[] state = new byte[lastScreens.getInt()];
+        lastScreens.get(state);
+
+        mainBuffer.restoreRows(mainColumns, mainRows, Math.max(mainBuffer.mTotalRows, mainRows), mainLines, mainLines.length);
+        emulator.mAltBuffer.restoreRows(altColumns, altRows, altRows, altLines, altRows);
+        emulator.restoreSnapshotState(new DataInputStream(new ByteArrayInputStream(state)));
+
+        // Continue appending to the file, which holds the restored transcript:
+        mCheckpointedBuffer = mainBuffer;
+        mTranscriptGeneration = mainBuffer.getTranscriptGeneration();
+        mTranscriptRowsAdded = mainBuffer.getTranscriptRowsAdded();
+        mRowsInFile = transcriptRowCount;
+        return records > 0;
+    }
+
+    /** Delete the file, so that there is nothing to restore, and write no more checkpoints to it. */
+    public void delete() {
+        mDeleted = true;
+        mCheckpointedBuffer = null;
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    private void writeScreen(TerminalBuffer buffer) {
+        ensureRemaining(4);
+        mRecord.putShort((short) buffer.mColumns);
+        mRecord.putShort((short) buffer.mScreenRows);
+        for (int row = 0; row < buffer.mScreenRows; row++)
+            writeRow(buffer.getRow(row), buffer.mColumns);
+    }
+
+    private void writeRow(TerminalRow row, int columns) {
+        ensureRemaining(TranscriptArchive.maxEncodedRowSize(row, columns));
+        TranscriptArchive.writeRow(mRecord, row, columns);
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (mRecord.remaining() >= bytes) return;
+        final ByteBuffer grown = ByteBuffer.allocate(2 * mRecord.capacity() + bytes);
+        mRecord.flip();
+        mRecord = grown.put(mRecord);
+    }
+
+    /** Compress {@link #mRecord} into {@link #mCompressed}, returning the compressed size. */
+    private int compressRecord() {
+        mDeflater.reset();
+        mDeflater.setInput(mRecord.array(), 0, mRecord.position());
+        mDeflater.finish();
+        int compressedSize = 0;
+        while (!mDeflater.finished()) {
+            if (compressedSize == mCompressed.length) mCompressed = Arrays.copyOf(mCompressed, 2 * mCompressed.length);
+            compressedSize += mDeflater.deflate(mCompressed, compressedSize, mCompressed.length - compressedSize);
+        }
+        return compressedSize;
+    }
+
+    /** Read and uncompress the next record, or return null if there is no complete and valid one. */
+    private static ByteBuffer readRecord(ByteBuffer file, Inflater inflater) {
+        if (file.remaining() < RECORD_HEADER_SIZE) return null;
+        final int compressedSize = file.getInt();
+        final int size = file.getInt();
+        final int checksum = file.getInt();
+        if (compressedSize < 0 || size < 0 || compressedSize > file.remaining()) return null;
+
+        final CRC32 crc = new CRC32();
+        crc.update(file.array(), file.position(), compressedSize);
+        if ((int) crc.getValue() != checksum) return null;
+
+        final byte[] record = new byte[size];
+        inflater.reset();
+        inflater.setInput(file.array(), file.position(), compressedSize);
+        try {
+            int inflated = 0;
+            while (inflated < size) {
+                final int count = inflater.inflate(record, inflated, size - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) return null;
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            return null;
+        }
+        file.position(file.position() + compressedSize);
+        return ByteBuffer.wrap(record);
+    }
+
+}
@@ -3,14 +3,19 @@ package com.termux.terminal;
 /**
  * <p>
  * Encodes effects, foreground and background colors into a 64 bit long, which are stored for each cell in a terminal
- * row in {@link TerminalRow#mStyle}.
+ * row in {@link TerminalRow#getStyle(int)}.
  * </p>
  * <p>
  * The bit layout is:
  * </p>
- * - 16 flags (11 currently used).
+ * - 16 flags (12 currently used).
  * - 24 for foreground color (only 9 first bits if a color index).
  * - 24 for background color (only 9 first bits if a color index).
+ * <p>
+ * A cell showing part of an image instead has the image flag set and no effects, and the bits otherwise used for colors
+ * hold the number of the image in its {@link TerminalImageCache} (24 bits, in place of the foreground color) and which
+ * cell of the image it shows, counted in cells from the top left corner of the image (12 bits each for row and column,
+ * in place of the background color).
  */
 public final class TextStyle {
 
@@ -35,6 +40,11 @@ public final class TextStyle {
     private final static int CHARACTER_ATTRIBUTE_TRUECOLOR_FOREGROUND = 1 << 9;
     /** If true (24-bit) color is used for the cell for foreground. */
     private final static int CHARACTER_ATTRIBUTE_TRUECOLOR_BACKGROUND= 1 << 10;
+    /** If the cell shows part of an image, see the class description. */
+    private final static int CHARACTER_ATTRIBUTE_IMAGE = 1 << 11;
+
+    /** The most cells an image can span horizontally or vertically. */
+    public final static int MAX_IMAGE_CELLS = 1 << 12;
 
     public final static int COLOR_INDEX_FOREGROUND = 256;
     public final static int COLOR_INDEX_BACKGROUND = 257;
@@ -87,4 +97,26 @@ public final class TextStyle {
         return (int) (style & 0b11111111111);
     }
 
+    /** The style of the cell showing the part of an image at the specified cell column and row of the image. */
+    static long encodeImageCell(int imageNumber, int column, int row) {
+        return CHARACTER_ATTRIBUTE_IMAGE | ((imageNumber & 0xffffffL) << 40) | ((long) (row & 0xfff) << 28) | ((long) (column & 0xfff) << 16);
+    }
+
+    public static boolean isImageCell(long style) {
+        return (style & CHARACTER_ATTRIBUTE_IMAGE) != 0;
+    }
+
+    /** The number of the image shown in a cell, see {@link TerminalImageCache#get(int)}. */
+    public static int decodeImageNumber(long style) {
+        return (int) ((style >>> 40) & 0xffffffL);
+    }
+
+    public static int decodeImageColumn(long style) {
+        return (int) ((style >>> 16) & 0xfff);
+    }
+
+    public static int decodeImageRow(long style) {
+        return (int) ((style >>> 28) & 0xfff);
+    }
+
 }
@@ -0,0 +1,274 @@
+package com.termux.terminal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Rows which have scrolled out of the transcript of a {@link TerminalBuffer}, kept compressed in a file so that the
+ * scroll history is not limited by the size of the in-memory transcript.
+ * <p>
+ * Rows are collected into pages of {@link #PAGE_ROWS} rows, and each full page is compressed and appended to the file.
+ * Only the page being filled and a few pages read back, for drawing or searching the scroll history, are kept in
+ * memory. Rows read back are copies which are not kept up to date, so must not be modified.
+ * <p>
+ * The archive is only used by its buffer, under the same lock. If writing to the file fails, rows are no longer
+ * archived and are dropped as without an archive, see {@link #getError()}.
+ */
+public final class TranscriptArchive {
+
+    /** The number of rows compressed together. */
+    private static final int PAGE_ROWS = 256;
+    /** The number of pages read back from the file and kept in {@link #mPageCache}. */
+    private static final int MAX_CACHED_PAGES = 4;
+
+    private final File mFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+
+    /** The offset in the file of each full page, followed by the end of the last one. */
+    private long[] mPageOffsets = new long[64];
+    /** The uncompressed size of each full page. */
+    private int[] mPageSizes = new int[64];
+    private int mPageCount;
+
+    /** The encoded rows of the page being filled, which is not written to the file until full. */
+    private ByteBuffer mPendingPage = ByteBuffer.allocate(64 * 1024);
+    private int mPendingRows;
+
+    /** Pages read back, by page index. The page being filled is included once read, if it has not grown since. */
+    private final Map<Integer, TerminalRow[]> mPageCache = new LinkedHashMap<Integer, TerminalRow[]>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, TerminalRow[]> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    /** The number of columns of the rows in {@link #mPageCache}. */
+    private int mCachedColumns;
+
+    private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater mInflater = new Inflater();
+    private byte[] mCompressed = new byte[8192];
+
+    private IOException mError;
+
+    /**
+     * Create an archive in a file, replacing any existing content. The file should be in app-private storage, and is
+     * deleted by {@link #close()}.
+     */
+    public TranscriptArchive(File file) throws IOException {
+        mFile = file;
+        mRandomAccessFile = new RandomAccessFile(file, "rw");
+        mRandomAccessFile.setLength(0);
+        mChannel = mRandomAccessFile.getChannel();
+    }
+
+    /** The number of rows in the archive, the oldest being row 0. */
+    public int getRowCount() {
+        return mPageCount * PAGE_ROWS + mPendingRows;
+    }
+
+    /** The error which stopped rows from being archived, or null if there has been none. */
+    public IOException getError() {
+        return mError;
+    }
+
+    /** Close and delete the file. The archive must not be used after this. */
+    public void close() {
+        mPageCache.clear();
+        mDeflater.end();
+        mInflater.end();
+        try {
+            mRandomAccessFile.close();
+        } catch (IOException e) {
+            // Nothing to do about it, the file is deleted below.
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    /** Add a row after the newest one. The row is encoded right away, so it may be reused afterwards. */
+    void add(TerminalRow row, int columns) {
+        if (mError != null) return;
+        // Never written to, so blank:
+        if (row == null) row = new TerminalRow(columns, TextStyle.NORMAL);
+        try {
+            final int maxRowSize = maxEncodedRowSize(row, columns);
+            if (mPendingPage.remaining() < maxRowSize) {
+                final ByteBuffer grown = ByteBuffer.allocate(2 * mPendingPage.capacity() + maxRowSize);
+                mPendingPage.flip();
+                mPendingPage = grown.put(mPendingPage);
+            }
+            writeRow(mPendingPage, row, columns);
+            if (++mPendingRows == PAGE_ROWS) writePendingPage();
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /** Remove all rows, truncating the file. */
+    void clear() {
+        mPageCount = 0;
+        mPendingRows = 0;
+        mPendingPage.clear();
+        mPageCache.clear();
+        if (mError != null) return;
+        try {
+            mChannel.truncate(0);
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * Get a row, read back from the file if necessary. Rows archived with another number of columns are cut or padded
+     * to the specified number of columns.
+     */
+    TerminalRow getRow(int index, int columns) {
+        if (index < 0 || index >= getRowCount())
+            throw new IllegalArgumentException("index=" + index + ", rowCount=" + getRowCount());
+        if (columns != mCachedColumns) {
+            mPageCache.clear();
+            mCachedColumns = columns;
+        }
+
+        final int page = index / PAGE_ROWS;
+        final int pageRows = (page == mPageCount) ? mPendingRows : PAGE_ROWS;
+        TerminalRow[] rows = mPageCache.get(page);
+        if (rows == null || rows.length != pageRows) {
+            rows = readPage(page, pageRows, columns);
+            mPageCache.put(page, rows);
+        }
+        return rows[index % PAGE_ROWS];
+    }
+
+    private TerminalRow[] readPage(int page, int pageRows, int columns) {
+        final TerminalRow[] rows = new TerminalRow[pageRows];
+        try {
+            final ByteBuffer in = (page == mPageCount) ? ByteBuffer.wrap(mPendingPage.array(), 0, mPendingPage.position()) : ByteBuffer.wrap(readAndInflate(page));
+            for (int i = 0; i < pageRows; i++) rows[i] = readRow(in, columns);
+        } catch (IOException | DataFormatException | BufferUnderflowException e) {
+            // Show what could not be read as blank rows rather than failing to draw:
+            for (int i = 0; i < pageRows; i++)
+                if (rows[i] == null) rows[i] = new TerminalRow(columns, TextStyle.NORMAL);
+        }
+        return rows;
+    }
+
+    private void writePendingPage() throws IOException {
+        final int pageSize = mPendingPage.position();
+        mDeflater.reset();
+        mDeflater.setInput(mPendingPage.array(), 0, pageSize);
+        mDeflater.finish();
+        int compressedSize = 0;
+        while (!mDeflater.finished()) {
+            if (compressedSize == mCompressed.length) mCompressed = Arrays.copyOf(mCompressed, 2 * mCompressed.length);
+            compressedSize += mDeflater.deflate(mCompressed, compressedSize, mCompressed.length - compressedSize);
+        }
+
+        if (mPageCount + 1 == mPageOffsets.length) {
+            mPageOffsets = Arrays.copyOf(mPageOffsets, 2 * mPageOffsets.length);
+            mPageSizes = Arrays.copyOf(mPageSizes, 2 * mPageSizes.length);
+        }
+        final long offset = mPageOffsets[mPageCount];
+        final ByteBuffer buffer = ByteBuffer.wrap(mCompressed, 0, compressedSize);
+        while (buffer.hasRemaining()) mChannel.write(buffer, offset + buffer.position());
+
+        mPageSizes[mPageCount] = pageSize;
+        mPageOffsets[++mPageCount] = offset + compressedSize;
+        mPendingPage.clear();
+        mPendingRows = 0;
+    }
+
+    private byte[] readAndInflate(int page) throws IOException, DataFormatException {
+        final long offset = mPageOffsets[page];
+        final int compressedSize = (int) (mPageOffsets[page + 1] - offset);
+        if (compressedSize > mCompressed.length) mCompressed = new byte[compressedSize];
+        final ByteBuffer buffer = ByteBuffer.wrap(mCompressed, 0, compressedSize);
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, offset + buffer.position()) < 0) throw new IOException("Unexpected end of " + mFile);
+        }
+
+        final byte[] bytes = new byte[mPageSizes[page]];
+        mInflater.reset();
+        mInflater.setInput(mCompressed, 0, compressedSize);
+        int size = 0;
+        while (size < bytes.length) {
+            int inflated = mInflater.inflate(bytes, size, bytes.length - size);
+            if (inflated == 0 && (mInflater.finished() || mInflater.needsInput())) throw new DataFormatException("Truncated page " + page);
+            size += inflated;
+        }
+        return bytes;
+    }
+
+    /** The most bytes a row can take when written, with a style run for each column. */
+    static int maxEncodedRowSize(TerminalRow row, int columns) {
+        return 7 + 2 * row.getSpaceUsed() + 10 * columns;
+    }
+
+    /**
+     * Write the number of columns, line wrap, text and runs of equal styles of a row. Also used by
+     * {@link TerminalSnapshot}.
+     */
+    static void writeRow(ByteBuffer out, TerminalRow row, int columns) {
+        out.putShort((short) columns);
+        out.put((byte) ((row.mLineWrap ? 1 : 0) | (row.mHasNonOneWidthOrSurrogateChars ? 2 : 0)));
+        final int spaceUsed = row.getSpaceUsed();
+        out.putShort((short) spaceUsed);
+        final char[] text = row.mText;
+        for (int i = 0; i < spaceUsed; i++) out.putChar(text[i]);
+
+        // The number of runs is filled in after them:
+        final int runsPosition = out.position();
+        out.putShort((short) 0);
+        int runs = 0;
+        int runStart = 0;
+        long runStyle = row.getStyle(0);
+        for (int column = 1; column <= columns; column++) {
+            final long style = (column == columns) ? ~runStyle : row.getStyle(column);
+            if (style != runStyle) {
+                out.putShort((short) (column - runStart));
+                out.putLong(runStyle);
+                runs++;
+                runStart = column;
+                runStyle = style;
+            }
+        }
+        out.putShort(runsPosition, (short) runs);
+    }
+
+    static TerminalRow readRow(ByteBuffer in, int columns) {
+        final int archivedColumns = in.getShort();
+        final int flags = in.get();
+        final char[] text = new char[in.getShort()];
+        for (int i = 0; i < text.length; i++) text[i] = in.getChar();
+
+        final int runs = in.getShort();
+        int runStart = in.getShort();
+        final TerminalRow row = new TerminalRow(archivedColumns, in.getLong());
+        row.restoreText(text, (flags & 2) != 0);
+        for (int i = 1; i < runs; i++) {
+            final int runLength = in.getShort();
+            row.fillStyle(runStart, runStart + runLength, in.getLong());
+            runStart += runLength;
+        }
+        row.mLineWrap = (flags & 1) != 0;
+        if (archivedColumns == columns) return row;
+
+        // Archived before the terminal was resized:
+        final TerminalRow resizedRow = new TerminalRow(columns, row.getStyle(archivedColumns - 1));
+        resizedRow.copyInterval(row, 0, Math.min(archivedColumns, columns), 0);
+        resizedRow.mLineWrap = row.mLineWrap;
+        return resizedRow;
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.termux.terminal;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Rows which have scrolled into the transcript of a {@link TerminalBuffer}, shared between all buffers using the same
+ * interner so that sessions showing the same output, such as several sessions following the same log, keep identical
+ * rows once.
+ * <p>
+ * A row is interned when it scrolls off the screen, which is after the last time the emulator writes to it. Interned
+ * rows may be held by several buffers, so buffers never change them but replace them with a new row where they would
+ * have written to or reused the row, see {@link TerminalRow#mInternedBy}. Rows are only weakly referenced here, and are
+ * dropped once no buffer holds them.
+ * <p>
+ * An interner may be used by buffers on different threads.
+ */
+public final class TranscriptRowInterner {
+
+    /** A weak reference to an interned row, chained with the others of the same bucket of {@link #mTable}. */
+    private static final class Entry extends WeakReference<TerminalRow> {
+        final int mHash;
+        Entry mNext;
+
+        Entry(TerminalRow row, int hash, ReferenceQueue<TerminalRow> queue, Entry next) {
+            super(row, queue);
+            mHash = hash;
+            mNext = next;
+        }
+    }
+
+    /** Buckets of entries by {@link TerminalRow#contentHashCode()}. The length is a power of two. */
+    private Entry[] mTable = new Entry[256];
+    private int mSize;
+    /** Where entries of rows which are no longer held are queued, to be removed by {@link #removeClearedEntries()}. */
+    private final ReferenceQueue<TerminalRow> mQueue = new ReferenceQueue<>();
+    private int mNextBufferId = 1;
+
+    /** The number of distinct rows held by buffers using this interner. */
+    public synchronized int getRowCount() {
+        removeClearedEntries();
+        return mSize;
+    }
+
+    /** A new id, never 0, for a buffer to set as {@link TerminalRow#mInternedBy} on rows it interns. */
+    synchronized int newBufferId() {
+        return mNextBufferId++;
+    }
+
+    /**
+     * Get an interned row with the same content as the specified one, or intern the specified row, marking it as
+     * interned by the buffer with the specified id, if there is none.
+     */
+    synchronized TerminalRow intern(TerminalRow row, int bufferId) {
+        removeClearedEntries();
+        final int hash = row.contentHashCode();
+        final int bucket = hash & (mTable.length - 1);
+        for (Entry entry = mTable[bucket]; entry != null; entry = entry.mNext) {
+            if (entry.mHash != hash) continue;
+            final TerminalRow internedRow = entry.get();
+            if (internedRow != null && internedRow.contentEquals(row)) return internedRow;
+        }
+
+        row.mInternedBy = bufferId;
+        mTable[bucket] = new Entry(row, hash, mQueue, mTable[bucket]);
+        if (++mSize > mTable.length - mTable.length / 4) resize();
+        return row;
+    }
+
+    private void resize() {
+        final Entry[] oldTable = mTable;
+        final Entry[] table = new Entry[2 * oldTable.length];
+        for (Entry entry : oldTable) {
+            while (entry != null) {
+                final Entry next = entry.mNext;
+                final int bucket = entry.mHash & (table.length - 1);
+                entry.mNext = table[bucket];
+                table[bucket] = entry;
+                entry = next;
+            }
+        }
+        mTable = table;
+    }
+
+    private void removeClearedEntries() {
+        Object cleared;
+        while ((cleared = mQueue.poll()) != null) {
+            final Entry clearedEntry = (Entry) cleared;
+            final int bucket = clearedEntry.mHash & (mTable.length - 1);
+            Entry previous = null;
+            for (Entry entry = mTable[bucket]; entry != null; previous = entry, entry = entry.mNext) {
+                if (entry != clearedEntry) continue;
+                if (previous == null) mTable[bucket] = entry.mNext; else previous.mNext = entry.mNext;
+                mSize--;
+                break;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,285 @@
+package com.termux.terminal;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Search for text in the transcript and screen of a {@link TerminalBuffer}.
+ * <p>
+ * Rows joined by line wrapping are searched as one line. The matches of each line are cached with the rows they were
+ * found in, so that searching again after output has scrolled in only looks at new or changed lines, and the transcript
+ * is never turned into one string.
+ * <p>
+ * Positions use the external row coordinates of {@link TerminalBuffer#externalToInternalRow(int)}, which shift as
+ * output scrolls in. When the session is parsing on a worker thread, calls must hold the lock on the emulator, as for
+ * other access to the buffer.
+ */
+public final class TranscriptSearch {
+
+    /** The maximum number of lines in {@link #mLineMatches}, enough for transcripts of several thousand lines. */
+    private static final int MAX_CACHED_LINES = 16384;
+
+    /** A match, from the start position to the exclusive end column on the end row. */
+    public static final class Match {
+        public final int mStartRow, mStartColumn, mEndRow, mEndColumn;
+
+        Match(int startRow, int startColumn, int endRow, int endColumn) {
+            mStartRow = startRow;
+            mStartColumn = startColumn;
+            mEndRow = endRow;
+            mEndColumn = endColumn;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Match)) return false;
+            Match other = (Match) o;
+            return mStartRow == other.mStartRow && mStartColumn == other.mStartColumn && mEndRow == other.mEndRow && mEndColumn == other.mEndColumn;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new int[]{mStartRow, mStartColumn, mEndRow, mEndColumn});
+        }
+
+        @Override
+        public String toString() {
+            return "Match[" + mStartRow + "," + mStartColumn + " - " + mEndRow + "," + mEndColumn + "]";
+        }
+    }
+
+    private final TerminalBuffer mBuffer;
+    private Pattern mPattern;
+
+    /** Matches of lines searched before, by the first row of the line. */
+    private final Map<TerminalRow, LineMatches> mLineMatches = new LinkedHashMap<TerminalRow, LineMatches>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TerminalRow, LineMatches> eldest) {
+            return size() > MAX_CACHED_LINES;
+        }
+    };
+
+    /** Reused for the text of a line while searching it. */
+    private final StringBuilder mLineText = new StringBuilder();
+    private int[] mCharRows = new int[256], mCharColumns = new int[256], mCharEndColumns = new int[256];
+
+    public TranscriptSearch(TerminalBuffer buffer) {
+        mBuffer = buffer;
+    }
+
+    public TerminalBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Set what to search for, or null to not search at all.
+     *
+     * @param query      the text to find, or a regular expression if regex is set.
+     * @param regex      if the query is a {@link Pattern} rather than literal text.
+     * @param ignoreCase if matching should be case-insensitive.
+     * @throws java.util.regex.PatternSyntaxException if regex is set and the query is not a valid pattern.
+     */
+    public void setQuery(String query, boolean regex, boolean ignoreCase) {
+        mLineMatches.clear();
+        if (query == null || query.isEmpty()) {
+            mPattern = null;
+            return;
+        }
+        int flags = regex ? 0 : Pattern.LITERAL;
+        if (ignoreCase) flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        mPattern = Pattern.compile(query, flags);
+    }
+
+    public boolean hasQuery() {
+        return mPattern != null;
+    }
+
+    /** Find the first match starting at or after a position, searching towards the bottom of the screen. */
+    public Match findNext(int row, int column) {
+        if (mPattern == null) return null;
+        final int lastRow = mBuffer.mScreenRows - 1;
+        int lineStart = findLineStart(clampRow(row));
+        while (lineStart <= lastRow) {
+            LineMatches line = getLineMatches(lineStart);
+            for (int i = 0; i < line.mCount; i++) {
+                int startRow = lineStart + line.mMatches[4 * i];
+                int startColumn = line.mMatches[4 * i + 1];
+                if (startRow > row || (startRow == row && startColumn >= column)) return line.toMatch(lineStart, i);
+            }
+            lineStart += line.mRows.length;
+        }
+        return null;
+    }
+
+    /** Find the last match starting before a position, searching towards the top of the transcript. */
+    public Match findPrevious(int row, int column) {
+        if (mPattern == null) return null;
+        final int firstRow = -mBuffer.getActiveTranscriptRows();
+        int lineStart = findLineStart(clampRow(row));
+        while (true) {
+            LineMatches line = getLineMatches(lineStart);
+            for (int i = line.mCount - 1; i >= 0; i--) {
+                int startRow = lineStart + line.mMatches[4 * i];
+                int startColumn = line.mMatches[4 * i + 1];
+                if (startRow < row || (startRow == row && startColumn < column)) return line.toMatch(lineStart, i);
+            }
+            if (lineStart == firstRow) return null;
+            lineStart = findLineStart(lineStart - 1);
+        }
+    }
+
+    /**
+     * The columns of a row covered by matches, as pairs of start and exclusive end columns, or null if there are none.
+     * Used for highlighting the matches on screen.
+     */
+    public int[] getMatchedColumns(int row) {
+        if (mPattern == null) return null;
+        final int lineStart = findLineStart(row);
+        final LineMatches line = getLineMatches(lineStart);
+        final int rowInLine = row - lineStart;
+        int[] result = null;
+        int resultLength = 0;
+        for (int i = 0; i < line.mCount; i++) {
+            final int startRowInLine = line.mMatches[4 * i];
+            final int endRowInLine = line.mMatches[4 * i + 2];
+            if (rowInLine < startRowInLine || rowInLine > endRowInLine) continue;
+            if (result == null) result = new int[2 * line.mCount];
+            result[resultLength++] = (rowInLine == startRowInLine) ? line.mMatches[4 * i + 1] : 0;
+            result[resultLength++] = (rowInLine == endRowInLine) ? line.mMatches[4 * i + 3] : mBuffer.mColumns;
+        }
+        return (result == null || resultLength == result.length) ? result : Arrays.copyOf(result, resultLength);
+    }
+
+    private int clampRow(int row) {
+        return Math.max(-mBuffer.getActiveTranscriptRows(), Math.min(row, mBuffer.mScreenRows - 1));
+    }
+
+    /** The first row of the line containing a row, which continues from the previous row if that is line wrapped. */
+    private int findLineStart(int row) {
+        final int firstRow = -mBuffer.getActiveTranscriptRows();
+        while (row > firstRow && getRow(row - 1).mLineWrap) row--;
+        return row;
+    }
+
+    private TerminalRow getRow(int row) {
+        return mBuffer.getRow(row);
+    }
+
+    /** Get the matches in the line starting at a row from {@link #mLineMatches}, searching it if missing or stale. */
+    private LineMatches getLineMatches(int lineStart) {
+        final int lastRow = mBuffer.mScreenRows - 1;
+        final TerminalRow firstRow = getRow(lineStart);
+        LineMatches line = mLineMatches.get(firstRow);
+        if (line != null && line.isValid(this, lineStart)) return line;
+
+        int rowCount = 1;
+        while (lineStart + rowCount - 1 < lastRow && getRow(lineStart + rowCount - 1).mLineWrap) rowCount++;
+        line = new LineMatches(rowCount, mBuffer.mColumns);
+        for (int i = 0; i < rowCount; i++) {
+            line.mRows[i] = getRow(lineStart + i);
+            line.mVersions[i] = line.mRows[i].getVersion();
+        }
+        line.mWrapsAtEnd = line.mRows[rowCount - 1].mLineWrap;
+        searchLine(line);
+        mLineMatches.put(firstRow, line);
+        return line;
+    }
+
+    /** Collect the text of the rows of a line, with the position of each char, and find the matches in it. */
+    private void searchLine(LineMatches line) {
+        final StringBuilder text = mLineText;
+        text.setLength(0);
+        int charCount = 0;
+        for (int rowInLine = 0; rowInLine < line.mRows.length; rowInLine++) {
+            final TerminalRow row = line.mRows[rowInLine];
+            final char[] chars = row.mText;
+            int spaceUsed = row.getSpaceUsed();
+            // Trailing spaces of the last row are not part of the line, as when copying text:
+            if (rowInLine == line.mRows.length - 1) while (spaceUsed > 0 && chars[spaceUsed - 1] == ' ') spaceUsed--;
+
+            int column = 0;
+            int endColumn = 0;
+            for (int i = 0; i < spaceUsed; i++) {
+                final char c = chars[i];
+                if (!Character.isLowSurrogate(c)) {
+                    final int width = WcWidth.width(chars, i);
+                    // Combining chars belong to the cell of the preceding char:
+                    if (width > 0) {
+                        column = endColumn;
+                        endColumn = column + width;
+                    }
+                }
+                if (charCount == mCharRows.length) {
+                    final int newLength = 2 * charCount;
+                    mCharRows = Arrays.copyOf(mCharRows, newLength);
+                    mCharColumns = Arrays.copyOf(mCharColumns, newLength);
+                    mCharEndColumns = Arrays.copyOf(mCharEndColumns, newLength);
+                }
+                mCharRows[charCount] = rowInLine;
+                mCharColumns[charCount] = column;
+                mCharEndColumns[charCount] = endColumn;
+                charCount++;
+                text.append(c);
+            }
+        }
+
+        final Matcher matcher = mPattern.matcher(text);
+        while (matcher.find()) {
+            final int start = matcher.start();
+            final int end = matcher.end();
+            // Empty matches, such as of "a*", have nothing to show:
+            if (start == end) continue;
+            line.add(mCharRows[start], mCharColumns[start], mCharRows[end - 1], mCharEndColumns[end - 1]);
+        }
+    }
+
+    /** The matches of a line, valid as long as it consists of the same rows with the same versions. */
+    private static final class LineMatches {
+        final TerminalRow[] mRows;
+        final int[] mVersions;
+        final int mColumns;
+        /** If the last row was line wrapped, so that the line would continue on the next row once that is scrolled in. */
+        boolean mWrapsAtEnd;
+        /** The row in the line and column of the start and exclusive end of each match. */
+        int[] mMatches = new int[0];
+        int mCount;
+
+        LineMatches(int rowCount, int columns) {
+            mRows = new TerminalRow[rowCount];
+            mVersions = new int[rowCount];
+            mColumns = columns;
+        }
+
+        boolean isValid(TranscriptSearch search, int lineStart) {
+            if (mColumns != search.mBuffer.mColumns) return false;
+            final int lastRow = search.mBuffer.mScreenRows - 1;
+            for (int i = 0; i < mRows.length; i++) {
+                final int row = lineStart + i;
+                if (row > lastRow) return false;
+                final TerminalRow rowObject = search.getRow(row);
+                if (rowObject != mRows[i] || rowObject.getVersion() != mVersions[i]) return false;
+                // Line wrapping is not part of the version, so check that the rows still form the same line:
+                if (i < mRows.length - 1 && !rowObject.mLineWrap) return false;
+            }
+            // The line has stopped wrapping, or wraps into a row which has been scrolled in after it:
+            return mRows[mRows.length - 1].mLineWrap == mWrapsAtEnd && !(mWrapsAtEnd && lineStart + mRows.length <= lastRow);
+        }
+
+        void add(int startRow, int startColumn, int endRow, int endColumn) {
+            if (4 * mCount == mMatches.length) mMatches = Arrays.copyOf(mMatches, Math.max(16, 2 * mMatches.length));
+            mMatches[4 * mCount] = startRow;
+            mMatches[4 * mCount + 1] = startColumn;
+            mMatches[4 * mCount + 2] = endRow;
+            mMatches[4 * mCount + 3] = endColumn;
+            mCount++;
+        }
+
+        Match toMatch(int lineStart, int index) {
+            return new Match(lineStart + mMatches[4 * index], mMatches[4 * index + 1], lineStart + mMatches[4 * index + 2], mMatches[4 * index + 3]);
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.termux.terminal;
+
+/**
+ * Decoder of a UTF-8 byte stream, as received from the pseudo-teletype, into code points.
+ * <p>
+ * A whole chunk of input is decoded in one pass by {@link #decode(byte[], int, int, int[])}. Sequences split across
+ * chunk boundaries are kept as state until the next call.
+ * <p>
+ * Malformed input follows the rules of the Unicode Standard (see the comments in {@link #decode(byte[], int, int, int[])}),
+ * with overlong encodings, unassigned code points and surrogates decoded to {@link TerminalEmulator#UNICODE_REPLACEMENT_CHAR}.
+ * C1 control characters are dropped.
+ */
+final class Utf8Decoder {
+
+    /**
+     * Output for a multi-byte sequence which ended prematurely. This is displayed as the replacement character directly,
+     * without being interpreted by the escape sequence state machine.
+     */
+    static final int MALFORMED_SEQUENCE = -1;
+
+    /** The maximum number of code points output for a chunk of the specified number of bytes. */
+    static int maxCodePointsFor(int byteCount) {
+        // A sequence left over from the previous chunk may be output as MALFORMED_SEQUENCE in front of the code point
+        // of the first byte.
+        return byteCount + 1;
+    }
+
+    private int mUtf8ToFollow, mUtf8Index;
+    private final byte[] mUtf8InputBuffer = new byte[4];
+
+    /**
+     * Bit sets of code points which are unassigned or surrogates according to {@link Character#getType(int)}, which
+     * is slow on Android, lazily computed in blocks of 256 code points.
+     */
+    private final long[][] mReplacedCodePointBlocks = new long[(Character.MAX_CODE_POINT + 1) >> 8][];
+
+    /** Forget any partially received sequence. */
+    void reset() {
+        mUtf8Index = mUtf8ToFollow = 0;
+    }
+
+    /**
+     * Decode bytes into code points.
+     *
+     * @param buffer     a byte array containing the bytes to decode
+     * @param offset     the offset of the first byte to decode
+     * @param length     the number of bytes to decode
+     * @param codePoints the output array, which must hold at least {@link #maxCodePointsFor(int)} elements
+     * @return the number of code points written to codePoints
+     */
+    int decode(byte[] buffer, int offset, int length, int[] codePoints) {
+        int codePointCount = 0;
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            final byte byteToProcess = buffer[i];
+            if (mUtf8ToFollow > 0) {
+                if ((byteToProcess & 0b11000000) == 0b10000000) {
+                    // 10xxxxxx, a continuation byte.
+                    mUtf8InputBuffer[mUtf8Index++] = byteToProcess;
+                    if (--mUtf8ToFollow == 0) {
+                        byte firstByteMask = (byte) (mUtf8Index == 2 ? 0b00011111 : (mUtf8Index == 3 ? 0b00001111 : 0b00000111));
+                        int codePoint = (mUtf8InputBuffer[0] & firstByteMask);
+                        for (int j = 1; j < mUtf8Index; j++)
+                            codePoint = ((codePoint << 6) | (mUtf8InputBuffer[j] & 0b00111111));
+                        if (((codePoint <= 0b1111111) && mUtf8Index > 1) || (codePoint < 0b11111111111 && mUtf8Index > 2)
+                            || (codePoint < 0b1111111111111111 && mUtf8Index > 3)) {
+                            // Overlong encoding.
+                            codePoint = TerminalEmulator.UNICODE_REPLACEMENT_CHAR;
+                        }
+
+                        mUtf8Index = mUtf8ToFollow = 0;
+
+                        if (codePoint >= 0x80 && codePoint <= 0x9F) {
+                            // Sequence decoded to a C1 control character which we ignore. They are
+                            // not used nowadays and increases the risk of messing up the terminal state
+                            // on binary input. XTerm does not allow them in utf-8:
+                            // "It is not possible to use a C1 control obtained from decoding the
+                            // UTF-8 text" - http://invisible-island.net/xterm/ctlseqs/ctlseqs.html
+                        } else {
+                            if (isUnassignedOrSurrogate(codePoint)) codePoint = TerminalEmulator.UNICODE_REPLACEMENT_CHAR;
+                            codePoints[codePointCount++] = codePoint;
+                        }
+                    }
+                    continue;
+                } else {
+                    // Not a UTF-8 continuation byte so replace the entire sequence up to now with the replacement char:
+                    mUtf8Index = mUtf8ToFollow = 0;
+                    codePoints[codePointCount++] = MALFORMED_SEQUENCE;
+                    // The Unicode Standard Version 6.2 – Core Specification
+                    // (http://www.unicode.org/versions/Unicode6.2.0/ch03.pdf):
+                    // "If the converter encounters an ill-formed UTF-8 code unit sequence which starts with a valid first
+                    // byte, but which does not continue with valid successor bytes (see Table 3-7), it must not consume the
+                    // successor bytes as part of the ill-formed subsequence
+                    // whenever those successor bytes themselves constitute part of a well-formed UTF-8 code unit
+                    // subsequence."
+                    // So fall through to process the byte as the start of a new sequence.
+                }
+            }
+
+            if ((byteToProcess & 0b10000000) == 0) { // The leading bit is not set so it is a 7-bit ASCII character.
+                codePoints[codePointCount++] = byteToProcess;
+                continue;
+            } else if ((byteToProcess & 0b11100000) == 0b11000000) { // 110xxxxx, a two-byte sequence.
+                mUtf8ToFollow = 1;
+            } else if ((byteToProcess & 0b11110000) == 0b11100000) { // 1110xxxx, a three-byte sequence.
+                mUtf8ToFollow = 2;
+            } else if ((byteToProcess & 0b11111000) == 0b11110000) { // 11110xxx, a four-byte sequence.
+                mUtf8ToFollow = 3;
+            } else {
+                // Not a valid UTF-8 sequence start, signal invalid data:
+                codePoints[codePointCount++] = TerminalEmulator.UNICODE_REPLACEMENT_CHAR;
+                continue;
+            }
+            mUtf8InputBuffer[mUtf8Index++] = byteToProcess;
+        }
+        return codePointCount;
+    }
+
+    private boolean isUnassignedOrSurrogate(int codePoint) {
+        // A four-byte sequence may decode to above the highest code point.
+        if (codePoint > Character.MAX_CODE_POINT) return true;
+        final int blockIndex = codePoint >> 8;
+        long[] block = mReplacedCodePointBlocks[blockIndex];
+        if (block == null) {
+            block = new long[4];
+            for (int i = 0; i < 256; i++) {
+                switch (Character.getType((blockIndex << 8) | i)) {
+                    case Character.UNASSIGNED:
+                    case Character.SURROGATE:
+                        block[i >> 6] |= 1L << i;
+                }
+            }
+            mReplacedCodePointBlocks[blockIndex] = block;
+        }
+        return (block[(codePoint >> 6) & 3] & (1L << codePoint)) != 0;
+    }
+
+}
@@ -1,5 +1,7 @@
 package com.termux.terminal;
 
+import java.util.Arrays;
+
 /**
  * Implementation of wcwidth(3) for Unicode 15.
  *
@@ -489,6 +491,105 @@ public final class WcWidth {
         {0x30000, 0x3fffd},  // Cjk Unified Ideograph-30..(nil)
     };
 
+    /** Code points handled before the tables in {@link #widthByBinarySearch(int)}, all with zero width. */
+    private static final int[][] ZERO_WIDTH_SPECIAL = {
+        {0x00000, 0x0001f},  // C0 control characters (Termux change: 0 instead of -1)
+        {0x0007f, 0x0009f},  // Delete and C1 control characters
+        {0x0034f, 0x0034f},  // Combining Grapheme Joiner
+        {0x0200b, 0x0200f},  // Zero Width Space        ..Right-to-left Mark
+        {0x02028, 0x0202e},  // Line Separator          ..Right-to-left Override
+        {0x02060, 0x02063},  // Word Joiner             ..Invisible Separator
+    };
+
+    /**
+     * The widths are looked up in two stages: {@link BlockTable#INDEX} maps the high bits of a code point to a block of
+     * {@link #BLOCK_SIZE} widths in {@link BlockTable#WIDTHS}.
+     */
+    private static final int BLOCK_SHIFT = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    /**
+     * The two stage table, built from the range tables when first used. Kept apart from the initialization of WcWidth
+     * itself, as calls from a static initializer to methods of the class being initialized are slow.
+     */
+    private static final class BlockTable {
+        static final char[] INDEX = new char[(Character.MAX_CODE_POINT + 1) >> BLOCK_SHIFT];
+        static final byte[] WIDTHS;
+
+        static {
+            byte[] blockWidths = new byte[128 * BLOCK_SIZE];
+            int blockCount = 0;
+            int zeroWidthIndex = 0;
+            int wideEastAsianIndex = 0;
+            int specialIndex = 0;
+            // The block numbers of blocks where all code points have width 1 or 2, once added:
+            final int[] uniformBlockNumbers = {-1, -1, -1};
+            int blockNumber = 0;
+            while (blockNumber < INDEX.length) {
+                final int start = blockNumber << BLOCK_SHIFT;
+                final int end = start + BLOCK_SIZE - 1;
+                wideEastAsianIndex = skipRangesBefore(WIDE_EASTASIAN, wideEastAsianIndex, start);
+                zeroWidthIndex = skipRangesBefore(ZERO_WIDTH, zeroWidthIndex, start);
+                specialIndex = skipRangesBefore(ZERO_WIDTH_SPECIAL, specialIndex, start);
+
+                // Most blocks have a single width, such as in unassigned planes or among CJK ideographs, and are
+                // followed by more blocks with that width up to where the next range starts or the current one ends:
+                final int nextZeroWidth = Math.min(rangeStart(ZERO_WIDTH, zeroWidthIndex), rangeStart(ZERO_WIDTH_SPECIAL, specialIndex));
+                final int nextWide = rangeStart(WIDE_EASTASIAN, wideEastAsianIndex);
+                int uniformWidth = -1;
+                int nextChange = 0;
+                if (nextZeroWidth > end) {
+                    if (nextWide > end) {
+                        uniformWidth = 1;
+                        nextChange = Math.min(nextZeroWidth, nextWide);
+                    } else if (nextWide <= start && WIDE_EASTASIAN[wideEastAsianIndex][1] >= end) {
+                        uniformWidth = 2;
+                        nextChange = Math.min(nextZeroWidth, WIDE_EASTASIAN[wideEastAsianIndex][1] + 1);
+                    }
+                }
+
+                if (uniformWidth == -1 || uniformBlockNumbers[uniformWidth] == -1) {
+                    if ((blockCount + 1) * BLOCK_SIZE > blockWidths.length)
+                        blockWidths = Arrays.copyOf(blockWidths, 2 * blockWidths.length);
+                    final int offset = blockCount * BLOCK_SIZE;
+                    Arrays.fill(blockWidths, offset, offset + BLOCK_SIZE, (byte) 1);
+                    // Zero width takes precedence over wide, as in widthByBinarySearch():
+                    fillBlock(blockWidths, offset, start, WIDE_EASTASIAN, wideEastAsianIndex, (byte) 2);
+                    fillBlock(blockWidths, offset, start, ZERO_WIDTH, zeroWidthIndex, (byte) 0);
+                    fillBlock(blockWidths, offset, start, ZERO_WIDTH_SPECIAL, specialIndex, (byte) 0);
+                    if (uniformWidth != -1) uniformBlockNumbers[uniformWidth] = blockCount;
+                    INDEX[blockNumber++] = (char) blockCount++;
+                }
+                if (uniformWidth != -1) {
+                    final int endBlockNumber = Math.min(nextChange >> BLOCK_SHIFT, INDEX.length);
+                    if (blockNumber < endBlockNumber) Arrays.fill(INDEX, blockNumber, endBlockNumber, (char) uniformBlockNumbers[uniformWidth]);
+                    blockNumber = Math.max(blockNumber, endBlockNumber);
+                }
+            }
+            WIDTHS = Arrays.copyOf(blockWidths, blockCount * BLOCK_SIZE);
+        }
+    }
+
+    /** Return the index of the first range in a sorted table, from the specified index on, not ending before a code point. */
+    private static int skipRangesBefore(int[][] table, int tableIndex, int codePoint) {
+        while (tableIndex < table.length && table[tableIndex][1] < codePoint) tableIndex++;
+        return tableIndex;
+    }
+
+    /** The first code point of a range in a table, or a code point after all others if the index is past the end. */
+    private static int rangeStart(int[][] table, int tableIndex) {
+        return tableIndex < table.length ? table[tableIndex][0] : Character.MAX_CODE_POINT + 1;
+    }
+
+    /**
+     * Set the width of the code points in ranges of a table, from the specified index on, for the block starting at a
+     * code point and stored at an offset in the block widths.
+     */
+    private static void fillBlock(byte[] blockWidths, int offset, int start, int[][] table, int tableIndex, byte width) {
+        final int end = start + BLOCK_SIZE - 1;
+        for (int i = tableIndex; i < table.length && table[i][0] <= end; i++)
+            Arrays.fill(blockWidths, offset + Math.max(table[i][0], start) - start, offset + Math.min(table[i][1], end) - start + 1, width);
+    }
 
     private static boolean intable(int[][] table, int c) {
         // First quick check f|| Latin1 etc. characters.
@@ -512,6 +613,13 @@ public final class WcWidth {
 
     /** Return the terminal display width of a code point: 0, 1 || 2. */
     public static int width(int ucs) {
+        if (ucs < 0) return 0;
+        if (ucs > Character.MAX_CODE_POINT) return 1;
+        return BlockTable.WIDTHS[(BlockTable.INDEX[ucs >> BLOCK_SHIFT] << BLOCK_SHIFT) | (ucs & (BLOCK_SIZE - 1))];
+    }
+
+    /** The width computed directly from the tables, which {@link #width(int)} looks up precomputed. */
+    static int widthByBinarySearch(int ucs) {
         if (ucs == 0 ||
             ucs == 0x034F ||
             (0x200B <= ucs && ucs <= 0x200F) ||
@@ -39,6 +39,15 @@ public class DeviceControlStringTest extends TerminalTestCase {
 		assertCapabilityResponse("kB", "\033[Z");
 	}
 
+	public void testReportSeveralCapabilities() {
+		withTerminalSized(3, 3);
+		String co = hexEncode("Co"), tn = hexEncode("TN");
+		assertEnteringStringGivesResponse("\033P+q" + co + ";" + tn + ";\033\\",
+			"\033P1+r" + co + "=" + hexEncode("256") + "\033\\" + "\033P1+r" + tn + "=" + hexEncode("xterm") + "\033\\");
+		// Names of odd length are ignored:
+		assertEnteringStringGivesResponse("\033P+q" + co + "4;" + tn + "\033\\", "\033P1+r" + tn + "=" + hexEncode("xterm") + "\033\\");
+	}
+
 	public void testReallyLongDeviceControlString() {
 		withTerminalSized(3, 3).enterString("\033P");
 		for (int i = 0; i < 10000; i++) {
@@ -0,0 +1,90 @@
+package com.termux.terminal;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Throughput and allocation of {@link TerminalEmulator#append(byte[], int)} replaying recorded output, by default the
+ * {@link RecordedCorpus#WORKLOADS}, in chunks of the size read from the process. Reported per corpus as MB/s and as bytes
+ * allocated per MB of output, including the rows allocated while filling the transcript, to compare runs before and
+ * after a change. The corpora are the output of real programs rather than generated, so that the mix of text and control
+ * sequences is a realistic one.
+ * <p>
+ * Run with a plain JVM, as it is not part of the unit tests, with the test resources on the class path:
+ * <pre>
+ * java -cp &lt;classes&gt;:&lt;resources&gt; com.termux.terminal.EmulatorBenchmark [megabytes] [corpus...]
+ * </pre>
+ * Allocation is measured with the thread allocation counter of HotSpot JVMs, and not reported on others.
+ */
+public final class EmulatorBenchmark {
+
+	private static final int CHUNK_SIZE = 4096;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		final int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		final String[] corpora = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : RecordedCorpus.WORKLOADS;
+		final AllocationCounter allocationCounter = new AllocationCounter();
+		for (String corpus : corpora) {
+			final byte[] input = RecordedCorpus.read(corpus);
+			final int repetitions = Math.max(1, megabytes * 1024 * 1024 / input.length);
+			final double megabytesAppended = (double) input.length * repetitions / (1024 * 1024);
+			for (int round = 0; round < ROUNDS; round++) {
+				// The first rounds are warmup for the JIT.
+				final TerminalEmulator emulator = new TerminalEmulator(new TerminalTestCase.MockTerminalOutput(), RecordedCorpus.COLUMNS,
+					RecordedCorpus.ROWS, TerminalTestCase.INITIAL_CELL_WIDTH_PIXELS, TerminalTestCase.INITIAL_CELL_HEIGHT_PIXELS, 2000);
+				final long allocatedBefore = allocationCounter.getAllocatedBytes();
+				final long startTime = System.nanoTime();
+				append(emulator, input, repetitions);
+				final long elapsedNanos = System.nanoTime() - startTime;
+				final long allocated = allocationCounter.getAllocatedBytes() - allocatedBefore;
+				System.out.printf("%s round %d: %.1f MB/s, %s%n", corpus, round, megabytesAppended / (elapsedNanos / 1e9),
+					allocatedBefore < 0 ? "allocation not measured" : String.format("%.0f bytes allocated/MB", allocated / megabytesAppended));
+			}
+		}
+	}
+
+	private static void append(TerminalEmulator emulator, byte[] input, int repetitions) {
+		final byte[] chunk = new byte[CHUNK_SIZE];
+		for (int i = 0; i < repetitions; i++) {
+			for (int start = 0; start < input.length; start += chunk.length) {
+				int length = Math.min(chunk.length, input.length - start);
+				System.arraycopy(input, start, chunk, 0, length);
+				emulator.append(chunk, length);
+			}
+		}
+	}
+
+	/**
+	 * The bytes allocated by the current thread, looked up reflectively as neither java.lang.management nor
+	 * com.sun.management is available to code compiled against the Android SDK.
+	 */
+	private static final class AllocationCounter {
+
+		private final Object mThreadMXBean;
+		private final Method mGetThreadAllocatedBytes;
+
+		AllocationCounter() {
+			Object threadMXBean = null;
+			Method getThreadAllocatedBytes = null;
+			try {
+				threadMXBean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+				getThreadAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+				getThreadAllocatedBytes.invoke(threadMXBean, Thread.currentThread().getId());
+			} catch (ReflectiveOperationException | IllegalArgumentException e) {
+				getThreadAllocatedBytes = null;
+			}
+			mThreadMXBean = threadMXBean;
+			mGetThreadAllocatedBytes = getThreadAllocatedBytes;
+		}
+
+		/** The bytes allocated so far by the current thread, or -1 if not measured. */
+		long getAllocatedBytes() throws ReflectiveOperationException {
+			if (mGetThreadAllocatedBytes == null) return -1;
+			return (Long) mGetThreadAllocatedBytes.invoke(mThreadMXBean, Thread.currentThread().getId());
+		}
+
+	}
+
+}
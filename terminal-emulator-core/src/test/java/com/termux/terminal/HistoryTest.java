@@ -30,4 +30,19 @@ public class HistoryTest extends TerminalTestCase {
 		enterString("LMN").assertLinesAre("111", "IJK", "LMN", "444").assertHistoryStartsWith("FGH", "CDE");
 	}
 
+	public void testRowsReusedAfterClearingHistory() {
+		mTerminal = new TerminalEmulator(mOutput, 10, 3, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, 100);
+		TerminalBuffer screen = mTerminal.getScreen();
+		for (int i = 0; i < 300; i++) enterString("line " + i + "\r\n");
+		// Once the transcript is full, scrolling reuses the oldest row:
+		assertEquals(100, screen.getAllocatedRowCount());
+
+		enterString("\033[3J");
+		for (int i = 0; i < 300; i++) enterString("again " + i + "\r\n");
+		assertEquals(100, screen.getAllocatedRowCount());
+		assertEquals(97, screen.getReusedRowCount());
+		assertLinesAre("again 298 ", "again 299 ", "          ");
+		assertEquals("again 201", screen.getSelectedText(0, -97, 10, -97));
+	}
+
 }
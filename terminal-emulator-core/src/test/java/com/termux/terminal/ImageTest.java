@@ -0,0 +1,224 @@
+package com.termux.terminal;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import java.util.zip.Deflater;
+
+/** Inline images: sixel over DCS and the kitty graphics protocol over APC. Cells are 13x15 pixels in these tests. */
+public class ImageTest extends TerminalTestCase {
+
+	private TerminalImage assertImageCell(int row, int column, int imageColumn, int imageRow) {
+		long style = getStyleAt(row, column);
+		assertTrue("row=" + row + ", column=" + column, TextStyle.isImageCell(style));
+		assertEquals(imageColumn, TextStyle.decodeImageColumn(style));
+		assertEquals(imageRow, TextStyle.decodeImageRow(style));
+		return mTerminal.getImageCache().get(TextStyle.decodeImageNumber(style));
+	}
+
+	private void assertNoImageCell(int row, int column) {
+		assertFalse("row=" + row + ", column=" + column, TextStyle.isImageCell(getStyleAt(row, column)));
+	}
+
+	private static String kittyPixels(int... rgb) {
+		byte[] bytes = new byte[3 * rgb.length];
+		for (int i = 0; i < rgb.length; i++) {
+			bytes[3 * i] = (byte) (rgb[i] >> 16);
+			bytes[3 * i + 1] = (byte) (rgb[i] >> 8);
+			bytes[3 * i + 2] = (byte) rgb[i];
+		}
+		return Base64.getEncoder().encodeToString(bytes);
+	}
+
+	public void testSixel() {
+		// Two bands of six rows of 26 red pixels, so 26x12 pixels in two cells:
+		withTerminalSized(5, 4).enterString("ab\033Pq#1;2;100;0;0#1!26~-#1!26~\033\\");
+		TerminalImage image = assertImageCell(0, 2, 0, 0);
+		assertSame(image, assertImageCell(0, 3, 1, 0));
+		assertNoImageCell(0, 1);
+		assertNoImageCell(0, 4);
+		assertEquals(26, image.getWidth());
+		assertEquals(12, image.getHeight());
+		assertEquals(0xFFFF0000, image.getPixels()[0]);
+		assertEquals(0xFFFF0000, image.getPixels()[26 * 12 - 1]);
+		// The cursor is moved to the row below the image:
+		assertCursorAt(1, 2);
+		enterString("c").assertLineIs(1, "  c  ");
+	}
+
+	public void testSixelBackground() {
+		// Only the top pixel of the first column drawn, with P2=1 selecting a transparent background:
+		withTerminalSized(5, 4).enterString("\033P0;1q\"1;1;2;2#3@\033\\");
+		TerminalImage image = assertImageCell(0, 0, 0, 0);
+		assertEquals(2, image.getWidth());
+		assertEquals(2, image.getHeight());
+		int[] pixels = image.getPixels();
+		assertEquals(0xFF33CC33, pixels[0]);
+		assertEquals(0, pixels[1]);
+		assertEquals(0, pixels[2]);
+
+		// Otherwise pixels not drawn are of the background color:
+		enterString("\033Pq\"1;1;2;2#3@\033\\");
+		pixels = assertImageCell(1, 0, 0, 0).getPixels();
+		assertEquals(0xFF33CC33, pixels[0]);
+		assertEquals(0xFF000000 | mTerminal.mColors.mCurrentColors[TextStyle.COLOR_INDEX_BACKGROUND], pixels[1]);
+	}
+
+	public void testSixelDataWithBackslash() {
+		// '\' is a sixel (0x5C - 0x3F = 29, so rows 0, 2, 3 and 4) and does not end the string:
+		withTerminalSized(5, 4).enterString("\033Pq#1;2;0;0;100\\\\\033\\x");
+		int[] pixels = assertImageCell(0, 0, 0, 0).getPixels();
+		assertEquals(2, pixels.length / 5);
+		assertEquals(0xFF0000FF, pixels[0]);
+		assertEquals(0, pixels[2] & 0xFF);
+		assertEquals(0xFF0000FF, pixels[4]);
+		assertLineIs(1, "x    ");
+	}
+
+	public void testSixelCancelledByEscapeSequence() {
+		withTerminalSized(5, 4).enterString("\033Pq~~\033[2;3Hx");
+		assertImageCell(0, 0, 0, 0);
+		assertLineIs(1, "  x  ");
+	}
+
+	public void testSixelScrolls() {
+		// 90 pixels high, so 6 rows on a screen of 4:
+		StringBuilder sixel = new StringBuilder("\033Pq");
+		for (int i = 0; i < 15; i++) sixel.append("~-");
+		withTerminalSized(3, 4).enterString(sixel.append("\033\\").toString());
+		for (int row = 0; row < 3; row++)
+			assertImageCell(row, 0, 0, row + 3);
+		assertCursorAt(3, 0);
+		assertNoImageCell(3, 0);
+	}
+
+	public void testSixelWithinBudget() {
+		// A wide band followed by a band far below would need a canvas of both, here about 3 GB, which is over budget:
+		StringBuilder sixel = new StringBuilder("\033Pq!99999~");
+		for (int i = 0; i < 1300; i++) sixel.append('-');
+		withTerminalSized(5, 4).enterString(sixel.append("~\033\\").toString());
+		TerminalImage image = assertImageCell(0, 0, 0, 0);
+		assertEquals(99999, image.getWidth());
+		assertEquals(6, image.getHeight());
+
+		// Repeat counts and positions saturate instead of overflowing:
+		sixel = new StringBuilder("\033Pq");
+		for (int i = 0; i < 30000; i++) sixel.append("!99999?");
+		withTerminalSized(5, 4).enterString(sixel.append("~-~\033\\").toString());
+		assertNoImageCell(0, 0);
+	}
+
+	public void testSixelIsReportedInDeviceAttributes() {
+		withTerminalSized(5, 4).assertEnteringStringGivesResponse("\033[c", "\033[?64;1;2;4;6;9;15;18;21;22c");
+	}
+
+	public void testKittyQuery() {
+		withTerminalSized(2, 2).assertEnteringStringGivesResponse("\033_Gi=31,s=1,v=1,a=q,t=d,f=24;AAAA\033\\", "\033_Gi=31;OK\033\\");
+		assertEquals(0, mTerminal.getImageCache().size());
+		assertEnteringStringGivesResponse("\033_Gi=32,s=1,v=1,a=q,t=f,f=24;AAAA\033\\",
+			"\033_Gi=32;ENOTSUPPORTED:Unsupported transmission medium: f\033\\");
+		assertEnteringStringGivesResponse("\033_Gi=33,s=1,v=1,a=q,f=100;AAAA\033\\", "\033_Gi=33;ENOTSUPPORTED:Unsupported format: 100\033\\");
+		// Without an id, or quiet, there is no response:
+		assertEnteringStringGivesResponse("\033_Gs=1,v=1,a=q,f=24;AAAA\033\\", "");
+		assertEnteringStringGivesResponse("\033_Gi=34,q=2,s=1,v=1,a=q,f=100;AAAA\033\\", "");
+		assertLinesAre("  ", "  ");
+	}
+
+	public void testKittyTransmitAndPlaceInChunks() {
+		String pixels = kittyPixels(0xFF0000, 0x00FF00, 0x0000FF, 0xFFFFFF);
+		withTerminalSized(4, 3).enterString("a");
+		enterString("\033_Ga=T,f=24,s=2,v=2,i=5,m=1;" + pixels.substring(0, 8) + "\033\\");
+		assertNoImageCell(0, 1);
+		assertEnteringStringGivesResponse("\033_Gm=0;" + pixels.substring(8) + "\033\\", "\033_Gi=5;OK\033\\");
+		TerminalImage image = assertImageCell(0, 1, 0, 0);
+		assertArrayEquals(new int[]{0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFFFFFF}, image.getPixels());
+		// Cursor after the last column of the image on its last row:
+		assertCursorAt(0, 2);
+
+		// Place it again without moving the cursor:
+		enterString("\r\n\033_Ga=p,i=5,C=1,q=1\033\\");
+		assertSame(image, assertImageCell(1, 0, 0, 0));
+		assertCursorAt(1, 0);
+		assertEnteringStringGivesResponse("\033_Ga=p,i=6\033\\", "\033_Gi=6;ENOENT:Image not found: 6\033\\");
+
+		enterString("\033_Ga=d,d=i,i=5\033\\");
+		assertEquals(0, mTerminal.getImageCache().size());
+		assertNull(assertImageCell(1, 0, 0, 0));
+	}
+
+	public void testKittyCompressed() {
+		int[] rgba = new int[40 * 30];
+		byte[] bytes = new byte[4 * rgba.length];
+		for (int i = 0; i < rgba.length; i++) {
+			rgba[i] = 0x80000000 | i;
+			bytes[4 * i] = (byte) (i >> 16);
+			bytes[4 * i + 1] = (byte) (i >> 8);
+			bytes[4 * i + 2] = (byte) i;
+			bytes[4 * i + 3] = (byte) 0x80;
+		}
+		Deflater deflater = new Deflater();
+		deflater.setInput(bytes);
+		deflater.finish();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		while (!deflater.finished()) compressed.write(buffer, 0, deflater.deflate(buffer));
+		String payload = Base64.getEncoder().encodeToString(compressed.toByteArray());
+
+		// Sent in chunks of 4096, which is 40x30 pixels in 4x2 cells:
+		withTerminalSized(5, 3);
+		for (int start = 0; start < payload.length(); start += 4096) {
+			boolean last = start + 4096 >= payload.length();
+			String control = (start == 0) ? "a=T,f=32,o=z,s=40,v=30,i=1," : "";
+			enterString("\033_G" + control + "m=" + (last ? 0 : 1) + ";" + payload.substring(start, Math.min(start + 4096, payload.length())) + "\033\\");
+		}
+		assertEquals("\033_Gi=1;OK\033\\", mOutput.getOutputAndClear());
+		assertArrayEquals(rgba, assertImageCell(1, 3, 3, 1).getPixels());
+		assertNoImageCell(1, 4);
+		assertNoImageCell(2, 0);
+	}
+
+	public void testKittyErrors() {
+		withTerminalSized(4, 3);
+		assertEnteringStringGivesResponse("\033_Ga=T,f=24,s=2,v=2,i=1;" + kittyPixels(1, 2, 3) + "\033\\",
+			"\033_Gi=1;ENODATA:Insufficient image data: 9 < 12\033\\");
+		assertEnteringStringGivesResponse("\033_Ga=T,f=24,s=1,v=1,i=2;" + kittyPixels(1, 2) + "\033\\",
+			"\033_Gi=2;EINVAL:More image data than the image size\033\\");
+		assertEnteringStringGivesResponse("\033_Ga=T,f=24,s=100000,v=100000,i=3;AAAA\033\\",
+			"\033_Gi=3;EFBIG:Image too large: 100000x100000\033\\");
+		assertEnteringStringGivesResponse("\033_Ga=T,f=24,o=z,s=1,v=1,i=4;AAAA\033\\", "\033_Gi=4;EINVAL:Invalid compressed data\033\\");
+		assertEquals(0, mTerminal.getImageCache().size());
+		assertLinesAre("    ", "    ", "    ");
+	}
+
+	public void testImagesEvictedBeyondBudget() {
+		withTerminalSized(4, 3);
+		mTerminal.getImageCache().setMaxBytes(2 * 4 * 4);
+		String pixels = kittyPixels(1, 2, 3, 4);
+		for (int id = 1; id <= 3; id++)
+			enterString("\033_Ga=t,f=24,s=2,v=2,q=1,i=" + id + ";" + pixels + "\033\\");
+		assertEquals(2, mTerminal.getImageCache().size());
+		assertEquals(32, mTerminal.getImageCache().getByteCount());
+		assertEnteringStringGivesResponse("\033_Ga=p,i=1\033\\", "\033_Gi=1;ENOENT:Image not found: 1\033\\");
+		enterString("\033_Ga=p,i=2,q=1\033\\");
+		assertImageCell(0, 0, 0, 0);
+
+		mTerminal.reset();
+		assertEquals(0, mTerminal.getImageCache().size());
+	}
+
+	public void testOverwritingImageCells() {
+		withTerminalSized(4, 3).enterString("\033Pq!26~\033\\");
+		assertImageCell(0, 1, 1, 0);
+		enterString("\033[Hx");
+		assertNoImageCell(0, 0);
+		assertImageCell(0, 1, 1, 0);
+		enterString("\033[2J");
+		assertNoImageCell(0, 1);
+	}
+
+	private static void assertArrayEquals(int[] expected, int[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++)
+			assertEquals("index=" + i, Integer.toHexString(expected[i]), Integer.toHexString(actual[i]));
+	}
+
+}
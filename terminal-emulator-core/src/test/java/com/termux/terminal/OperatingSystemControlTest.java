@@ -1,8 +1,7 @@
 package com.termux.terminal;
 
-import android.util.Base64;
-
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Random;
 
@@ -86,6 +85,21 @@ public class OperatingSystemControlTest extends TerminalTestCase {
 		assertEquals("InitialTitle", mTerminal.getTitle());
 	}
 
+	public void testSettingSameTitleAgainKeepsTitle() {
+		withTerminalSized(10, 10).enterString("\033]0;~/src\007");
+		String title = mTerminal.getTitle();
+		enterString("\033]0;~/src\007");
+		enterString("\033]2;~/src\033\\");
+		assertSame(title, mTerminal.getTitle());
+		assertEquals(List.of(new ChangedTitle(null, "~/src")), mOutput.titleChanges);
+
+		enterString("\033]0;~/src/termux\007");
+		assertEquals("~/src/termux", mTerminal.getTitle());
+		enterString("\033]0;\007");
+		assertEquals("", mTerminal.getTitle());
+		assertEquals(3, mOutput.titleChanges.size());
+	}
+
 	public void testSetColor() {
 		// "OSC 4; $INDEX; $COLORSPEC BEL" => Change color $INDEX to the color specified by $COLORSPEC.
 		withTerminalSized(4, 4).enterString("\033]4;5;#00FF00\007");
@@ -135,12 +149,30 @@ public class OperatingSystemControlTest extends TerminalTestCase {
 		assertIndexColorsMatch(TerminalColors.COLOR_SCHEME.mDefaultColors);
 	}
 
+	public void testResetColorIgnoresInvalidNumbers() {
+		withTerminalSized(4, 4).enterString("\033]4;3;#00FF00;4;#0000FF\007");
+		enterString("\033]104;x;300;-1;;4\007").assertColor(3, 0xFF00FF00);
+		assertColor(4, TerminalColors.COLOR_SCHEME.mDefaultColors[4]);
+		enterString("\033]104;3x\007").assertColor(3, 0xFF00FF00);
+		enterString("A").assertLineIs(0, "A   ");
+	}
+
 	public void testSetClipboard() {
         withTerminalSized(4, 4).enterString("\033]4;5;#00FF00\007");
-		enterString("\033]52;c;" + Base64.encodeToString("Hello, world".getBytes(), 0) + "\007");
+		enterString("\033]52;c;" + Base64.getEncoder().encodeToString("Hello, world".getBytes()) + "\007");
         assertEquals(List.of("Hello, world"), mOutput.clipboardPuts);
 	}
 
+	public void testSetClipboardWithWrappedBase64() {
+		// Some programs wrap the base64 text in lines, as in MIME, which should be ignored:
+		String text = "A clipboard text long enough to be wrapped over more than one line of base64, as some programs do.";
+		String encoded = Base64.getMimeEncoder().encodeToString(text.getBytes());
+		assertTrue(encoded.contains("\r\n"));
+		withTerminalSized(4, 4).enterString("\033]52;c;" + encoded + "\007");
+		enterString("\033]52;c;" + encoded.replace("\r\n", " \n") + "\033\\");
+		assertEquals(List.of(text, text), mOutput.clipboardPuts);
+	}
+
 	public void testResettingTerminalResetsColor() {
 		// "OSC 4; $INDEX; $COLORSPEC BEL" => Change color $INDEX to the color specified by $COLORSPEC.
 		withTerminalSized(4, 4).enterString("\033]4;5;#00FF00\007");
@@ -0,0 +1,48 @@
+package com.termux.terminal;
+
+import java.io.IOException;
+
+/**
+ * Throughput of parsing output recorded from full screen programs and progress bars, see
+ * {@link RecordedCorpus#CONTROL_SEQUENCE_HEAVY}, using the table-driven parser and passing code points through
+ * {@link TerminalEmulator#processCodePoint(int)}.
+ * <p>
+ * Run with a plain JVM, as it is not part of the unit tests, with the test resources on the class path:
+ * <pre>
+ * java -cp &lt;classes&gt;:&lt;resources&gt; com.termux.terminal.ParserBenchmark [megabytes]
+ * </pre>
+ */
+public final class ParserBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		final int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		for (String corpus : RecordedCorpus.CONTROL_SEQUENCE_HEAVY) {
+			final byte[] input = RecordedCorpus.read(corpus);
+			final int repetitions = Math.max(1, megabytes * 1024 * 1024 / input.length);
+			for (int round = 0; round < 5; round++) {
+				// The first rounds are warmup for the JIT.
+				double switchMbPerSecond = parse(input, repetitions, false);
+				double tableMbPerSecond = parse(input, repetitions, true);
+				System.out.printf("%s round %d: switches %.1f MB/s, table %.1f MB/s%n", corpus, round, switchMbPerSecond, tableMbPerSecond);
+			}
+		}
+	}
+
+	private static double parse(byte[] input, int repetitions, boolean tableDriven) {
+		final TerminalEmulator emulator = new TerminalEmulator(new TerminalTestCase.MockTerminalOutput(), RecordedCorpus.COLUMNS, RecordedCorpus.ROWS,
+			TerminalTestCase.INITIAL_CELL_WIDTH_PIXELS, TerminalTestCase.INITIAL_CELL_HEIGHT_PIXELS, 2000);
+		emulator.setTableDrivenParsing(tableDriven);
+		final byte[] chunk = new byte[4096];
+		long startTime = System.nanoTime();
+		for (int i = 0; i < repetitions; i++) {
+			for (int start = 0; start < input.length; start += chunk.length) {
+				int length = Math.min(chunk.length, input.length - start);
+				System.arraycopy(input, start, chunk, 0, length);
+				emulator.append(chunk, length);
+			}
+		}
+		long elapsedNanos = System.nanoTime() - startTime;
+		return (double) input.length * repetitions / (1024 * 1024) / (elapsedNanos / 1e9);
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.termux.terminal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Output recorded from programs in a 120x40 terminal, kept as test resources in the corpus directory. */
+final class RecordedCorpus {
+
+	/** Full screen programs and progress bars, mostly control sequences. */
+	static final String[] CONTROL_SEQUENCE_HEAVY = {"vim-scroll.ansi", "top.ansi", "ls-color.ansi", "progress-bars.ansi"};
+
+	/**
+	 * Typical workloads of a terminal: an ASCII flood from cat, CJK text, 256-color and truecolor syntax highlighting,
+	 * scrolling in vim and less, and line editing of wrapped lines with wide characters.
+	 */
+	static final String[] WORKLOADS = {"ascii-flood.ansi", "utf8-cjk.ansi", "sgr-colors.ansi", "vim-scroll.ansi", "less-scroll.ansi",
+		"wide-char-editing.ansi"};
+
+	static final int COLUMNS = 120;
+	static final int ROWS = 40;
+
+	static byte[] read(String name) throws IOException {
+		try (InputStream in = RecordedCorpus.class.getResourceAsStream("corpus/" + name)) {
+			if (in == null) throw new IOException("No corpus " + name);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+			return out.toByteArray();
+		}
+	}
+
+	private RecordedCorpus() {
+	}
+
+}
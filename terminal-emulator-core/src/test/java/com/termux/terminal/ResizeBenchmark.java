@@ -0,0 +1,63 @@
+package com.termux.terminal;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Timing of resizes changing the number of columns, which reflow the whole transcript, as when rotating a tablet with
+ * a full 10000 row transcript of mixed output.
+ * <p>
+ * Run with a plain JVM, as it is not part of the unit tests:
+ * <pre>
+ * java -cp &lt;classes&gt; com.termux.terminal.ResizeBenchmark [iterations]
+ * </pre>
+ */
+public final class ResizeBenchmark {
+
+	private static final int TRANSCRIPT_ROWS = 10000;
+
+	public static void main(String[] args) {
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		final TerminalEmulator emulator = new TerminalEmulator(new TerminalTestCase.MockTerminalOutput(), 80, 40,
+			TerminalTestCase.INITIAL_CELL_WIDTH_PIXELS, TerminalTestCase.INITIAL_CELL_HEIGHT_PIXELS, TRANSCRIPT_ROWS);
+		byte[] output = mixedOutput().getBytes(StandardCharsets.UTF_8);
+		emulator.append(output, output.length);
+
+		for (int round = 0; round < 5; round++) {
+			// The first rounds are warmup for the JIT.
+			long startTime = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				emulator.resize(50, 60, TerminalTestCase.INITIAL_CELL_WIDTH_PIXELS, TerminalTestCase.INITIAL_CELL_HEIGHT_PIXELS);
+				emulator.resize(80, 40, TerminalTestCase.INITIAL_CELL_WIDTH_PIXELS, TerminalTestCase.INITIAL_CELL_HEIGHT_PIXELS);
+			}
+			long nanos = System.nanoTime() - startTime;
+			System.out.printf("round %d: %.2f ms/resize, %d transcript rows%n", round, nanos / (2 * iterations * 1e6),
+				emulator.getScreen().getActiveTranscriptRows());
+		}
+	}
+
+	/** Lines of listings, compiler output wrapping over several rows, CJK text and blank lines. */
+	static String mixedOutput() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; builder.length() < 2_000_000; i++) {
+			switch (i % 5) {
+				case 0:
+					builder.append("drwxr-xr-x  2 user user  4096 Oct 18 12:00 \033[1;34mdirectory-").append(i).append("\033[0m\r\n");
+					break;
+				case 1:
+					builder.append("src/main/java/com/example/Module").append(i).append(".java:").append(i % 300)
+						.append(": warning: [deprecation] method in class has been deprecated and marked for removal in a future release\r\n");
+					break;
+				case 2:
+					builder.append("\033[32m枝葉末節\033[0m の説明 ").append(i).append("\r\n");
+					break;
+				case 3:
+					builder.append("\r\n");
+					break;
+				default:
+					builder.append("  été 😀 ").append(i).append("\r\n");
+			}
+		}
+		return builder.toString();
+	}
+
+}
@@ -1,5 +1,10 @@
 package com.termux.terminal;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
 public class ScreenBufferTest extends TerminalTestCase {
 
 	public void testBasics() {
@@ -46,6 +51,34 @@ public class ScreenBufferTest extends TerminalTestCase {
 		assertEquals("ABC\nFG", mTerminal.getScreen().getSelectedText(0, 0, 1, 1, true, true));
 	}
 
+	public void testWriteTranscriptText() throws IOException {
+		withTerminalSized(5, 3).enterString("\r\n  ABCDEFG\r\n\r\nHI \u679C\r\nJK\r\n\r\n ");
+		TerminalBuffer screen = mTerminal.getScreen();
+		for (int join = 0; join < 3; join++) {
+			final boolean joinBackLines = join > 0;
+			final boolean joinFullLines = join > 1;
+			StringWriter writer = new StringWriter();
+			screen.writeTranscriptText(writer, joinBackLines, joinFullLines);
+			String expected = screen.getSelectedText(0, -screen.getActiveTranscriptRows(), 5, 3, joinBackLines, joinFullLines).trim();
+			assertEquals(expected, writer.toString());
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			screen.writeTranscriptText(out, joinBackLines, joinFullLines);
+			assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+		}
+
+		StringWriter writer = new StringWriter();
+		screen.writeTranscriptText(writer, true, false);
+		assertEquals(screen.getTranscriptText(), writer.toString());
+		writer = new StringWriter();
+		screen.writeTranscriptText(writer, false, false);
+		assertEquals(screen.getTranscriptTextWithoutJoinedLines(), writer.toString());
+		writer = new StringWriter();
+		screen.writeTranscriptText(writer, true, true);
+		assertEquals(screen.getTranscriptTextWithFullLinesJoined(), writer.toString());
+		assertEquals("ABCDEFG\n\nHI \u679CJK", writer.toString());
+	}
+
 	public void testGetWordAtLocation() {
 		withTerminalSized(5, 3).enterString("ABCDEFGHIJ\r\nKLMNO");
 		assertEquals("ABCDEFGHIJKLMNO", mTerminal.getScreen().getWordAtLocation(0, 0));
@@ -0,0 +1,62 @@
+package com.termux.terminal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Timing of {@link TerminalSnapshot} checkpoints and restores of a full 10000 row transcript of mixed output: a
+ * checkpoint rewriting the file, one appending the rows output since the last, and restoring from the file.
+ * <p>
+ * Run with a plain JVM, as it is not part of the unit tests:
+ * <pre>
+ * java -cp &lt;classes&gt; com.termux.terminal.SnapshotBenchmark [iterations]
+ * </pre>
+ */
+public final class SnapshotBenchmark {
+
+	private static final int TRANSCRIPT_ROWS = 10000;
+
+	public static void main(String[] args) throws IOException {
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		final TerminalEmulator emulator = newEmulator();
+		byte[] output = ResizeBenchmark.mixedOutput().getBytes(StandardCharsets.UTF_8);
+		emulator.append(output, output.length);
+		byte[] newOutput = "$ make\r\ncc -O2 -c terminal.c -o terminal.o\r\n".getBytes(StandardCharsets.UTF_8);
+
+		File file = File.createTempFile("snapshot", null);
+		try {
+			for (int round = 0; round < 5; round++) {
+				// The first rounds are warmup for the JIT.
+				long fullNanos = 0, appendNanos = 0, restoreNanos = 0;
+				for (int i = 0; i < iterations; i++) {
+					TerminalSnapshot snapshot = new TerminalSnapshot(file);
+					long startTime = System.nanoTime();
+					snapshot.checkpoint(emulator);
+					fullNanos += System.nanoTime() - startTime;
+
+					emulator.append(newOutput, newOutput.length);
+					startTime = System.nanoTime();
+					snapshot.checkpoint(emulator);
+					appendNanos += System.nanoTime() - startTime;
+
+					startTime = System.nanoTime();
+					new TerminalSnapshot(file).restore(newEmulator());
+					restoreNanos += System.nanoTime() - startTime;
+				}
+				System.out.printf("round %d: %.2f ms/full checkpoint, %.3f ms/appended checkpoint, %.2f ms/restore, %d kB file%n",
+					round, fullNanos / (iterations * 1e6), appendNanos / (iterations * 1e6), restoreNanos / (iterations * 1e6),
+					file.length() / 1024);
+			}
+		} finally {
+			//noinspection ResultOfMethodCallIgnored
+			file.delete();
+		}
+	}
+
+	private static TerminalEmulator newEmulator() {
+		return new TerminalEmulator(new TerminalTestCase.MockTerminalOutput(), 80, 40,
+			TerminalTestCase.INITIAL_CELL_WIDTH_PIXELS, TerminalTestCase.INITIAL_CELL_HEIGHT_PIXELS, TRANSCRIPT_ROWS);
+	}
+
+}
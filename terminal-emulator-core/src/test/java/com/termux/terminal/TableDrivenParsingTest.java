@@ -0,0 +1,54 @@
+package com.termux.terminal;
+
+import java.io.IOException;
+
+public class TableDrivenParsingTest extends TerminalTestCase {
+
+	private static TerminalEmulator parse(byte[] input, boolean tableDriven, int chunkSize) {
+		TerminalEmulator emulator = new TerminalEmulator(new MockTerminalOutput(), RecordedCorpus.COLUMNS, RecordedCorpus.ROWS, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, 1000);
+		emulator.setTableDrivenParsing(tableDriven);
+		for (int start = 0; start < input.length; start += chunkSize) {
+			int length = Math.min(chunkSize, input.length - start);
+			byte[] chunk = new byte[length];
+			System.arraycopy(input, start, chunk, 0, length);
+			emulator.append(chunk, length);
+		}
+		return emulator;
+	}
+
+	private static void assertSameState(String message, TerminalEmulator expected, TerminalEmulator actual) {
+		TerminalBuffer expectedScreen = expected.getScreen();
+		TerminalBuffer actualScreen = actual.getScreen();
+		assertEquals(message, expected.isAlternateBufferActive(), actual.isAlternateBufferActive());
+		assertEquals(message, expectedScreen.getTranscriptText(), actualScreen.getTranscriptText());
+		for (int row = -expectedScreen.getActiveTranscriptRows(); row < expected.mRows; row++)
+			for (int column = 0; column < expected.mColumns; column++)
+				assertEquals(message, expectedScreen.getStyleAt(row, column), actualScreen.getStyleAt(row, column));
+		assertEquals(message, expected.getCursorRow(), actual.getCursorRow());
+		assertEquals(message, expected.getCursorCol(), actual.getCursorCol());
+		assertEquals(message, expected.getTitle(), actual.getTitle());
+	}
+
+	public void testCorporaParsedAlike() throws IOException {
+		for (String corpus : RecordedCorpus.CONTROL_SEQUENCE_HEAVY) {
+			byte[] input = RecordedCorpus.read(corpus);
+			assertTrue(corpus, input.length > 10_000);
+			// Cutting the input at every other byte splits sequences in all places:
+			for (int chunkSize : new int[]{4096, 7}) {
+				assertSameState(corpus + ", chunks of " + chunkSize, parse(input, false, chunkSize), parse(input, true, chunkSize));
+			}
+		}
+	}
+
+	public void testParameters() {
+		withTerminalSized(10, 4);
+		mTerminal.setTableDrivenParsing(false);
+		enterString("\033[3;99999H\033[?1;;7h\033[>5;1m\033[;2Hx\033[1;31;44mA");
+		TerminalEmulator expected = mTerminal;
+		withTerminalSized(10, 4);
+		enterString("\033[3;99999H\033[?1;;7h\033[>5;1m\033[;2Hx\033[1;31;44mA");
+		assertSameState("", expected, mTerminal);
+		assertLinesAre(" xA       ", "          ", "          ", "          ");
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.termux.terminal;
+
+import junit.framework.TestCase;
+
+public class TerminalImageCacheTest extends TestCase {
+
+	private static TerminalImage image(int pixels) {
+		return new TerminalImage(pixels, 1, new int[pixels], 10, 20);
+	}
+
+	public void testEvictsLeastRecentlyUsed() {
+		TerminalImageCache cache = new TerminalImageCache(90);
+		TerminalImage first = image(10), second = image(10);
+		int firstNumber = cache.add(first);
+		int secondNumber = cache.add(second);
+		assertTrue(firstNumber != 0 && secondNumber != 0 && firstNumber != secondNumber);
+		assertEquals(80, cache.getByteCount());
+
+		// Using the first makes the second the least recently used:
+		assertSame(first, cache.get(firstNumber));
+		TerminalImage third = image(5);
+		int thirdNumber = cache.add(third);
+		assertEquals(2, cache.size());
+		assertNull(cache.get(secondNumber));
+		assertSame(first, cache.get(firstNumber));
+		assertSame(third, cache.get(thirdNumber));
+		assertEquals(60, cache.getByteCount());
+
+		cache.setMaxBytes(30);
+		assertEquals(1, cache.size());
+		assertSame(third, cache.get(thirdNumber));
+	}
+
+	public void testImageLargerThanBudgetNotAdded() {
+		TerminalImageCache cache = new TerminalImageCache(100);
+		int number = cache.add(image(10));
+		assertEquals(0, cache.add(image(26)));
+		assertEquals(1, cache.size());
+		assertNotNull(cache.get(number));
+
+		cache.remove(number);
+		assertEquals(0, cache.getByteCount());
+		assertEquals(0, cache.size());
+	}
+
+	public void testGenerationChangesWithImages() {
+		TerminalImageCache cache = new TerminalImageCache(100);
+		long generation = cache.getGeneration();
+		int first = cache.add(image(10));
+		assertTrue(cache.getGeneration() != generation);
+
+		generation = cache.getGeneration();
+		cache.get(first);
+		cache.remove(12345);
+		assertEquals(generation, cache.getGeneration());
+
+		// Evicting the first image changes the generation again, even though a second one is added at the same time:
+		cache.add(image(10));
+		long afterAdd = cache.getGeneration();
+		cache.add(image(10));
+		assertNull(cache.get(first));
+		assertTrue(cache.getGeneration() > afterAdd + 1);
+
+		generation = cache.getGeneration();
+		cache.clear();
+		assertTrue(cache.getGeneration() != generation);
+		generation = cache.getGeneration();
+		cache.clear();
+		assertEquals(generation, cache.getGeneration());
+	}
+
+	public void testCellSpan() {
+		TerminalImage image = new TerminalImage(21, 40, new int[21 * 40], 10, 20);
+		assertEquals(3, image.getColumns());
+		assertEquals(2, image.getRows());
+		try {
+			new TerminalImage(2, 2, new int[3], 10, 20);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.termux.terminal;
+
+/**
+ * Timing of column lookups and writes in 300 column rows mixing CJK characters, emoji and combining characters, which
+ * is where {@link TerminalRow#findStartOfColumn(int)} cannot map columns directly to chars.
+ * <p>
+ * Run with a plain JVM, as it is not part of the unit tests:
+ * <pre>
+ * java -cp &lt;classes&gt; com.termux.terminal.TerminalRowBenchmark [iterations]
+ * </pre>
+ */
+public final class TerminalRowBenchmark {
+
+	private static final int COLUMNS = 300;
+
+	public static void main(String[] args) {
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		final TerminalRow row = new TerminalRow(COLUMNS, TextStyle.NORMAL);
+		for (int round = 0; round < 5; round++) {
+			// The first rounds are warmup for the JIT.
+			long checksum = 0;
+			fillMixedRow(row);
+			long startTime = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				for (int column = 0; column <= COLUMNS; column++)
+					checksum += row.findStartOfColumn(column);
+			}
+			long lookupNanos = System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				// Fill and overwrite every cell from the start, as when redrawing a full screen application:
+				for (int column = 0; column < COLUMNS; column++)
+					row.setChar(column, 'x', TextStyle.NORMAL);
+			}
+			long writeNanos = System.nanoTime() - startTime;
+
+			System.out.printf("round %d: lookup %.1f ns/column, fill and overwrite %.1f us/row (checksum %d)%n", round,
+				lookupNanos / (double) (iterations * (COLUMNS + 1)), writeNanos / (iterations * 1000.0), checksum);
+		}
+	}
+
+	private static void fillMixedRow(TerminalRow row) {
+		row.clear(TextStyle.NORMAL);
+		int column = 0;
+		for (int i = 0; column < COLUMNS - 1; i++) {
+			switch (i % 4) {
+				case 0: // CJK UNIFIED IDEOGRAPH-679C
+					row.setChar(column, 0x679C, TextStyle.NORMAL);
+					column += 2;
+					break;
+				case 1: // GRINNING FACE
+					row.setChar(column, 0x1F600, TextStyle.NORMAL);
+					column += 2;
+					break;
+				case 2:
+					row.setChar(column, 'e', TextStyle.NORMAL);
+					row.setChar(column, 0x0301, TextStyle.NORMAL);
+					column++;
+					break;
+				default:
+					row.setChar(column++, 'a', TextStyle.NORMAL);
+			}
+		}
+	}
+
+}
@@ -429,4 +429,113 @@ public class TerminalRowTest extends TestCase {
 		// assertEquals(' ', line.mText[line.findStartOfColumn(COLUMNS - 1)]);
 	}
 
+	public void testVersionChangesOnModification() {
+		int version = row.getVersion();
+		row.setChar(0, 'a', 0);
+		assertTrue(row.getVersion() != version);
+
+		version = row.getVersion();
+		row.setAsciiRun(1, new int[]{'b', 'c'}, 0, 2, 0);
+		assertTrue(row.getVersion() != version);
+
+		// Copying from a row leaves it unchanged:
+		version = row.getVersion();
+		new TerminalRow(COLUMNS, 0).copyInterval(row, 0, 2, 0);
+		assertEquals(version, row.getVersion());
+
+		row.copyInterval(row, 0, 2, 2);
+		assertTrue(row.getVersion() != version);
+
+		version = row.getVersion();
+		row.clear(0);
+		assertTrue(row.getVersion() != version);
+	}
+
+	public void testColumnIndexFollowsModifications() {
+		Random random = new Random(4711);
+		int[] codePoints = {'a', ONE_JAVA_CHAR_DISPLAY_WIDTH_TWO_1, TWO_JAVA_CHARS_DISPLAY_WIDTH_TWO_1,
+			TWO_JAVA_CHARS_DISPLAY_WIDTH_ONE_1, DIARESIS_CODEPOINT};
+		for (int i = 0; i < 2000; i++) {
+			int column = random.nextInt(COLUMNS);
+			int codePoint = codePoints[random.nextInt(codePoints.length)];
+			if (WcWidth.width(codePoint) == 2 && column == COLUMNS - 1) continue;
+			row.setChar(column, codePoint, 0);
+			int checkColumn = random.nextInt(COLUMNS + 1);
+			assertEquals(findStartOfColumnByScanning(checkColumn), row.findStartOfColumn(checkColumn));
+			if (i % 100 == 0) row.clear(0);
+		}
+	}
+
+	public void testManyStyles() {
+		final long defaultStyle = TextStyle.encode(TextStyle.COLOR_INDEX_FOREGROUND, TextStyle.COLOR_INDEX_BACKGROUND, 0);
+		row.clear(defaultStyle);
+		for (int column = 0; column < COLUMNS; column++)
+			assertEquals(defaultStyle, row.getStyle(column));
+
+		// Styles which have been overwritten should not use up the palette:
+		for (int color = 0; color < 1000; color++) {
+			long style = TextStyle.encode(color, TextStyle.COLOR_INDEX_BACKGROUND, 0);
+			row.setChar(color % 2, 'a', style);
+			assertEquals(style, row.getStyle(color % 2));
+		}
+		for (int column = 2; column < COLUMNS; column++)
+			assertEquals(defaultStyle, row.getStyle(column));
+
+		// More distinct styles than fit in the palette:
+		final int wideColumns = 300;
+		TerminalRow wideRow = new TerminalRow(wideColumns, defaultStyle);
+		long[] styles = new long[wideColumns];
+		for (int round = 0; round < 2; round++) {
+			for (int column = 0; column < wideColumns; column++) {
+				styles[column] = TextStyle.encode(0xff000000 | (round * wideColumns + column), TextStyle.COLOR_INDEX_BACKGROUND, 0);
+				wideRow.setChar(column, 'b', styles[column]);
+			}
+		}
+		wideRow.setAsciiRun(10, new int[]{'c', 'd'}, 0, 2, defaultStyle);
+		styles[10] = styles[11] = defaultStyle;
+		for (int column = 0; column < wideColumns; column++)
+			assertEquals(styles[column], wideRow.getStyle(column));
+		wideRow.clear(TextStyle.NORMAL);
+		assertEquals(TextStyle.NORMAL, wideRow.getStyle(wideColumns - 1));
+
+		row.clear(TextStyle.NORMAL);
+		for (int column = 0; column < COLUMNS; column++)
+			assertEquals(TextStyle.NORMAL, row.getStyle(column));
+	}
+
+	/** The linear scan which {@link TerminalRow#findStartOfColumn(int)} replaces. */
+	private int findStartOfColumnByScanning(int column) {
+		if (column == COLUMNS) return row.getSpaceUsed();
+		int currentColumn = 0;
+		int currentCharIndex = 0;
+		while (true) {
+			int newCharIndex = currentCharIndex;
+			char c = row.mText[newCharIndex++];
+			int codePoint = Character.isHighSurrogate(c) ? Character.toCodePoint(c, row.mText[newCharIndex++]) : c;
+			int wcwidth = WcWidth.width(codePoint);
+			if (wcwidth > 0) {
+				currentColumn += wcwidth;
+				if (currentColumn == column) {
+					while (newCharIndex < row.getSpaceUsed()) {
+						if (Character.isHighSurrogate(row.mText[newCharIndex])) {
+							if (WcWidth.width(Character.toCodePoint(row.mText[newCharIndex], row.mText[newCharIndex + 1])) <= 0) {
+								newCharIndex += 2;
+							} else {
+								break;
+							}
+						} else if (WcWidth.width(row.mText[newCharIndex]) <= 0) {
+							newCharIndex++;
+						} else {
+							break;
+						}
+					}
+					return newCharIndex;
+				} else if (currentColumn > column) {
+					return currentCharIndex;
+				}
+			}
+			currentCharIndex = newCharIndex;
+		}
+	}
+
 }
@@ -0,0 +1,180 @@
+package com.termux.terminal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class TerminalSnapshotTest extends TerminalTestCase {
+
+	private File mFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mFile = File.createTempFile("snapshot", null);
+		assertTrue(mFile.delete());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		//noinspection ResultOfMethodCallIgnored
+		mFile.delete();
+		super.tearDown();
+	}
+
+	private TerminalEmulator restored() throws IOException {
+		TerminalEmulator emulator = new TerminalEmulator(new MockTerminalOutput(), 20, 10, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, 100);
+		assertTrue(new TerminalSnapshot(mFile).restore(emulator));
+		return emulator;
+	}
+
+	private static void assertSameContent(TerminalEmulator expected, TerminalEmulator actual) {
+		assertEquals(expected.mColumns, actual.mColumns);
+		assertEquals(expected.mRows, actual.mRows);
+		TerminalBuffer expectedScreen = expected.getScreen();
+		TerminalBuffer actualScreen = actual.getScreen();
+		assertEquals(expectedScreen.getActiveTranscriptRows(), actualScreen.getActiveTranscriptRows());
+		assertEquals(expectedScreen.getTranscriptText(), actualScreen.getTranscriptText());
+		for (int row = -expectedScreen.getActiveTranscriptRows(); row < expected.mRows; row++) {
+			assertEquals(expectedScreen.getLineWrap(row), actualScreen.getLineWrap(row));
+			for (int column = 0; column < expected.mColumns; column++)
+				assertEquals(expectedScreen.getStyleAt(row, column), actualScreen.getStyleAt(row, column));
+		}
+		assertEquals(expected.getCursorRow(), actual.getCursorRow());
+		assertEquals(expected.getCursorCol(), actual.getCursorCol());
+		assertEquals(expected.getCursorStyle(), actual.getCursorStyle());
+		assertEquals(expected.getTitle(), actual.getTitle());
+		assertEquals(expected.isAlternateBufferActive(), actual.isAlternateBufferActive());
+	}
+
+	public void testRestore() throws IOException {
+		withTerminalSized(8, 4);
+		for (int i = 0; i < 30; i++) enterString("\033[3" + (i % 8) + "mline " + i + "\033[0m\r\n");
+		enterString("wrapping over\033]0;The title\007\033]4;1;#123456\007\033[4 q\033[2;3r\033[3;5H");
+		new TerminalSnapshot(mFile).checkpoint(mTerminal);
+
+		TerminalEmulator emulator = restored();
+		assertSameContent(mTerminal, emulator);
+		assertEquals(0xff123456, emulator.mColors.mCurrentColors[1]);
+		// The scroll region is restored along with the rest of the state:
+		byte[] input = "\n\n\nnext".getBytes();
+		mTerminal.append(input, input.length);
+		emulator.append(input, input.length);
+		assertSameContent(mTerminal, emulator);
+	}
+
+	public void testRestoreAlternateBuffer() throws IOException {
+		withTerminalSized(10, 3);
+		enterString("main\r\n\033[?1049h\033[1;31malt");
+		new TerminalSnapshot(mFile).checkpoint(mTerminal);
+
+		TerminalEmulator emulator = restored();
+		assertSameContent(mTerminal, emulator);
+		byte[] input = "\033[?1049l".getBytes();
+		mTerminal.append(input, input.length);
+		emulator.append(input, input.length);
+		assertSameContent(mTerminal, emulator);
+	}
+
+	public void testIncrementalCheckpoints() throws IOException {
+		withTerminalSized(10, 3);
+		TerminalSnapshot snapshot = new TerminalSnapshot(mFile);
+		enterString("first\r\nsecond\r\nthird\r\nfourth\r\n");
+		snapshot.checkpoint(mTerminal);
+		long fullLength = mFile.length();
+
+		enterString("fifth\r\n");
+		snapshot.checkpoint(mTerminal);
+		// Only the new row and the screen were appended:
+		assertTrue(mFile.length() - fullLength < fullLength);
+		assertSameContent(mTerminal, restored());
+
+		// Clearing the transcript rewrites the file without the cleared rows:
+		enterString("\033[3J");
+		snapshot.checkpoint(mTerminal);
+		assertSameContent(mTerminal, restored());
+		assertEquals(0, restored().getScreen().getActiveTranscriptRows());
+	}
+
+	public void testWritesStateAsRecorded() throws IOException {
+		withTerminalSized(10, 3);
+		TerminalSnapshot snapshot = new TerminalSnapshot(mFile);
+		enterString("first\r\nsecond\r\nthird\r\n");
+		snapshot.checkpoint(mTerminal);
+		enterString("fourth\r\n");
+		snapshot.record(mTerminal);
+		TerminalEmulator recorded = restored();
+		enterString("fifth\r\n\033[3J");
+
+		// What is written is the state when recorded, and the next checkpoint continues from it:
+		snapshot.write();
+		TerminalEmulator written = restored();
+		assertEquals(recorded.getScreen().getActiveTranscriptRows() + 1, written.getScreen().getActiveTranscriptRows());
+		assertTrue(written.getScreen().getTranscriptText().contains("fourth"));
+		assertFalse(written.getScreen().getTranscriptText().contains("fifth"));
+		snapshot.checkpoint(mTerminal);
+		assertSameContent(mTerminal, restored());
+	}
+
+	public void testNothingWrittenAfterDelete() throws IOException {
+		withTerminalSized(10, 3);
+		TerminalSnapshot snapshot = new TerminalSnapshot(mFile);
+		enterString("first\r\n");
+		snapshot.record(mTerminal);
+		snapshot.delete();
+		snapshot.write();
+		snapshot.checkpoint(mTerminal);
+		assertFalse(mFile.exists());
+	}
+
+	public void testCheckpointsAfterRestore() throws IOException {
+		withTerminalSized(10, 3);
+		enterString("first\r\nsecond\r\nthird\r\n");
+		new TerminalSnapshot(mFile).checkpoint(mTerminal);
+
+		TerminalEmulator emulator = new TerminalEmulator(new MockTerminalOutput(), 20, 10, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, 100);
+		TerminalSnapshot snapshot = new TerminalSnapshot(mFile);
+		assertTrue(snapshot.restore(emulator));
+		byte[] input = "fourth\r\nfifth\r\n".getBytes();
+		emulator.append(input, input.length);
+		mTerminal.append(input, input.length);
+		snapshot.checkpoint(emulator);
+		assertSameContent(mTerminal, restored());
+	}
+
+	public void testTornRecordIgnored() throws IOException {
+		withTerminalSized(10, 3);
+		TerminalSnapshot snapshot = new TerminalSnapshot(mFile);
+		enterString("first\r\nsecond\r\nthird\r\n");
+		snapshot.checkpoint(mTerminal);
+		long firstLength = mFile.length();
+		TerminalEmulator expected = restored();
+
+		enterString("fourth\r\nfifth\r\n");
+		snapshot.checkpoint(mTerminal);
+		try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+			file.setLength(mFile.length() - 3);
+		}
+		assertSameContent(expected, restored());
+
+		// A corrupted record is ignored as well:
+		try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+			file.seek(firstLength - 1);
+			int lastByte = file.read();
+			file.seek(firstLength - 1);
+			file.write(lastByte ^ 1);
+		}
+		assertFalse(new TerminalSnapshot(mFile).restore(new TerminalEmulator(new MockTerminalOutput(), 20, 10,
+			INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, 100)));
+	}
+
+	public void testNoSnapshot() throws IOException {
+		withTerminalSized(10, 3);
+		assertFalse(new TerminalSnapshot(mFile).restore(mTerminal));
+		new TerminalSnapshot(mFile).checkpoint(mTerminal);
+		TerminalSnapshot snapshot = new TerminalSnapshot(mFile);
+		snapshot.delete();
+		assertFalse(mFile.exists());
+	}
+
+}
@@ -69,6 +69,10 @@ public class TerminalTest extends TerminalTestCase {
 		assertEquals("\033[<0;1;1M", mOutput.getOutputAndClear());
 		mTerminal.sendMouseEvent(TerminalEmulator.MOUSE_LEFT_BUTTON, 11, 11, false, false, false, false);
 		assertEquals("\033[<0;10;10m", mOutput.getOutputAndClear());
+		// Codes can be made without writing them, and moves are only reported with button event tracking:
+		assertEquals("\033[<0;3;4M", new String(mTerminal.getMouseEventCode(TerminalEmulator.MOUSE_LEFT_BUTTON, 3, 4, true, false, false, false)));
+		assertNull(mTerminal.getMouseEventCode(TerminalEmulator.MOUSE_LEFT_BUTTON_MOVED, 3, 4, true, false, false, false));
+		assertEquals("", mOutput.getOutputAndClear());
 	}
 
 	public void testNormalization() {
@@ -140,6 +144,8 @@ public class TerminalTest extends TerminalTestCase {
 		enterString("\033[?2004l");
 		mTerminal.paste("hi");
 		assertEquals("hi", mOutput.getOutputAndClear());
+		assertFalse(mTerminal.isBracketedPasteMode());
+		assertEquals("\033[200~a\rb\033[201~", TerminalEmulator.getPasteCode("a\033\r\nb", true));
 	}
 
 	public void testSelectGraphics() {
@@ -296,6 +302,15 @@ public class TerminalTest extends TerminalTestCase {
 
 		assertEquals(0, TerminalColors.parse("invalid_0000FA"));
 		assertEquals(0, TerminalColors.parse("#3456"));
+		assertEquals(0, TerminalColors.parse(""));
+		assertEquals(0, TerminalColors.parse("rgb:"));
+		assertEquals(0, TerminalColors.parse("rgb:0/g/0"));
+
+		// Parsed in place from within OSC arguments:
+		char[] args = "4;5;rgb:53/18/6f;6;#0000FA".toCharArray();
+		assertEquals(0xFF53186f, TerminalColors.parse(args, 4, 16));
+		assertEquals(0xFF0000FA, TerminalColors.parse(args, 19, args.length));
+		assertEquals(0, TerminalColors.parse(args, 4, 15));
 	}
 
 	/** The ncurses library still uses this. */
@@ -338,4 +353,27 @@ public class TerminalTest extends TerminalTestCase {
 		withTerminalSized(11, 2).enterString("01234567890\033[44m\r\tXX").assertLinesAre("01234567XX0", "           ");
 	}
 
+	/** Runs of printable ASCII are written in one batch, which should give the same result as one byte at a time. */
+	public void testAsciiRuns() {
+		withTerminalSized(5, 3).enterString("abcdefghij").assertLinesAre("abcde", "fghij", "     ").assertCursorAt(1, 4);
+		assertLineWraps(true, false, false);
+		enterString("k").assertLinesAre("abcde", "fghij", "k    ").assertCursorAt(2, 1);
+
+		// Overwriting wide characters partially, at the start and at the end of the run:
+		withTerminalSized(6, 2).enterString("一丁丂\r\033[Cab").assertLinesAre(" ab 丂", "      ");
+		withTerminalSized(6, 2).enterString("一丁丂\rabc").assertLinesAre("abc 丂", "      ");
+		// Overwriting combining characters:
+		withTerminalSized(4, 2).enterString("âb̂c\rxy").assertLinesAre("xyc ", "    ");
+
+		// Insert mode shifts the rest of the line right by the whole run:
+		withTerminalSized(6, 2).enterString("abcd\r\033[4hXY").assertLinesAre("XYabcd", "      ").assertCursorAt(0, 2);
+		enterString("Z").assertLinesAre("XYZabc", "      ");
+
+		// Without autowrap the last column keeps being overwritten:
+		withTerminalSized(4, 2).enterString("\033[?7labcdefg").assertLinesAre("abcg", "    ").assertCursorAt(0, 3);
+
+		// Left and right margins:
+		withTerminalSized(6, 3).enterString("\033[?69h\033[2;4s\033[1;2Habcdefg").assertLinesAre(" abc  ", " def  ", " g    ");
+	}
+
 }
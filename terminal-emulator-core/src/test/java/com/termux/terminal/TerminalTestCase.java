@@ -1,7 +1,5 @@
 package com.termux.terminal;
 
-import androidx.annotation.NonNull;
-
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
 
@@ -59,6 +57,10 @@ public abstract class TerminalTestCase extends TestCase {
 		public void onColorsChanged() {
 			colorsChanged++;
 		}
+
+		@Override
+		public void onTerminalCursorStateChange(boolean state) {
+		}
 	}
 
 	public TerminalEmulator mTerminal;
@@ -85,7 +87,6 @@ public abstract class TerminalTestCase extends TestCase {
 			return Objects.hash(oldTitle, newTitle);
 		}
 
-		@NonNull
         @Override
 		public String toString() {
 			return "ChangedTitle[oldTitle=" + oldTitle + ", newTitle=" + newTitle + "]";
@@ -114,7 +115,7 @@ public abstract class TerminalTestCase extends TestCase {
 
 	protected TerminalTestCase withTerminalSized(int columns, int rows) {
 	    // The tests aren't currently using the client, so a null client will suffice, a dummy client should be implemented if needed
-		mTerminal = new TerminalEmulator(mOutput, columns, rows, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, rows * 2, null);
+		mTerminal = new TerminalEmulator(mOutput, columns, rows, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, rows * 2);
 		return this;
 	}
 
@@ -0,0 +1,90 @@
+package com.termux.terminal;
+
+import java.io.File;
+
+public class TranscriptArchiveTest extends TerminalTestCase {
+
+	private File mFile;
+	private TranscriptArchive mArchive;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mFile = File.createTempFile("transcript", null);
+		mArchive = new TranscriptArchive(mFile);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		mArchive.close();
+		assertFalse(mFile.exists());
+		super.tearDown();
+	}
+
+	/** A terminal keeping the minimum of 100 rows in memory, of which 3 are the screen. */
+	private void withArchivedTerminal(int columns) {
+		mTerminal = new TerminalEmulator(mOutput, columns, 3, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, 100);
+		mTerminal.setTranscriptArchive(mArchive);
+	}
+
+	private String rowText(int row) {
+		return mTerminal.getScreen().getSelectedText(0, row, mTerminal.mColumns, row);
+	}
+
+	public void testRowsScrollIntoArchive() {
+		withArchivedTerminal(10);
+		for (int i = 0; i < 1000; i++) enterString("line " + i + "\r\n");
+
+		TerminalBuffer screen = mTerminal.getScreen();
+		assertEquals(901, mArchive.getRowCount());
+		assertEquals(998, screen.getActiveTranscriptRows());
+		for (int i = 0; i < 1000; i++) assertEquals("line " + i, rowText(i - 998));
+		assertTrue(screen.getTranscriptText().startsWith("line 0\nline 1\n"));
+	}
+
+	public void testStylesAndWideChars() {
+		withArchivedTerminal(6);
+		enterString("\033[31ma\033[42mb\033[0mc枝\r\n");
+		enterString("abcdefgh\r\n");
+		for (int i = 0; i < 600; i++) enterString(i + "\r\n");
+
+		TerminalBuffer screen = mTerminal.getScreen();
+		int firstRow = -screen.getActiveTranscriptRows();
+		TerminalRow row = screen.getRow(firstRow);
+		assertEquals("abc枝", rowText(firstRow));
+		assertEquals(1, TextStyle.decodeForeColor(row.getStyle(0)));
+		assertEquals(2, TextStyle.decodeBackColor(row.getStyle(1)));
+		assertEquals(TextStyle.NORMAL, row.getStyle(2));
+		assertEquals(4, row.findStartOfColumn(5));
+		assertTrue(screen.getRow(firstRow + 1).mLineWrap);
+		assertEquals("abcdefgh", screen.getSelectedText(0, firstRow + 1, 6, firstRow + 2, true, false));
+	}
+
+	public void testClearTranscript() {
+		withArchivedTerminal(10);
+		for (int i = 0; i < 1000; i++) enterString("line " + i + "\r\n");
+		enterString("\033[3J");
+		assertEquals(0, mArchive.getRowCount());
+		assertEquals(0, mTerminal.getScreen().getActiveTranscriptRows());
+
+		for (int i = 0; i < 1000; i++) enterString("again " + i + "\r\n");
+		// The rows which were on screen when clearing stay:
+		assertEquals(1000, mTerminal.getScreen().getActiveTranscriptRows());
+		assertEquals("line 998", rowText(-1000));
+		assertEquals("again 0", rowText(-998));
+		assertEquals("again 997", rowText(-1));
+	}
+
+	public void testResize() {
+		withArchivedTerminal(10);
+		for (int i = 0; i < 400; i++) enterString("line " + i + "\r\n");
+
+		// Rows in the archive are cut to the new width, while those in memory are reflowed:
+		mTerminal.resize(4, 3, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS);
+		TerminalBuffer screen = mTerminal.getScreen();
+		int firstRow = -screen.getActiveTranscriptRows();
+		assertEquals("line", rowText(firstRow));
+		assertTrue(screen.getTranscriptText().endsWith("line 398\nline 399"));
+	}
+
+}
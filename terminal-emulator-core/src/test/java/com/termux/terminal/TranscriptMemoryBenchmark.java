@@ -0,0 +1,53 @@
+package com.termux.terminal;
+
+/**
+ * Heap used by a terminal buffer with a full transcript of typical colored output, such as from ls or compiler
+ * diagnostics, with a few styles on each row.
+ * <p>
+ * Run with a plain JVM, as it is not part of the unit tests:
+ * <pre>
+ * java -cp &lt;classes&gt; com.termux.terminal.TranscriptMemoryBenchmark [columns]
+ * </pre>
+ */
+public final class TranscriptMemoryBenchmark {
+
+	private static final int SCREEN_ROWS = 60;
+
+	public static void main(String[] args) {
+		final int columns = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		for (int transcriptRows : new int[]{10_000, 50_000, 100_000}) {
+			long usedBefore = usedHeap();
+			TerminalBuffer buffer = fillBuffer(columns, transcriptRows);
+			long usedAfter = usedHeap();
+			// Measured while the buffer is still in use:
+			final int activeRows = buffer.getActiveRows();
+			System.out.printf("%d rows of %d columns: %.1f MB, %d bytes/row%n", activeRows, columns,
+				(usedAfter - usedBefore) / (1024.0 * 1024.0), (usedAfter - usedBefore) / activeRows);
+		}
+	}
+
+	private static TerminalBuffer fillBuffer(int columns, int transcriptRows) {
+		final int totalRows = transcriptRows + SCREEN_ROWS;
+		TerminalBuffer buffer = new TerminalBuffer(columns, totalRows, SCREEN_ROWS);
+		final long plainStyle = TextStyle.NORMAL;
+		final long[] highlightStyles = {
+			TextStyle.encode(1, TextStyle.COLOR_INDEX_BACKGROUND, TextStyle.CHARACTER_ATTRIBUTE_BOLD),
+			TextStyle.encode(4, TextStyle.COLOR_INDEX_BACKGROUND, 0),
+			TextStyle.encode(0xff87afd7, TextStyle.COLOR_INDEX_BACKGROUND, 0)};
+		for (int row = 0; row < totalRows; row++) {
+			final int screenRow = SCREEN_ROWS - 1;
+			final long highlightStyle = highlightStyles[row % highlightStyles.length];
+			for (int column = 0; column < columns / 2; column++)
+				buffer.setChar(column, screenRow, 'a' + (row + column) % 26, column < 20 ? highlightStyle : plainStyle);
+			buffer.scrollDownOneLine(0, SCREEN_ROWS, plainStyle);
+		}
+		return buffer;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
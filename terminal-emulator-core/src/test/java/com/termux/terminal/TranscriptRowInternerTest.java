@@ -0,0 +1,70 @@
+package com.termux.terminal;
+
+public class TranscriptRowInternerTest extends TerminalTestCase {
+
+	private final TranscriptRowInterner mInterner = new TranscriptRowInterner();
+
+	private TerminalEmulator newSharingTerminal(int columns, int rows) {
+		TerminalEmulator terminal = new TerminalEmulator(mOutput, columns, rows, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, 100);
+		terminal.setTranscriptRowInterner(mInterner);
+		return terminal;
+	}
+
+	private static void enter(TerminalEmulator terminal, String s) {
+		byte[] bytes = s.getBytes();
+		terminal.append(bytes, bytes.length);
+	}
+
+	public void testIdenticalRowsShared() {
+		TerminalEmulator first = newSharingTerminal(10, 3);
+		TerminalEmulator second = newSharingTerminal(10, 3);
+		for (int i = 0; i < 200; i++) {
+			enter(first, "line " + i + "\r\n");
+			enter(second, "line " + i + "\r\n");
+		}
+		enter(second, "\033[31mdiffers\r\n\r\n\r\n");
+
+		TerminalBuffer firstScreen = first.getScreen();
+		TerminalBuffer secondScreen = second.getScreen();
+		assertEquals("line 197", secondScreen.getSelectedText(0, -4, 10, -4));
+		assertSame(firstScreen.getRow(-1), secondScreen.getRow(-4));
+		assertSame(firstScreen.getRow(-94), secondScreen.getRow(-97));
+		assertEquals("line 199", secondScreen.getSelectedText(0, -2, 10, -2));
+		assertEquals("differs", secondScreen.getSelectedText(0, -1, 10, -1));
+
+		// The first terminal interned its rows itself, while the second shares most of them:
+		assertEquals(0, firstScreen.getSharedTranscriptMemory());
+		assertTrue(secondScreen.getSharedTranscriptMemory() > 90 * 10 * 2);
+
+		// The oldest rows, which are no longer held by either terminal, are dropped:
+		for (int i = 0; i < 20 && mInterner.getRowCount() > 100; i++) {
+			System.gc();
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		assertEquals(100, mInterner.getRowCount());
+	}
+
+	public void testSharedRowsCopiedBeforeWriting() {
+		TerminalEmulator first = newSharingTerminal(5, 2);
+		TerminalEmulator second = newSharingTerminal(5, 2);
+		enter(first, "abc\r\ndef\r\nghi");
+		enter(second, "abc\r\ndef\r\nghi");
+		assertSame(first.getScreen().getRow(-1), second.getScreen().getRow(-1));
+
+		// Growing the screen moves the shared row back onto it, to be written to:
+		second.resize(5, 3, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS);
+		enter(second, "\033[1;1HXY");
+		assertEquals("XYc", second.getScreen().getSelectedText(0, 0, 5, 0));
+		assertEquals("abc", first.getScreen().getSelectedText(0, -1, 5, -1));
+
+		// Clearing the transcript and scrolling again does not reuse shared rows:
+		enter(first, "\033[3J");
+		for (int i = 0; i < 150; i++) enter(first, "new\r\n");
+		assertEquals("def", second.getScreen().getSelectedText(0, 1, 5, 1));
+	}
+
+}
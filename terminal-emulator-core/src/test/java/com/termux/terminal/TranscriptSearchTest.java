@@ -0,0 +1,88 @@
+package com.termux.terminal;
+
+import java.util.Arrays;
+
+public class TranscriptSearchTest extends TerminalTestCase {
+
+	private TranscriptSearch search(String query, boolean regex, boolean ignoreCase) {
+		TranscriptSearch search = new TranscriptSearch(mTerminal.getScreen());
+		search.setQuery(query, regex, ignoreCase);
+		return search;
+	}
+
+	private static TranscriptSearch.Match match(int startRow, int startColumn, int endRow, int endColumn) {
+		return new TranscriptSearch.Match(startRow, startColumn, endRow, endColumn);
+	}
+
+	public void testForwardAndBackward() {
+		withTerminalSized(10, 3).enterString("foo bar\r\nbar foo\r\nfoo");
+		TranscriptSearch search = search("foo", false, false);
+		assertEquals(match(0, 0, 0, 3), search.findNext(0, 0));
+		assertEquals(match(1, 4, 1, 7), search.findNext(0, 1));
+		assertEquals(match(2, 0, 2, 3), search.findNext(1, 5));
+		assertNull(search.findNext(2, 1));
+
+		assertEquals(match(1, 4, 1, 7), search.findPrevious(2, 0));
+		assertEquals(match(0, 0, 0, 3), search.findPrevious(1, 4));
+		assertNull(search.findPrevious(0, 0));
+	}
+
+	public void testTranscript() {
+		withTerminalSized(10, 2).enterString("one\r\ntwo\r\nthree\r\nfour");
+		TranscriptSearch search = search("o", false, false);
+		assertEquals(match(-2, 0, -2, 1), search.findNext(-100, 0));
+		assertEquals(match(-1, 2, -1, 3), search.findNext(-2, 1));
+		assertEquals(match(1, 1, 1, 2), search.findPrevious(100, 0));
+	}
+
+	public void testRegexAndCase() {
+		withTerminalSized(20, 2).enterString("Error: 12 error: 345");
+		assertEquals(match(0, 0, 0, 5), search("error", false, true).findNext(0, 0));
+		assertEquals(match(0, 10, 0, 15), search("error", false, false).findNext(0, 0));
+		assertEquals(match(0, 17, 0, 20), search("[0-9]{3}", true, false).findNext(0, 0));
+		// Literal search does not interpret the query:
+		assertNull(search("[0-9]", false, false).findNext(0, 0));
+	}
+
+	public void testMatchAcrossWrappedRows() {
+		withTerminalSized(5, 3).enterString("abcdefgh");
+		TranscriptSearch search = search("def", false, false);
+		assertEquals(match(0, 3, 1, 1), search.findNext(0, 0));
+		assertTrue(Arrays.equals(new int[]{3, 5}, search.getMatchedColumns(0)));
+		assertTrue(Arrays.equals(new int[]{0, 1}, search.getMatchedColumns(1)));
+		assertNull(search.getMatchedColumns(2));
+	}
+
+	public void testWideAndCombiningChars() {
+		withTerminalSized(10, 2).enterString("枝a\u0302b枝");
+		assertEquals(match(0, 2, 0, 4), search("a\u0302b", false, false).findNext(0, 0));
+		assertEquals(match(0, 3, 0, 6), search("b枝", false, false).findNext(0, 0));
+		// A combining char belongs to the cell of the char before it:
+		assertEquals(match(0, 2, 0, 3), search("\u0302", false, false).findNext(0, 0));
+	}
+
+	public void testUpdatesWithNewOutput() {
+		withTerminalSized(10, 2).enterString("x\r\ny");
+		TranscriptSearch search = search("needle", false, false);
+		assertNull(search.findNext(-100, 0));
+
+		enterString("\r\nneedle");
+		assertEquals(match(1, 0, 1, 6), search.findNext(-100, 0));
+		enterString("\r\nmore");
+		assertEquals(match(0, 0, 0, 6), search.findNext(-100, 0));
+		assertEquals(match(0, 0, 0, 6), search.findPrevious(100, 0));
+
+		// Overwriting the match removes it:
+		enterString("\033[1;1HNEEDLE");
+		assertNull(search.findNext(-100, 0));
+	}
+
+	public void testNoQuery() {
+		withTerminalSized(10, 2).enterString("abc");
+		TranscriptSearch search = search(null, false, false);
+		assertFalse(search.hasQuery());
+		assertNull(search.findNext(0, 0));
+		assertNull(search.getMatchedColumns(0));
+	}
+
+}
@@ -55,6 +55,27 @@ public class UnicodeInputTest extends TerminalTestCase {
 		// assertLinesAre("\uFFFD\uFFFDa  ", "     ");
 	}
 
+	public void testSequenceSplitAcrossAppends() {
+		withTerminalSized(5, 2);
+		// UTF-8 for "aé丁", appended one byte at a time:
+		byte[] input = new byte[]{'a', (byte) 0xc3, (byte) 0xa9, (byte) 0xe4, (byte) 0xb8, (byte) 0x81};
+		for (byte b : input)
+			mTerminal.append(new byte[]{b}, 1);
+		assertLinesAre("aé丁 ", "     ");
+
+		// A sequence broken off at the start of the next append:
+		withTerminalSized(5, 2);
+		mTerminal.append(new byte[]{'a', (byte) 0xe4, (byte) 0xb8}, 3);
+		mTerminal.append(new byte[]{'b', 'c'}, 2);
+		assertLinesAre("a\uFFFDbc ", "     ");
+
+		// A four-byte sequence split over two appends:
+		withTerminalSized(5, 2);
+		mTerminal.append(new byte[]{(byte) 0xf0, (byte) 0x9f}, 2);
+		mTerminal.append(new byte[]{(byte) 0x98, (byte) 0x80, 'x'}, 3);
+		assertLinesAre(new String(Character.toChars(0x1F600)) + "x  ", "     ");
+	}
+
 	public void testUnassignedCodePoint() {
 		withTerminalSized(3, 3);
 		// UTF-8 for U+C2541, an unassigned code point:
@@ -0,0 +1,45 @@
+package com.termux.terminal;
+
+import java.util.Random;
+
+/**
+ * Timing of {@link WcWidth#width(int)} against the binary search in the range tables it is built from, for code points
+ * as found in mixed Latin, CJK and emoji output.
+ * <p>
+ * Run with a plain JVM, as it is not part of the unit tests:
+ * <pre>
+ * java -cp &lt;classes&gt; com.termux.terminal.WcWidthBenchmark [iterations]
+ * </pre>
+ */
+public final class WcWidthBenchmark {
+
+	public static void main(String[] args) {
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		final int[] codePoints = new int[4096];
+		final int[][] ranges = {{0x20, 0x7e}, {0xa0, 0x24f}, {0x300, 0x36f}, {0x4e00, 0x9fff}, {0xac00, 0xd7a3}, {0x1f300, 0x1f64f}};
+		Random random = new Random(4711);
+		for (int i = 0; i < codePoints.length; i++) {
+			int[] range = ranges[random.nextInt(ranges.length)];
+			codePoints[i] = range[0] + random.nextInt(range[1] - range[0] + 1);
+		}
+
+		for (int round = 0; round < 5; round++) {
+			// The first rounds are warmup for the JIT.
+			long checksum = 0;
+			long startTime = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+				for (int codePoint : codePoints) checksum += WcWidth.width(codePoint);
+			long lookupNanos = System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+				for (int codePoint : codePoints) checksum -= WcWidth.widthByBinarySearch(codePoint);
+			long searchNanos = System.nanoTime() - startTime;
+
+			final double lookups = (double) iterations * codePoints.length;
+			System.out.printf("round %d: table %.2f ns/lookup, binary search %.2f ns/lookup (checksum %d)%n", round,
+				lookupNanos / lookups, searchNanos / lookups, checksum);
+		}
+	}
+
+}
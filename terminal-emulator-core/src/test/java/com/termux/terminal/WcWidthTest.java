@@ -78,4 +78,13 @@ public class WcWidthTest extends TestCase {
 		assertWidthIs(2, 0x1F643); // UPSIDE-DOWN FACE (Unicode 8).
 	}
 
+	public void testLookupMatchesTables() {
+		for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+			if (WcWidth.width(codePoint) != WcWidth.widthByBinarySearch(codePoint))
+				fail("Wrong width of code point 0x" + Integer.toHexString(codePoint));
+		}
+		assertEquals(WcWidth.widthByBinarySearch(-1), WcWidth.width(-1));
+		assertEquals(WcWidth.widthByBinarySearch(Character.MAX_CODE_POINT + 1), WcWidth.width(Character.MAX_CODE_POINT + 1));
+	}
+
 }
@@ -45,6 +45,7 @@ android {
 }
 
 dependencies {
+    api(project(":terminal-emulator-core"))
     implementation("androidx.annotation:annotation:1.8.2")
     testImplementation("junit:junit:4.13.2")
 }
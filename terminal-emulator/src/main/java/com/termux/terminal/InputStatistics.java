@@ -0,0 +1,69 @@
+package com.termux.terminal;
+
+import java.util.Locale;
+
+/**
+ * Statistics of how output from the process of a {@link TerminalSession} is fed to its emulator: the number of bytes
+ * emulated per batch, where a batch is the output emulated for one message to the thread doing emulation, and the echo
+ * latency, the time from input being written to the process to the next output from it being emulated.
+ * <p>
+ * Recorded by the thread doing emulation, and may be read from any thread.
+ */
+public final class InputStatistics {
+
+    private long mBatchCount;
+    private long mBatchedBytes;
+    private int mMaxBatchBytes;
+
+    private long mEchoCount;
+    private long mEchoNanos;
+    private long mMaxEchoNanos;
+
+    synchronized void recordBatch(int bytes) {
+        mBatchCount++;
+        mBatchedBytes += bytes;
+        mMaxBatchBytes = Math.max(mMaxBatchBytes, bytes);
+    }
+
+    synchronized void recordEcho(long nanos) {
+        mEchoCount++;
+        mEchoNanos += nanos;
+        mMaxEchoNanos = Math.max(mMaxEchoNanos, nanos);
+    }
+
+    public synchronized long getBatchCount() {
+        return mBatchCount;
+    }
+
+    public synchronized double getAverageBytesPerBatch() {
+        return (mBatchCount == 0) ? 0 : (double) mBatchedBytes / mBatchCount;
+    }
+
+    public synchronized int getMaxBytesPerBatch() {
+        return mMaxBatchBytes;
+    }
+
+    public synchronized long getEchoCount() {
+        return mEchoCount;
+    }
+
+    public synchronized double getAverageEchoLatencyMillis() {
+        return (mEchoCount == 0) ? 0 : mEchoNanos / (mEchoCount * 1e6);
+    }
+
+    public synchronized double getMaxEchoLatencyMillis() {
+        return mMaxEchoNanos / 1e6;
+    }
+
+    public synchronized void reset() {
+        mBatchCount = mBatchedBytes = mMaxBatchBytes = 0;
+        mEchoCount = mEchoNanos = mMaxEchoNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%d batches of %.0f bytes average, %d max; %d echoes in %.1f ms average, %.1f ms max",
+            mBatchCount, getAverageBytesPerBatch(), mMaxBatchBytes, mEchoCount, getAverageEchoLatencyMillis(), getMaxEchoLatencyMillis());
+    }
+
+}
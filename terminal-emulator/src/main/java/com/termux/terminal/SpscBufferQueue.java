@@ -0,0 +1,137 @@
+package com.termux.terminal;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A ring of reusable direct buffers passed from exactly one producer thread, reading into them straight from a file
+ * descriptor, to exactly one consumer thread, using their contents in place. Compared to a queue of bytes such as
+ * {@link ByteQueue} there is no copying into and out of the queue: the producer fills the buffer returned by {@link #obtain()} and hands it over
+ * with {@link #publish()}, and the consumer reads the buffer returned by {@link #peek()} and hands it back with
+ * {@link #release()} once done with it. On Android direct buffers have an accessible {@link ByteBuffer#array()}, so the
+ * consumer can parse them without copying either.
+ * <p>
+ * The size of the reads adapts to how much is available: it doubles, up to a maximum, after a read filling the whole
+ * buffer, and halves, down to a minimum, after a read of less than a quarter of it. Buffers are replaced with larger ones
+ * as needed, so that a quiet session keeps small buffers.
+ * <p>
+ * Instead of taking a lock, the two sides only communicate through volatile positions, and a side which has to wait
+ * parks itself until the other side has made progress.
+ */
+final class SpscBufferQueue {
+
+    private final ByteBuffer[] mBuffers;
+    private final int mMinReadSize;
+    private final int mMaxReadSize;
+    /** The size of the next read, only used by the producer. */
+    private int mReadSize;
+
+    /** The number of buffers released, only written by the consumer. */
+    private volatile long mReadPosition;
+    /** The number of buffers published, only written by the producer. */
+    private volatile long mWritePosition;
+    private volatile boolean mOpen = true;
+
+    /** The consumer thread if parked waiting for a buffer, otherwise null. */
+    private volatile Thread mWaitingReader;
+    /** The producer thread if parked waiting for a free buffer, otherwise null. */
+    private volatile Thread mWaitingWriter;
+
+    public SpscBufferQueue(int bufferCount, int minReadSize, int initialReadSize, int maxReadSize) {
+        if (bufferCount < 1 || minReadSize < 1 || initialReadSize < minReadSize || maxReadSize < initialReadSize)
+            throw new IllegalArgumentException("Invalid buffer queue: bufferCount=" + bufferCount + ", minReadSize=" + minReadSize
+                + ", initialReadSize=" + initialReadSize + ", maxReadSize=" + maxReadSize);
+        mBuffers = new ByteBuffer[bufferCount];
+        mMinReadSize = minReadSize;
+        mMaxReadSize = maxReadSize;
+        mReadSize = initialReadSize;
+    }
+
+    public void close() {
+        mOpen = false;
+        LockSupport.unpark(mWaitingReader);
+        LockSupport.unpark(mWaitingWriter);
+    }
+
+    /** Whether all buffers are waiting to be consumed, so that {@link #obtain()} would block. */
+    public boolean isFull() {
+        return mWritePosition - mReadPosition == mBuffers.length;
+    }
+
+    /** The size of the next read, see the class description. */
+    public int getReadSize() {
+        return mReadSize;
+    }
+
+    /**
+     * Get the next buffer for the producer to read into, cleared with its limit at the current read size, blocking while
+     * all buffers are waiting to be consumed. Returns null if the queue has been closed.
+     */
+    public ByteBuffer obtain() {
+        final long writePosition = mWritePosition;
+        while (writePosition - mReadPosition == mBuffers.length && mOpen) {
+            mWaitingWriter = Thread.currentThread();
+            // Check again after announcing that we are waiting, as the consumer may have released in between:
+            if (writePosition - mReadPosition == mBuffers.length && mOpen) LockSupport.park(this);
+            mWaitingWriter = null;
+        }
+        if (!mOpen) return null;
+
+        final int index = (int) (writePosition % mBuffers.length);
+        ByteBuffer buffer = mBuffers[index];
+        if (buffer == null || buffer.capacity() < mReadSize) buffer = mBuffers[index] = ByteBuffer.allocateDirect(mReadSize);
+        buffer.clear();
+        buffer.limit(mReadSize);
+        return buffer;
+    }
+
+    /**
+     * Hand the buffer last returned by {@link #obtain()}, filled up to its position, over to the consumer. Returns false
+     * if the queue has been closed.
+     */
+    public boolean publish() {
+        final long writePosition = mWritePosition;
+        final ByteBuffer buffer = mBuffers[(int) (writePosition % mBuffers.length)];
+        final int bytesRead = buffer.position();
+        if (bytesRead == buffer.limit()) {
+            mReadSize = Math.min(2 * mReadSize, mMaxReadSize);
+        } else if (bytesRead < buffer.limit() / 4) {
+            mReadSize = Math.max(mReadSize / 2, mMinReadSize);
+        }
+        buffer.flip();
+
+        mWritePosition = writePosition + 1;
+        LockSupport.unpark(mWaitingReader);
+        return mOpen;
+    }
+
+    /**
+     * Get the oldest published buffer which has not been released, positioned at the first byte not yet consumed, or
+     * null if there is none or the queue has been closed. Consuming from it is done by advancing its position.
+     */
+    public ByteBuffer peek() {
+        final long readPosition = mReadPosition;
+        if (readPosition == mWritePosition || !mOpen) return null;
+        return mBuffers[(int) (readPosition % mBuffers.length)];
+    }
+
+    /** Hand the buffer returned by {@link #peek()} back to the producer. */
+    public void release() {
+        mReadPosition = mReadPosition + 1;
+        LockSupport.unpark(mWaitingWriter);
+    }
+
+    /**
+     * Block until there is a published buffer or the queue is closed. Only for consumers which do not get told about
+     * new buffers by other means.
+     */
+    public void await() {
+        final long readPosition = mReadPosition;
+        while (readPosition == mWritePosition && mOpen) {
+            mWaitingReader = Thread.currentThread();
+            if (readPosition == mWritePosition && mOpen) LockSupport.park(this);
+            mWaitingReader = null;
+        }
+    }
+
+}
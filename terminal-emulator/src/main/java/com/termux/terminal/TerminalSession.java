@@ -2,6 +2,7 @@ package com.termux.terminal;
 
 import android.annotation.SuppressLint;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
 import android.system.ErrnoException;
@@ -16,17 +17,22 @@ import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A terminal session, consisting of a process coupled to a terminal interface.
  * <p>
  * The subprocess will be executed by the constructor, and when the size is made known by a call to
  * {@link #updateSize(int, int, int, int)} terminal emulation will begin and threads will be spawned to handle the subprocess I/O.
- * All terminal emulation and callback methods will be performed on the main thread.
+ * All terminal emulation and callback methods will be performed on the main thread, unless terminal emulation has been
+ * moved to a worker thread by {@link #setParseOnWorkerThread(boolean)}.
  * <p>
  * The child process may be exited forcefully by using the {@link #finishIfRunning()} method.
  * <p>
@@ -35,20 +41,42 @@ import java.util.UUID;
 public final class TerminalSession extends TerminalOutput {
 
     private static final int MSG_NEW_INPUT = 1;
+    private static final int MSG_SCREEN_UPDATED = 2;
     private static final int MSG_PROCESS_EXITED = 4;
 
+    /** The default maximum number of bytes from the process to emulate before letting other messages be handled. */
+    public static final int DEFAULT_INPUT_BUDGET_BYTES = 64 * 1024;
+    /** The default maximum time in milliseconds to spend emulating before letting other messages be handled. */
+    public static final int DEFAULT_INPUT_BUDGET_MILLIS = 8;
+
+    /**
+     * The default time in milliseconds to wait for more output from the process before emulating it, while it outputs
+     * faster than it is read.
+     */
+    public static final int DEFAULT_INPUT_BATCH_DELAY_MILLIS = 4;
+
+    /** The bounds of the size of reads from the process, see {@link SpscBufferQueue}. */
+    private static final int MIN_READ_SIZE = 1024;
+    private static final int INITIAL_READ_SIZE = 4096;
+    private static final int MAX_READ_SIZE = 64 * 1024;
+    /** The most bytes from the process passed to the emulator at a time, between checks of the input budget. */
+    private static final int MAX_APPEND_SIZE = 4096;
+
     public final String mHandle = UUID.randomUUID().toString();
 
     TerminalEmulator mEmulator;
 
     /**
-     * A queue written to from a separate thread when the process outputs, and read by main thread to process by
-     * terminal emulator.
+     * Buffers read into from a separate thread when the process outputs, and parsed in place by the main thread (or the
+     * {@link #mEmulatorThread} if set).
      */
-    final ByteQueue mProcessToTerminalIOQueue = new ByteQueue(4096);
+    final SpscBufferQueue mProcessToTerminalIOQueue = new SpscBufferQueue(4, MIN_READ_SIZE, INITIAL_READ_SIZE, MAX_READ_SIZE);
+    /** Where input is copied to for buffers without an accessible array, which Android direct buffers have. */
+    private byte[] mReceiveBuffer;
     /**
      * A queue written to from the main thread due to user interaction, and read by another thread which forwards by
-     * writing to the {@link #mTerminalFileDescriptor}.
+     * writing to the {@link #mTerminalFileDescriptor}. The {@link #mEmulatorThread} also writes answers to escape
+     * sequences here, so this needs to be a {@link ByteQueue} allowing several producers.
      */
     final ByteQueue mTerminalToProcessIOQueue = new ByteQueue(4096);
     /** Buffer to write translate code points into utf8 before writing to mTerminalToProcessIOQueue */
@@ -77,6 +105,35 @@ public final class TerminalSession extends TerminalOutput {
 
     final Handler mMainThreadHandler = new MainThreadHandler();
 
+    /** If terminal emulation should be done on {@link #mEmulatorThread} instead of the main thread. */
+    private boolean mParseOnWorkerThread;
+
+    /** The thread doing terminal emulation if {@link #mParseOnWorkerThread}, otherwise null. */
+    private HandlerThread mEmulatorThread;
+
+    /** The directory to keep a {@link TranscriptArchive} of the session in, or null for no archive. */
+    private File mTranscriptArchiveDirectory;
+    private TranscriptArchive mTranscriptArchive;
+    /** Where rows of the transcript are shared with other sessions, or null to not share them. */
+    private TranscriptRowInterner mTranscriptRowInterner;
+    /** Where the state of the emulator is checkpointed and restored from, or null for none. */
+    private TerminalSnapshot mSnapshot;
+
+    /** The handler processing input from the process, running either on the main thread or {@link #mEmulatorThread}. */
+    private Handler mInputHandler;
+
+    /** If a {@link #MSG_NEW_INPUT} is pending, in which case the reader thread need not send another one. */
+    private final AtomicBoolean mNewInputPending = new AtomicBoolean();
+    private int mInputBudgetBytes = DEFAULT_INPUT_BUDGET_BYTES;
+    private long mInputBudgetNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INPUT_BUDGET_MILLIS);
+    private int mInputBatchDelayMillis = DEFAULT_INPUT_BATCH_DELAY_MILLIS;
+
+    private final InputStatistics mInputStatistics = new InputStatistics();
+    /** When input was written to the process without output from it having been emulated since, or 0. */
+    private final AtomicLong mInputWrittenNanos = new AtomicLong();
+    /** The thread in {@link #appendPendingInput(boolean)}, so that answers written by the emulator are not timed as input. */
+    private volatile Thread mAppendingThread;
+
     private final String mExecutablePath;
     private final String mCwd;
     private final String[] mArgs;
@@ -95,13 +152,130 @@ public final class TerminalSession extends TerminalOutput {
         this.mClient = client;
     }
 
+    /**
+     * Set whether terminal emulation should be done on a worker thread of this session instead of on the main thread, so
+     * that heavy output does not block input handling and rendering. Must be called before emulation starts.
+     * <p>
+     * When parsing on a worker thread the emulator is only modified while holding its monitor, so the screen should be
+     * read inside a block synchronized on {@link #getEmulator()} to get a consistent snapshot. Callbacks to the
+     * {@link TerminalSessionClient} are still made on the main thread.
+     */
+    public void setParseOnWorkerThread(boolean parseOnWorkerThread) {
+        if (mEmulator != null) throw new IllegalStateException("Terminal emulation has already started");
+        mParseOnWorkerThread = parseOnWorkerThread;
+    }
+
+    /**
+     * Set a directory in app-private storage to keep the scroll history of this session in beyond its transcript rows,
+     * in a {@link TranscriptArchive} file named after {@link #mHandle}. Must be called before emulation starts, and
+     * {@link #closeTranscriptArchive()} called to delete the file once the session is no longer used.
+     */
+    public void setTranscriptArchiveDirectory(File directory) {
+        if (mEmulator != null) throw new IllegalStateException("Terminal emulation has already started");
+        mTranscriptArchiveDirectory = directory;
+    }
+
+    /**
+     * Share rows of the transcript which are identical to those of other sessions using the same interner, to keep them
+     * once. Must be called before emulation starts.
+     */
+    public void setTranscriptRowInterner(TranscriptRowInterner interner) {
+        if (mEmulator != null) throw new IllegalStateException("Terminal emulation has already started");
+        mTranscriptRowInterner = interner;
+    }
+
+    /**
+     * Set a file in app-private storage to checkpoint the emulator state of this session to with
+     * {@link #checkpointSnapshot()}. If the file holds a checkpoint when emulation starts, such as from a session of a
+     * process which has been killed, the screen and transcript are restored from it before the new process starts. Must
+     * be called before emulation starts, and {@link #deleteSnapshot()} called once the session is no longer used.
+     */
+    public void setSnapshotFile(File file) {
+        if (mEmulator != null) throw new IllegalStateException("Terminal emulation has already started");
+        mSnapshot = new TerminalSnapshot(file);
+    }
+
+    /**
+     * Checkpoint the emulator state to the file set by {@link #setSnapshotFile(File)}, if any. The emulator is only locked
+     * while its state is recorded, but compressing and writing it takes a while, so this should be called off the main
+     * thread.
+     */
+    public void checkpointSnapshot() {
+        final TerminalEmulator emulator = mEmulator;
+        if (mSnapshot == null || emulator == null) return;
+        synchronized (mSnapshot) {
+            try {
+                synchronized (emulator) {
+                    mSnapshot.record(emulator);
+                }
+                mSnapshot.write();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to checkpoint session", e);
+            }
+        }
+    }
+
+    /** Delete the file set by {@link #setSnapshotFile(File)}, if any, so that the session is not restored. */
+    public void deleteSnapshot() {
+        if (mSnapshot == null) return;
+        synchronized (mSnapshot) {
+            mSnapshot.delete();
+        }
+    }
+
+    /** Close the {@link TranscriptArchive} of this session if it has one, deleting its file. */
+    public void closeTranscriptArchive() {
+        if (mTranscriptArchive == null) return;
+        synchronized (mEmulator) {
+            mEmulator.setTranscriptArchive(null);
+        }
+        if (mTranscriptArchive.getError() != null)
+            Log.w(LOG_TAG, "Scroll history was not fully archived", mTranscriptArchive.getError());
+        mTranscriptArchive.close();
+        mTranscriptArchive = null;
+    }
+
+    /**
+     * Set how much output from the process is fed to the emulator per {@link #MSG_NEW_INPUT} message, after which the
+     * rest is left for a new message so that input events and drawing are not delayed by a flood of output.
+     *
+     * @param maxBytes  the maximum number of bytes to emulate per message
+     * @param maxMillis the maximum time in milliseconds to spend emulating per message
+     */
+    public void setInputBudget(int maxBytes, int maxMillis) {
+        if (maxBytes <= 0 || maxMillis <= 0)
+            throw new IllegalArgumentException("Invalid input budget: maxBytes=" + maxBytes + ", maxMillis=" + maxMillis);
+        mInputBudgetBytes = maxBytes;
+        mInputBudgetNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+    }
+
+    /**
+     * Set how long to wait for more output from the process before emulating it while the process outputs faster than it
+     * is read, so that sustained output is emulated in fewer and larger batches. Output arriving at a slower pace, such as
+     * the echo of typed input, is emulated without waiting. Must be called before emulation starts.
+     *
+     * @param maxMillis the maximum time in milliseconds to wait, or 0 to never wait
+     */
+    public void setInputBatchDelay(int maxMillis) {
+        if (mEmulator != null) throw new IllegalStateException("Terminal emulation has already started");
+        if (maxMillis < 0) throw new IllegalArgumentException("Invalid input batch delay: maxMillis=" + maxMillis);
+        mInputBatchDelayMillis = maxMillis;
+    }
+
+    /** Statistics of the batches output from the process is emulated in, and of the latency of echoing input. */
+    public InputStatistics getInputStatistics() {
+        return mInputStatistics;
+    }
+
     /** Inform the attached pty of the new size and reflow or initialize the emulator. */
     public void updateSize(int columns, int rows, int cellWidthPixels, int cellHeightPixels) {
         if (mEmulator == null) {
             initializeEmulator(columns, rows, cellWidthPixels, cellHeightPixels);
         } else {
             JNI.setPtyWindowSize(mTerminalFileDescriptor, rows, columns, cellWidthPixels, cellHeightPixels);
-            mEmulator.resize(columns, rows, cellWidthPixels, cellHeightPixels);
+            synchronized (mEmulator) {
+                mEmulator.resize(columns, rows, cellWidthPixels, cellHeightPixels);
+            }
         }
     }
 
@@ -117,25 +291,70 @@ public final class TerminalSession extends TerminalOutput {
      * @param rows    The number of rows in the terminal window.
      */
     public void initializeEmulator(int columns, int rows, int cellWidthPixels, int cellHeightPixels) {
-        mEmulator = new TerminalEmulator(this, columns, rows, cellWidthPixels, cellHeightPixels, mTranscriptRows, mClient);
+        mEmulator = new TerminalEmulator(this, columns, rows, cellWidthPixels, cellHeightPixels, mTranscriptRows);
+        if (mTranscriptRowInterner != null) mEmulator.setTranscriptRowInterner(mTranscriptRowInterner);
+        if (mTranscriptArchiveDirectory != null) {
+            try {
+                mTranscriptArchive = new TranscriptArchive(new File(mTranscriptArchiveDirectory, mHandle));
+                mEmulator.setTranscriptArchive(mTranscriptArchive);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to create transcript archive", e);
+            }
+        }
+        if (mSnapshot != null) {
+            try {
+                // Restored at the size it was checkpointed with, so reflow to the current size:
+                if (mSnapshot.restore(mEmulator)) mEmulator.resize(columns, rows, cellWidthPixels, cellHeightPixels);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to restore session", e);
+            }
+        }
 
         int[] processId = new int[1];
         mTerminalFileDescriptor = JNI.createSubprocess(mExecutablePath, mCwd, mArgs, mEnv, processId, rows, columns, cellWidthPixels, cellHeightPixels);
         mProcessSpawnedTimeMillis = System.currentTimeMillis();
         mShellPid = processId[0];
 
+        if (mParseOnWorkerThread) {
+            mEmulatorThread = new HandlerThread("TermSessionEmulator[pid=" + mShellPid + "]");
+            mEmulatorThread.start();
+            mInputHandler = new EmulatorThreadHandler(mEmulatorThread.getLooper());
+        } else {
+            mInputHandler = mMainThreadHandler;
+        }
+
         var terminalFileDescriptorWrapped = wrapFileDescriptor(mTerminalFileDescriptor);
 
         new Thread("TermSessionInputReader[pid=" + mShellPid + "]") {
             @Override
             public void run() {
-                try (InputStream termIn = new FileInputStream(terminalFileDescriptorWrapped)) {
-                    final byte[] buffer = new byte[4096];
+                try (FileChannel termIn = new FileInputStream(terminalFileDescriptorWrapped).getChannel()) {
+                    boolean signalDelayed = false;
                     while (true) {
-                        int read = termIn.read(buffer);
-                        if (read == -1) return;
-                        if (!mProcessToTerminalIOQueue.write(buffer, 0, read)) return;
-                        mMainThreadHandler.sendEmptyMessage(MSG_NEW_INPUT);
+                        ByteBuffer buffer = mProcessToTerminalIOQueue.obtain();
+                        if (buffer == null || termIn.read(buffer) == -1) return;
+                        // A read filling the buffer means that the process outputs faster than it is read:
+                        final boolean sustainedOutput = !buffer.hasRemaining();
+                        if (!mProcessToTerminalIOQueue.publish()) return;
+
+                        if (sustainedOutput && mInputBatchDelayMillis > 0 && !mProcessToTerminalIOQueue.isFull()) {
+                            // Wait a little for more output, to emulate it in a larger batch:
+                            if (mNewInputPending.compareAndSet(false, true)) {
+                                mInputHandler.sendEmptyMessageDelayed(MSG_NEW_INPUT, mInputBatchDelayMillis);
+                                signalDelayed = true;
+                            }
+                        } else if (signalDelayed && mNewInputPending.get()) {
+                            // The output paused or filled the queue, so emulate it without waiting out the delay, by
+                            // replacing the delayed message instead of sending another one next to it. The flag is set
+                            // again in case the delayed message was handled just before being removed:
+                            mInputHandler.removeMessages(MSG_NEW_INPUT);
+                            mNewInputPending.set(true);
+                            mInputHandler.sendEmptyMessage(MSG_NEW_INPUT);
+                            signalDelayed = false;
+                        } else {
+                            signalNewInput();
+                            signalDelayed = false;
+                        }
                     }
                 } catch (Exception e) {
                     // Ignore, just shutting down.
@@ -163,7 +382,7 @@ public final class TerminalSession extends TerminalOutput {
             @Override
             public void run() {
                 int processExitCode = JNI.waitFor(mShellPid);
-                mMainThreadHandler.sendMessage(mMainThreadHandler.obtainMessage(MSG_PROCESS_EXITED, processExitCode));
+                mInputHandler.sendMessage(mInputHandler.obtainMessage(MSG_PROCESS_EXITED, processExitCode));
             }
         }.start();
 
@@ -172,7 +391,10 @@ public final class TerminalSession extends TerminalOutput {
     /** Write data to the shell process. */
     @Override
     public void write(byte[] data, int offset, int count) {
-        if (mShellPid > 0) mTerminalToProcessIOQueue.write(data, offset, count);
+        if (mShellPid > 0) {
+            if (Thread.currentThread() != mAppendingThread) mInputWrittenNanos.compareAndSet(0, System.nanoTime());
+            mTerminalToProcessIOQueue.write(data, offset, count);
+        }
     }
 
     /** Write the Unicode code point to the terminal encoded in UTF-8. */
@@ -223,10 +445,82 @@ public final class TerminalSession extends TerminalOutput {
 
     /** Reset state for terminal emulator state. */
     public void reset() {
-        mEmulator.reset();
+        synchronized (mEmulator) {
+            mEmulator.reset();
+        }
         notifyScreenUpdate();
     }
 
+    /** Send a {@link #MSG_NEW_INPUT} to the {@link #mInputHandler} unless one is already pending. */
+    private void signalNewInput() {
+        if (mNewInputPending.compareAndSet(false, true)) mInputHandler.sendEmptyMessage(MSG_NEW_INPUT);
+    }
+
+    /**
+     * Feed input from the process waiting in {@link #mProcessToTerminalIOQueue} to the emulator, returning whether there
+     * was any. If useBudget is set, stop after the input budget has been used and leave the rest to a new message.
+     */
+    private boolean appendPendingInput(boolean useBudget) {
+        // Clear the flag before reading, so that output arriving after the last read signals a new message.
+        mNewInputPending.set(false);
+        final long startTime = System.nanoTime();
+        int totalBytesRead = 0;
+        ByteBuffer buffer;
+        mAppendingThread = Thread.currentThread();
+        while ((buffer = mProcessToTerminalIOQueue.peek()) != null) {
+            final int bytesRead = Math.min(buffer.remaining(), MAX_APPEND_SIZE);
+            synchronized (mEmulator) {
+                if (buffer.hasArray()) {
+                    mEmulator.append(buffer.array(), buffer.arrayOffset() + buffer.position(), bytesRead);
+                    buffer.position(buffer.position() + bytesRead);
+                } else {
+                    if (mReceiveBuffer == null) mReceiveBuffer = new byte[MAX_APPEND_SIZE];
+                    buffer.get(mReceiveBuffer, 0, bytesRead);
+                    mEmulator.append(mReceiveBuffer, bytesRead);
+                }
+            }
+            if (!buffer.hasRemaining()) mProcessToTerminalIOQueue.release();
+            totalBytesRead += bytesRead;
+            if (useBudget && (totalBytesRead >= mInputBudgetBytes || System.nanoTime() - startTime >= mInputBudgetNanos)) {
+                signalNewInput();
+                break;
+            }
+        }
+        mAppendingThread = null;
+
+        if (totalBytesRead == 0) return false;
+        mInputStatistics.recordBatch(totalBytesRead);
+        final long inputWrittenNanos = mInputWrittenNanos.getAndSet(0);
+        if (inputWrittenNanos != 0) mInputStatistics.recordEcho(System.nanoTime() - inputWrittenNanos);
+        return true;
+    }
+
+    private void appendExitDescription(int exitCode) {
+        String exitDescription = "\r\n[Process completed";
+        if (exitCode > 0) {
+            // Non-zero process exit.
+            exitDescription += " (code " + exitCode + ")";
+        } else if (exitCode < 0) {
+            // Negated signal.
+            exitDescription += " (signal " + (-exitCode) + ")";
+        }
+        exitDescription += " - press Enter]";
+
+        byte[] bytesToWrite = exitDescription.getBytes(StandardCharsets.UTF_8);
+        synchronized (mEmulator) {
+            mEmulator.append(bytesToWrite, bytesToWrite.length);
+        }
+    }
+
+    /** Run a client callback, which is posted to the main thread if triggered on {@link #mEmulatorThread}. */
+    private void runOnMainThread(Runnable runnable) {
+        if (mEmulatorThread == null) {
+            runnable.run();
+        } else {
+            mMainThreadHandler.post(runnable);
+        }
+    }
+
     /** Finish this terminal session by sending SIGKILL to the shell. */
     public void finishIfRunning() {
         if (isRunning()) {
@@ -246,15 +540,16 @@ public final class TerminalSession extends TerminalOutput {
             mShellExitStatus = exitStatus;
         }
 
-        // Stop the reader and writer threads, and close the I/O streams
+        // Stop the reader, writer and emulator threads, and close the I/O streams
         mTerminalToProcessIOQueue.close();
         mProcessToTerminalIOQueue.close();
+        if (mEmulatorThread != null) mEmulatorThread.quitSafely();
         JNI.close(mTerminalFileDescriptor);
     }
 
     @Override
     public void titleChanged(String oldTitle, String newTitle) {
-        mClient.onTitleChanged(this);
+        runOnMainThread(() -> mClient.onTitleChanged(this));
     }
 
     public synchronized boolean isRunning() {
@@ -268,22 +563,27 @@ public final class TerminalSession extends TerminalOutput {
 
     @Override
     public void onCopyTextToClipboard(String text) {
-        mClient.onCopyTextToClipboard(this, text);
+        runOnMainThread(() -> mClient.onCopyTextToClipboard(this, text));
     }
 
     @Override
     public void onPasteTextFromClipboard() {
-        mClient.onPasteTextFromClipboard(this);
+        runOnMainThread(() -> mClient.onPasteTextFromClipboard(this));
     }
 
     @Override
     public void onBell() {
-        mClient.onBell(this);
+        runOnMainThread(() -> mClient.onBell(this));
     }
 
     @Override
     public void onColorsChanged() {
-        mClient.onColorsChanged(this);
+        runOnMainThread(() -> mClient.onColorsChanged(this));
+    }
+
+    @Override
+    public void onTerminalCursorStateChange(boolean state) {
+        runOnMainThread(() -> mClient.onTerminalCursorStateChange(state));
     }
 
     public int getPid() {
@@ -332,17 +632,18 @@ public final class TerminalSession extends TerminalOutput {
     @SuppressLint("HandlerLeak")
     class MainThreadHandler extends Handler {
 
-        final byte[] mReceiveBuffer = new byte[4 * 1024];
-
         public MainThreadHandler() {
             super(Looper.getMainLooper());
         }
 
         @Override
         public void handleMessage(@NonNull Message msg) {
-            int bytesRead = mProcessToTerminalIOQueue.read(mReceiveBuffer, false);
-            if (bytesRead > 0) {
-                mEmulator.append(mReceiveBuffer, bytesRead);
+            if (msg.what == MSG_SCREEN_UPDATED) {
+                notifyScreenUpdate();
+                return;
+            }
+
+            if (mEmulatorThread == null && appendPendingInput(msg.what == MSG_NEW_INPUT)) {
                 notifyScreenUpdate();
             }
 
@@ -350,18 +651,8 @@ public final class TerminalSession extends TerminalOutput {
                 int exitCode = (Integer) msg.obj;
                 cleanupResources(exitCode);
 
-                String exitDescription = "\r\n[Process completed";
-                if (exitCode > 0) {
-                    // Non-zero process exit.
-                    exitDescription += " (code " + exitCode + ")";
-                } else if (exitCode < 0) {
-                    // Negated signal.
-                    exitDescription += " (signal " + (-exitCode) + ")";
-                }
-                exitDescription += " - press Enter]";
-
-                byte[] bytesToWrite = exitDescription.getBytes(StandardCharsets.UTF_8);
-                mEmulator.append(bytesToWrite, bytesToWrite.length);
+                // When parsing on a worker thread the exit description has already been appended there.
+                if (mEmulatorThread == null) appendExitDescription(exitCode);
                 notifyScreenUpdate();
 
                 mClient.onSessionFinished(TerminalSession.this);
@@ -370,4 +661,28 @@ public final class TerminalSession extends TerminalOutput {
 
     }
 
+    /** Handler doing terminal emulation on {@link #mEmulatorThread}, marshalling only screen updates to the main thread. */
+    @SuppressLint("HandlerLeak")
+    class EmulatorThreadHandler extends Handler {
+
+        public EmulatorThreadHandler(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        public void handleMessage(@NonNull Message msg) {
+            boolean screenChanged = appendPendingInput(msg.what == MSG_NEW_INPUT);
+
+            if (msg.what == MSG_PROCESS_EXITED) {
+                appendExitDescription((Integer) msg.obj);
+                // Let the main thread clean up and finish the session:
+                mMainThreadHandler.sendMessage(mMainThreadHandler.obtainMessage(MSG_PROCESS_EXITED, msg.obj));
+            } else if (screenChanged && !mMainThreadHandler.hasMessages(MSG_SCREEN_UPDATED)) {
+                // The main thread reads the screen as it is when handling the update, so one pending is enough.
+                mMainThreadHandler.sendEmptyMessage(MSG_SCREEN_UPDATED);
+            }
+        }
+
+    }
+
 }
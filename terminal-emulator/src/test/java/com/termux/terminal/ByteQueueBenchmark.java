@@ -0,0 +1,106 @@
+package com.termux.terminal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Throughput comparison of {@link ByteQueue}, {@link SpscByteQueue} and {@link SpscBufferQueue}, transferring data in
+ * 4 KB chunks from a producer thread like the pty reader to a consumer thread like the one doing terminal emulation.
+ * <p>
+ * Run with a plain JVM, as it is not part of the unit tests:
+ * <pre>
+ * java -cp &lt;classes&gt; com.termux.terminal.ByteQueueBenchmark [megabytes]
+ * </pre>
+ */
+public final class ByteQueueBenchmark {
+
+	interface Queue {
+		boolean write(byte[] buffer, int offset, int length);
+
+		int read(byte[] buffer, boolean block);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		final int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		for (int round = 0; round < 5; round++) {
+			// The first rounds are warmup for the JIT.
+			ByteQueue byteQueue = new ByteQueue(4096);
+			SpscByteQueue spscQueue = new SpscByteQueue(4096);
+			double synchronizedMbPerSecond = transfer(megabytes, new Queue() {
+				@Override
+				public boolean write(byte[] buffer, int offset, int length) {
+					return byteQueue.write(buffer, offset, length);
+				}
+
+				@Override
+				public int read(byte[] buffer, boolean block) {
+					return byteQueue.read(buffer, block);
+				}
+			});
+			double lockFreeMbPerSecond = transfer(megabytes, new Queue() {
+				@Override
+				public boolean write(byte[] buffer, int offset, int length) {
+					return spscQueue.write(buffer, offset, length);
+				}
+
+				@Override
+				public int read(byte[] buffer, boolean block) {
+					return spscQueue.read(buffer, block);
+				}
+			});
+			double buffersMbPerSecond = transferBuffers(megabytes);
+			System.out.printf("round %d: ByteQueue %.0f MB/s, SpscByteQueue %.0f MB/s, SpscBufferQueue %.0f MB/s%n", round,
+				synchronizedMbPerSecond, lockFreeMbPerSecond, buffersMbPerSecond);
+		}
+	}
+
+	private static double transfer(int megabytes, Queue queue) throws InterruptedException {
+		final long totalBytes = megabytes * 1024L * 1024L;
+		Thread producer = new Thread(() -> {
+			byte[] chunk = new byte[4096];
+			for (long written = 0; written < totalBytes; written += chunk.length)
+				queue.write(chunk, 0, chunk.length);
+		});
+
+		long startTime = System.nanoTime();
+		producer.start();
+		byte[] receiveBuffer = new byte[4096];
+		long readBytes = 0;
+		while (readBytes < totalBytes) readBytes += queue.read(receiveBuffer, true);
+		long elapsedNanos = System.nanoTime() - startTime;
+		producer.join();
+
+		return megabytes / (elapsedNanos / 1e9);
+	}
+
+	/** Like {@link #transfer(int, Queue)}, but with the producer filling buffers of the queue which the consumer reads. */
+	private static double transferBuffers(int megabytes) throws InterruptedException {
+		final long totalBytes = megabytes * 1024L * 1024L;
+		final SpscBufferQueue queue = new SpscBufferQueue(4, 4096, 4096, 4096);
+		Thread producer = new Thread(() -> {
+			byte[] chunk = new byte[4096];
+			for (long written = 0; written < totalBytes; written += chunk.length) {
+				queue.obtain().put(chunk);
+				queue.publish();
+			}
+		});
+
+		long startTime = System.nanoTime();
+		producer.start();
+		byte[] receiveBuffer = new byte[4096];
+		long readBytes = 0;
+		while (readBytes < totalBytes) {
+			queue.await();
+			ByteBuffer buffer = queue.peek();
+			int count = buffer.remaining();
+			// Direct buffers have no accessible array outside Android, where the emulator would parse them in place:
+			buffer.get(receiveBuffer, 0, count);
+			queue.release();
+			readBytes += count;
+		}
+		long elapsedNanos = System.nanoTime() - startTime;
+		producer.join();
+
+		return megabytes / (elapsedNanos / 1e9);
+	}
+
+}
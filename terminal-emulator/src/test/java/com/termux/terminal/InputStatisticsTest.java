@@ -0,0 +1,33 @@
+package com.termux.terminal;
+
+import junit.framework.TestCase;
+
+public class InputStatisticsTest extends TestCase {
+
+	public void testBatches() {
+		InputStatistics statistics = new InputStatistics();
+		assertEquals(0.0, statistics.getAverageBytesPerBatch());
+		statistics.recordBatch(100);
+		statistics.recordBatch(4000);
+		statistics.recordBatch(200);
+		assertEquals(3, statistics.getBatchCount());
+		assertEquals(1433.33, statistics.getAverageBytesPerBatch(), 0.01);
+		assertEquals(4000, statistics.getMaxBytesPerBatch());
+	}
+
+	public void testEchoes() {
+		InputStatistics statistics = new InputStatistics();
+		assertEquals(0.0, statistics.getAverageEchoLatencyMillis());
+		statistics.recordEcho(2_000_000);
+		statistics.recordEcho(5_000_000);
+		assertEquals(2, statistics.getEchoCount());
+		assertEquals(3.5, statistics.getAverageEchoLatencyMillis(), 1e-9);
+		assertEquals(5.0, statistics.getMaxEchoLatencyMillis(), 1e-9);
+
+		statistics.reset();
+		assertEquals(0, statistics.getEchoCount());
+		assertEquals(0.0, statistics.getMaxEchoLatencyMillis());
+		assertEquals("0 batches of 0 bytes average, 0 max; 0 echoes in 0.0 ms average, 0.0 ms max", statistics.toString());
+	}
+
+}
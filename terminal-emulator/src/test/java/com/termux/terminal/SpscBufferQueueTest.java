@@ -0,0 +1,123 @@
+package com.termux.terminal;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+
+public class SpscBufferQueueTest extends TestCase {
+
+	private static void fill(SpscBufferQueue q, byte... bytes) {
+		ByteBuffer buffer = q.obtain();
+		buffer.put(bytes);
+		assertTrue(q.publish());
+	}
+
+	public void testBuffersPassedInOrder() {
+		SpscBufferQueue q = new SpscBufferQueue(2, 4, 8, 32);
+		assertNull(q.peek());
+		fill(q, (byte) 1, (byte) 2, (byte) 3);
+		fill(q, (byte) 4);
+
+		ByteBuffer buffer = q.peek();
+		assertEquals(3, buffer.remaining());
+		assertEquals(1, buffer.get());
+		// A buffer partly consumed is returned again:
+		assertSame(buffer, q.peek());
+		assertEquals(2, buffer.get());
+		assertEquals(3, buffer.get());
+		q.release();
+		assertEquals(4, q.peek().get());
+		q.release();
+		assertNull(q.peek());
+	}
+
+	public void testBuffersReused() {
+		SpscBufferQueue q = new SpscBufferQueue(2, 4, 8, 32);
+		ByteBuffer first = q.obtain();
+		q.publish();
+		assertFalse(q.isFull());
+		ByteBuffer second = q.obtain();
+		q.publish();
+		assertTrue(q.isFull());
+		q.peek();
+		q.release();
+		assertSame(first, q.obtain());
+		q.publish();
+		q.peek();
+		q.release();
+		assertSame(second, q.obtain());
+	}
+
+	public void testReadSizeAdapts() {
+		SpscBufferQueue q = new SpscBufferQueue(1, 4, 8, 32);
+		assertEquals(8, q.obtain().remaining());
+		fill(q, new byte[8]);
+		q.release();
+		assertEquals(16, q.getReadSize());
+		fill(q, new byte[16]);
+		q.release();
+		fill(q, new byte[32]);
+		q.release();
+		assertEquals(32, q.getReadSize());
+		assertEquals(32, q.obtain().remaining());
+		q.publish();
+		q.release();
+
+		// Small reads shrink it back, but not below the minimum:
+		for (int i = 0; i < 5; i++) {
+			fill(q, (byte) 1);
+			q.release();
+		}
+		assertEquals(4, q.getReadSize());
+		assertEquals(4, q.obtain().remaining());
+	}
+
+	public void testClose() {
+		SpscBufferQueue q = new SpscBufferQueue(2, 4, 8, 32);
+		fill(q, (byte) 1);
+		q.close();
+		assertNull(q.peek());
+		assertNull(q.obtain());
+	}
+
+	public void testObtainWokenByClose() throws InterruptedException {
+		final SpscBufferQueue q = new SpscBufferQueue(1, 4, 8, 32);
+		fill(q, (byte) 1);
+		final ByteBuffer[] result = {ByteBuffer.allocate(1)};
+		Thread writer = new Thread(() -> result[0] = q.obtain());
+		writer.start();
+		Thread.sleep(50);
+		q.close();
+		writer.join(5000);
+		assertFalse(writer.isAlive());
+		assertNull(result[0]);
+	}
+
+	public void testProducerAndConsumerThreads() throws InterruptedException {
+		final SpscBufferQueue q = new SpscBufferQueue(3, 1, 7, 64);
+		final int totalBytes = 100_000;
+		Thread writer = new Thread(() -> {
+			int written = 0;
+			while (written < totalBytes) {
+				ByteBuffer buffer = q.obtain();
+				// Vary the amount read, like reads from a pty would:
+				int count = Math.min(written % 3 == 0 ? buffer.remaining() : 1 + written % buffer.remaining(), totalBytes - written);
+				for (int i = 0; i < count; i++) buffer.put((byte) (written + i));
+				written += count;
+				assertTrue(q.publish());
+			}
+		});
+		writer.start();
+
+		int readBytes = 0;
+		while (readBytes < totalBytes) {
+			q.await();
+			ByteBuffer buffer = q.peek();
+			while (buffer.hasRemaining()) assertEquals((byte) readBytes++, buffer.get());
+			q.release();
+		}
+		writer.join(5000);
+		assertNull(q.peek());
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.termux.terminal;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A circular byte buffer allowing exactly one producer and one consumer thread, without taking a lock.
+ * <p>
+ * Has the same contract as {@link ByteQueue}: reads may block until data is available or return 0 directly, writes
+ * block while the queue is full, and once closed reads return -1 and writes return false. The two sides only
+ * communicate through the volatile read and write positions, and a side which has to wait parks itself until the
+ * other side has made progress.
+ * <p>
+ * Not used by the app, which hands whole buffers over through {@link SpscBufferQueue}. Kept for comparison in
+ * {@link ByteQueueBenchmark}.
+ */
+final class SpscByteQueue {
+
+    private final byte[] mBuffer;
+
+    /** The total number of bytes read, only written by the consumer. */
+    private volatile long mReadPosition;
+    /** The total number of bytes written, only written by the producer. */
+    private volatile long mWritePosition;
+    private volatile boolean mOpen = true;
+
+    /** The consumer thread if parked waiting for data, otherwise null. */
+    private volatile Thread mWaitingReader;
+    /** The producer thread if parked waiting for free space, otherwise null. */
+    private volatile Thread mWaitingWriter;
+
+    public SpscByteQueue(int size) {
+        mBuffer = new byte[size];
+    }
+
+    public void close() {
+        mOpen = false;
+        LockSupport.unpark(mWaitingReader);
+        LockSupport.unpark(mWaitingWriter);
+    }
+
+    public int read(byte[] buffer, boolean block) {
+        final long readPosition = mReadPosition;
+        int storedBytes;
+        while ((storedBytes = (int) (mWritePosition - readPosition)) == 0 && mOpen) {
+            if (!block) return 0;
+            mWaitingReader = Thread.currentThread();
+            // Check again after announcing that we are waiting, as the producer may have written in between:
+            if (mWritePosition == readPosition && mOpen) LockSupport.park(this);
+            mWaitingReader = null;
+        }
+        if (!mOpen) return -1;
+
+        final int bufferLength = mBuffer.length;
+        final int head = (int) (readPosition % bufferLength);
+        final int totalRead = Math.min(buffer.length, storedBytes);
+        final int firstRun = Math.min(bufferLength - head, totalRead);
+        System.arraycopy(mBuffer, head, buffer, 0, firstRun);
+        System.arraycopy(mBuffer, 0, buffer, firstRun, totalRead - firstRun);
+
+        mReadPosition = readPosition + totalRead;
+        LockSupport.unpark(mWaitingWriter);
+        return totalRead;
+    }
+
+    /**
+     * Attempt to write the specified portion of the provided buffer to the queue.
+     * <p/>
+     * Returns whether the output was totally written, false if it was closed before.
+     */
+    public boolean write(byte[] buffer, int offset, int lengthToWrite) {
+        if (lengthToWrite + offset > buffer.length) {
+            throw new IllegalArgumentException("length + offset > buffer.length");
+        } else if (lengthToWrite <= 0) {
+            throw new IllegalArgumentException("length <= 0");
+        }
+
+        final int bufferLength = mBuffer.length;
+        long writePosition = mWritePosition;
+        while (lengthToWrite > 0) {
+            int freeBytes;
+            while ((freeBytes = bufferLength - (int) (writePosition - mReadPosition)) == 0 && mOpen) {
+                mWaitingWriter = Thread.currentThread();
+                // Check again after announcing that we are waiting, as the consumer may have read in between:
+                if (writePosition - mReadPosition == bufferLength && mOpen) LockSupport.park(this);
+                mWaitingWriter = null;
+            }
+            if (!mOpen) return false;
+
+            final int tail = (int) (writePosition % bufferLength);
+            final int bytesToCopy = Math.min(lengthToWrite, freeBytes);
+            final int firstRun = Math.min(bufferLength - tail, bytesToCopy);
+            System.arraycopy(buffer, offset, mBuffer, tail, firstRun);
+            System.arraycopy(buffer, offset + firstRun, mBuffer, 0, bytesToCopy - firstRun);
+            offset += bytesToCopy;
+            lengthToWrite -= bytesToCopy;
+
+            writePosition += bytesToCopy;
+            mWritePosition = writePosition;
+            LockSupport.unpark(mWaitingReader);
+        }
+        return true;
+    }
+}
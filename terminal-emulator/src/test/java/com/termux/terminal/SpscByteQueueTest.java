@@ -0,0 +1,85 @@
+package com.termux.terminal;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class SpscByteQueueTest extends TestCase {
+
+	public void testCompleteWrites() {
+		SpscByteQueue q = new SpscByteQueue(10);
+		assertTrue(q.write(new byte[]{1, 2, 3}, 0, 3));
+
+		byte[] arr = new byte[10];
+		assertEquals(3, q.read(arr, true));
+		assertTrue(Arrays.equals(new byte[]{1, 2, 3}, Arrays.copyOf(arr, 3)));
+
+		assertTrue(q.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, 0, 10));
+		assertEquals(10, q.read(arr, true));
+		assertTrue(Arrays.equals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, arr));
+	}
+
+	public void testQueueWraparound() {
+		SpscByteQueue q = new SpscByteQueue(10);
+
+		byte[] origArray = new byte[]{1, 2, 3, 4, 5, 6};
+		byte[] readArray = new byte[origArray.length];
+		for (int i = 0; i < 20; i++) {
+			q.write(origArray, 0, origArray.length);
+			assertEquals(origArray.length, q.read(readArray, true));
+			assertTrue(Arrays.equals(origArray, readArray));
+		}
+	}
+
+	public void testWriteNotesClosing() {
+		SpscByteQueue q = new SpscByteQueue(10);
+		q.close();
+		assertFalse(q.write(new byte[]{1, 2, 3}, 0, 3));
+		assertEquals(-1, q.read(new byte[10], true));
+	}
+
+	public void testReadNonBlocking() {
+		SpscByteQueue q = new SpscByteQueue(10);
+		assertEquals(0, q.read(new byte[128], false));
+	}
+
+	public void testBlockingReadWokenByClose() throws InterruptedException {
+		final SpscByteQueue q = new SpscByteQueue(10);
+		final int[] result = new int[1];
+		Thread reader = new Thread(() -> result[0] = q.read(new byte[10], true));
+		reader.start();
+		Thread.sleep(50);
+		q.close();
+		reader.join(5000);
+		assertFalse(reader.isAlive());
+		assertEquals(-1, result[0]);
+	}
+
+	public void testProducerAndConsumerThreads() throws InterruptedException {
+		final SpscByteQueue q = new SpscByteQueue(7);
+		final int totalBytes = 100_000;
+		Thread writer = new Thread(() -> {
+			byte[] chunk = new byte[13];
+			int written = 0;
+			while (written < totalBytes) {
+				int count = Math.min(chunk.length, totalBytes - written);
+				for (int i = 0; i < count; i++) chunk[i] = (byte) (written + i);
+				assertTrue(q.write(chunk, 0, count));
+				written += count;
+			}
+		});
+		writer.start();
+
+		byte[] buffer = new byte[5];
+		int readBytes = 0;
+		while (readBytes < totalBytes) {
+			int count = q.read(buffer, true);
+			assertTrue(count > 0);
+			for (int i = 0; i < count; i++) assertEquals((byte) (readBytes + i), buffer[i]);
+			readBytes += count;
+		}
+		writer.join(5000);
+		assertEquals(0, q.read(buffer, false));
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.termux.view;
+
+import com.termux.terminal.TerminalRow;
+
+import java.util.Arrays;
+
+/**
+ * What each of the retained row render nodes of {@link TerminalRenderer} was last recorded from, to tell whether a node
+ * can be drawn as is or needs to be recorded again.
+ */
+final class RowNodeKeys {
+
+    /** The image generation of rows recorded without image cells, which stay valid when images change. */
+    static final long NO_IMAGES = -1;
+
+    /** The row last recorded into each node, or null if it needs to be recorded again. */
+    private final TerminalRow[] mLines;
+    /** The {@link TerminalRow#getVersion()} of the row last recorded into each node. */
+    private final int[] mVersions;
+    private final int[] mCursorX, mSelX1, mSelX2;
+    private final int[][] mMatchedColumns;
+    /** The image generation each node was recorded at, or {@link #NO_IMAGES} if its row had no image cells. */
+    private final long[] mImageGenerations;
+
+    RowNodeKeys(int rows) {
+        mLines = new TerminalRow[rows];
+        mVersions = new int[rows];
+        mCursorX = new int[rows];
+        mSelX1 = new int[rows];
+        mSelX2 = new int[rows];
+        mMatchedColumns = new int[rows][];
+        mImageGenerations = new long[rows];
+    }
+
+    int size() {
+        return mLines.length;
+    }
+
+    /**
+     * Whether the node at an index needs to be recorded again to show a row with the cursor and selection columns and
+     * search matches specified. Nodes of rows with image cells also need to be recorded again when the image generation,
+     * which changes as images are added, evicted or have their bitmaps evicted, has changed since they were recorded.
+     */
+    boolean isStale(int index, TerminalRow row, int cursorX, int selx1, int selx2, int[] matchedColumns, long imageGeneration) {
+        final long recordedImageGeneration = mImageGenerations[index];
+        return row != mLines[index] || row.getVersion() != mVersions[index]
+            || cursorX != mCursorX[index] || selx1 != mSelX1[index] || selx2 != mSelX2[index]
+            || !Arrays.equals(matchedColumns, mMatchedColumns[index])
+            || (recordedImageGeneration != NO_IMAGES && recordedImageGeneration != imageGeneration);
+    }
+
+    /** Note that the node at an index has been recorded, where imageGeneration is {@link #NO_IMAGES} if no image was drawn. */
+    void setRecorded(int index, TerminalRow row, int cursorX, int selx1, int selx2, int[] matchedColumns, long imageGeneration) {
+        mLines[index] = row;
+        mVersions[index] = row.getVersion();
+        mCursorX[index] = cursorX;
+        mSelX1[index] = selx1;
+        mSelX2[index] = selx2;
+        mMatchedColumns[index] = matchedColumns;
+        mImageGenerations[index] = imageGeneration;
+    }
+
+    /** Make all nodes need to be recorded again. */
+    void invalidateAll() {
+        Arrays.fill(mLines, null);
+    }
+
+}
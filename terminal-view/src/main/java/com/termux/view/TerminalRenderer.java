@@ -1,16 +1,28 @@
 package com.termux.view;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
 import android.graphics.Typeface;
+import android.util.LruCache;
 
 import com.termux.terminal.TerminalBuffer;
 import com.termux.terminal.TerminalEmulator;
+import com.termux.terminal.TerminalImage;
 import com.termux.terminal.TerminalRow;
 import com.termux.terminal.TextStyle;
+import com.termux.terminal.TranscriptSearch;
 import com.termux.terminal.WcWidth;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Renderer of a {@link TerminalEmulator} into a {@link Canvas}.
  * <p/>
@@ -18,6 +30,11 @@ import com.termux.terminal.WcWidth;
  */
 public final class TerminalRenderer {
 
+    /** The maximum number of rows in {@link #mRowLayouts}, enough for scrolling a few screens back and forth. */
+    private static final int MAX_CACHED_ROW_LAYOUTS = 1024;
+    /** The maximum bytes of bitmaps in {@link #mImageBitmaps}, enough for the images on a few screens. */
+    private static final int MAX_CACHED_IMAGE_BYTES = 16 * 1024 * 1024;
+
     final int mTextSize;
     final Typeface mTypeface;
     private final Paint mTextPaint = new Paint();
@@ -33,6 +50,46 @@ public final class TerminalRenderer {
 
     private final float[] asciiMeasures = new float[127];
 
+    /**
+     * Layouts of recently rendered rows, so that rows which are unchanged since last rendered, for instance when
+     * scrolling through the transcript, need not be measured again.
+     */
+    private final Map<TerminalRow, RowLayout> mRowLayouts = new LinkedHashMap<TerminalRow, RowLayout>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TerminalRow, RowLayout> eldest) {
+            return size() > MAX_CACHED_ROW_LAYOUTS;
+        }
+    };
+
+    /** Bitmaps of recently rendered images, created from their pixels when first rendered. */
+    private final LruCache<TerminalImage, Bitmap> mImageBitmaps = new LruCache<TerminalImage, Bitmap>(MAX_CACHED_IMAGE_BYTES) {
+        @Override
+        protected int sizeOf(TerminalImage image, Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, TerminalImage image, Bitmap oldValue, Bitmap newValue) {
+            if (evicted) mImageBitmapEvictions++;
+        }
+    };
+    /** The number of bitmaps evicted from {@link #mImageBitmaps}, part of the image generation of recorded rows. */
+    private long mImageBitmapEvictions;
+    /** Whether {@link #drawImageRun} has drawn an image since last cleared, to tell rows with image cells. */
+    private boolean mDrewImage;
+    private final Paint mImagePaint = new Paint();
+    private final Rect mImageSource = new Rect();
+    private final RectF mImageDestination = new RectF();
+
+    /** Retained display lists of the rows on screen, recorded again only when the row, its cursor or selection or its images change. */
+    private RenderNode[] mRowNodes;
+    /** What each of {@link #mRowNodes} was last recorded from. */
+    private RowNodeKeys mRowNodeKeys;
+    /** State affecting all rows when {@link #mRowNodes} were recorded. */
+    private int[] mRowNodePalette;
+    private int mRowNodeColumns, mRowNodeCursorShape;
+    private boolean mRowNodeReverseVideo;
+
     public TerminalRenderer(int textSize, Typeface typeface) {
         mTextSize = textSize;
         mTypeface = typeface;
@@ -45,6 +102,7 @@ public final class TerminalRenderer {
         mFontAscent = (int) Math.ceil(mTextPaint.ascent());
         mFontLineSpacingAndAscent = mFontLineSpacing + mFontAscent;
         mFontWidth = mTextPaint.measureText("X");
+        mImagePaint.setFilterBitmap(true);
 
         StringBuilder sb = new StringBuilder(" ");
         for (int i = 0; i < asciiMeasures.length; i++) {
@@ -56,6 +114,15 @@ public final class TerminalRenderer {
     /** Render the terminal to a canvas with at a specified row scroll, and an optional rectangular selection. */
     public void render(TerminalEmulator mEmulator, Canvas canvas, int topRow,
                              int selectionY1, int selectionY2, int selectionX1, int selectionX2) {
+        render(mEmulator, canvas, topRow, selectionY1, selectionY2, selectionX1, selectionX2, null);
+    }
+
+    /**
+     * Render the terminal as with {@link #render(TerminalEmulator, Canvas, int, int, int, int, int)}, also highlighting
+     * the matches of a search over the current screen buffer if not null.
+     */
+    public void render(TerminalEmulator mEmulator, Canvas canvas, int topRow,
+                       int selectionY1, int selectionY2, int selectionX1, int selectionX2, TranscriptSearch search) {
         final boolean reverseVideo = mEmulator.isReverseVideo();
         final int endRow = topRow + mEmulator.mRows;
         final int columns = mEmulator.mColumns;
@@ -69,6 +136,13 @@ public final class TerminalRenderer {
         if (reverseVideo)
             canvas.drawColor(palette[TextStyle.COLOR_INDEX_FOREGROUND], PorterDuff.Mode.SRC);
 
+        // Rows are recorded into retained render nodes and only recorded again when damaged, which needs hardware acceleration.
+        final boolean useRowNodes = canvas.isHardwareAccelerated();
+        if (useRowNodes) prepareRowNodes(mEmulator.mRows, columns, palette, reverseVideo, cursorShape);
+        // Changes whenever an image is added to or evicted from the emulator, or its bitmap is evicted here, so that rows
+        // recorded with image cells are recorded again instead of drawing evicted images or keeping their bitmaps alive.
+        final long imageGeneration = mEmulator.getImageCache().getGeneration() + mImageBitmapEvictions;
+
         float heightOffset = mFontLineSpacingAndAscent;
         for (int row = topRow; row < endRow; row++) {
             heightOffset += mFontLineSpacing;
@@ -80,76 +154,178 @@ public final class TerminalRenderer {
                 selx2 = (row == selectionY2) ? selectionX2 : mEmulator.mColumns;
             }
 
-            TerminalRow lineObject = screen.allocateFullLineIfNecessary(screen.externalToInternalRow(row));
-            final char[] line = lineObject.mText;
-            final int charsUsedInLine = lineObject.getSpaceUsed();
-
-            long lastRunStyle = 0;
-            boolean lastRunInsideCursor = false;
-            boolean lastRunInsideSelection = false;
-            int lastRunStartColumn = -1;
-            int lastRunStartIndex = 0;
-            boolean lastRunFontWidthMismatch = false;
-            int currentCharIndex = 0;
-            float measuredWidthForRun = 0.f;
-
-            for (int column = 0; column < columns; ) {
-                final char charAtIndex = line[currentCharIndex];
-                final boolean charIsHighSurrogate = Character.isHighSurrogate(charAtIndex);
-                final int charsForCodePoint = charIsHighSurrogate ? 2 : 1;
-                final int codePoint = charIsHighSurrogate ? Character.toCodePoint(charAtIndex, line[currentCharIndex + 1]) : charAtIndex;
-                final int codePointWcWidth = WcWidth.width(codePoint);
-                final boolean insideCursor = (cursorX == column || (codePointWcWidth == 2 && cursorX == column + 1));
-                final boolean insideSelection = column >= selx1 && column <= selx2;
-                final long style = lineObject.getStyle(column);
-
-                // Check if the measured text width for this code point is not the same as that expected by wcwidth().
-                // This could happen for some fonts which are not truly monospace, or for more exotic characters such as
-                // smileys which android font renders as wide.
-                // If this is detected, we draw this code point scaled to match what wcwidth() expects.
-                final float measuredCodePointWidth = (codePoint < asciiMeasures.length) ? asciiMeasures[codePoint] : mTextPaint.measureText(line,
-                    currentCharIndex, charsForCodePoint);
-                final boolean fontWidthMismatch = Math.abs(measuredCodePointWidth / mFontWidth - codePointWcWidth) > 0.01;
-
-                if (style != lastRunStyle || insideCursor != lastRunInsideCursor || insideSelection != lastRunInsideSelection || fontWidthMismatch || lastRunFontWidthMismatch) {
-                    if (column == 0) {
-                        // Skip first column as there is nothing to draw, just record the current style.
+            TerminalRow lineObject = screen.getRow(row);
+            final int[] matchedColumns = (search != null) ? search.getMatchedColumns(row) : null;
+
+            if (!useRowNodes) {
+                renderRow(mEmulator, canvas, lineObject, heightOffset, cursorX, selx1, selx2, matchedColumns, palette, reverseVideo, cursorShape);
+                continue;
+            }
+
+            final int nodeIndex = row - topRow;
+            final RenderNode node = mRowNodes[nodeIndex];
+            if (mRowNodeKeys.isStale(nodeIndex, lineObject, cursorX, selx1, selx2, matchedColumns, imageGeneration) || !node.hasDisplayList()) {
+                final int nodeTop = (int) heightOffset - mFontLineSpacing;
+                node.setPosition(0, nodeTop, (int) Math.ceil(columns * mFontWidth), nodeTop + mFontLineSpacing);
+                RecordingCanvas recordingCanvas = node.beginRecording();
+                mDrewImage = false;
+                try {
+                    recordingCanvas.translate(0, -nodeTop);
+                    renderRow(mEmulator, recordingCanvas, lineObject, heightOffset, cursorX, selx1, selx2, matchedColumns, palette, reverseVideo, cursorShape);
+                } finally {
+                    node.endRecording();
+                }
+                // Decoding bitmaps while recording may have evicted others, which should not make this row stale.
+                mRowNodeKeys.setRecorded(nodeIndex, lineObject, cursorX, selx1, selx2, matchedColumns,
+                    mDrewImage ? mEmulator.getImageCache().getGeneration() + mImageBitmapEvictions : RowNodeKeys.NO_IMAGES);
+            }
+            canvas.drawRenderNode(node);
+        }
+    }
+
+    /**
+     * Make sure that there is a render node for each row, and discard all recorded rows if something affecting every row
+     * has changed since they were recorded.
+     */
+    private void prepareRowNodes(int rows, int columns, int[] palette, boolean reverseVideo, int cursorShape) {
+        if (mRowNodes == null || mRowNodes.length != rows) {
+            mRowNodes = new RenderNode[rows];
+            for (int i = 0; i < rows; i++) {
+                mRowNodes[i] = new RenderNode("TerminalRow");
+                // Let glyphs overflowing the row be drawn as when rendering directly.
+                mRowNodes[i].setClipToBounds(false);
+            }
+            mRowNodeKeys = new RowNodeKeys(rows);
+        } else if (columns != mRowNodeColumns || reverseVideo != mRowNodeReverseVideo || cursorShape != mRowNodeCursorShape
+            || !Arrays.equals(palette, mRowNodePalette)) {
+            mRowNodeKeys.invalidateAll();
+        } else {
+            return;
+        }
+        mRowNodeColumns = columns;
+        mRowNodeReverseVideo = reverseVideo;
+        mRowNodeCursorShape = cursorShape;
+        mRowNodePalette = palette.clone();
+    }
+
+    /**
+     * Render a single row, where cursorX and selx1/selx2 are -1 if the cursor and selection are outside of it. Search
+     * matches in the row, as pairs of start and exclusive end columns, are highlighted as the selection.
+     */
+    private void renderRow(TerminalEmulator mEmulator, Canvas canvas, TerminalRow lineObject, float heightOffset, int cursorX,
+                           int selx1, int selx2, int[] matchedColumns, int[] palette, boolean reverseVideo, int cursorShape) {
+        final int columns = mEmulator.mColumns;
+        final char[] line = lineObject.mText;
+        final RowLayout layout = getRowLayout(lineObject, columns);
+
+        long lastRunStyle = 0;
+        boolean lastRunInsideCursor = false;
+        boolean lastRunInsideSelection = false;
+        int lastRunStartColumn = -1;
+        int lastRunStartIndex = 0;
+        boolean lastRunFontWidthMismatch = false;
+        float measuredWidthForRun = 0.f;
+
+        for (int i = 0; i < layout.mCellCount; i++) {
+            final int column = layout.mColumns[i];
+            final int currentCharIndex = layout.mCharIndices[i];
+            final int codePointWcWidth = layout.mWidths[i];
+            final boolean insideCursor = (cursorX == column || (codePointWcWidth == 2 && cursorX == column + 1));
+            final boolean insideSelection = (column >= selx1 && column <= selx2) || isMatched(matchedColumns, column);
+            final long style = lineObject.getStyle(column);
+            final float measuredCodePointWidth = layout.mMeasuredWidths[i];
+            final boolean fontWidthMismatch = layout.mFontWidthMismatches[i];
+
+            if (style != lastRunStyle || insideCursor != lastRunInsideCursor || insideSelection != lastRunInsideSelection || fontWidthMismatch || lastRunFontWidthMismatch) {
+                if (column == 0) {
+                    // Skip first column as there is nothing to draw, just record the current style.
+                } else {
+                    final int columnWidthSinceLastRun = column - lastRunStartColumn;
+                    final int charsSinceLastRun = currentCharIndex - lastRunStartIndex;
+                    int cursorColor = lastRunInsideCursor ? mEmulator.mColors.mCurrentColors[TextStyle.COLOR_INDEX_CURSOR] : 0;
+                    boolean invertCursorTextColor = lastRunInsideCursor && cursorShape == TerminalEmulator.TERMINAL_CURSOR_STYLE_BLOCK;
+                    if (TextStyle.isImageCell(lastRunStyle)) {
+                        drawImageRun(mEmulator, canvas, heightOffset, lastRunStartColumn, columnWidthSinceLastRun, lastRunStyle, cursorColor, cursorShape);
                     } else {
-                        final int columnWidthSinceLastRun = column - lastRunStartColumn;
-                        final int charsSinceLastRun = currentCharIndex - lastRunStartIndex;
-                        int cursorColor = lastRunInsideCursor ? mEmulator.mColors.mCurrentColors[TextStyle.COLOR_INDEX_CURSOR] : 0;
-                        boolean invertCursorTextColor = lastRunInsideCursor && cursorShape == TerminalEmulator.TERMINAL_CURSOR_STYLE_BLOCK;
                         drawTextRun(canvas, line, palette, heightOffset, lastRunStartColumn, columnWidthSinceLastRun,
                             lastRunStartIndex, charsSinceLastRun, measuredWidthForRun,
                             cursorColor, cursorShape, lastRunStyle, reverseVideo || invertCursorTextColor || lastRunInsideSelection);
                     }
-                    measuredWidthForRun = 0.f;
-                    lastRunStyle = style;
-                    lastRunInsideCursor = insideCursor;
-                    lastRunInsideSelection = insideSelection;
-                    lastRunStartColumn = column;
-                    lastRunStartIndex = currentCharIndex;
-                    lastRunFontWidthMismatch = fontWidthMismatch;
-                }
-                measuredWidthForRun += measuredCodePointWidth;
-                column += codePointWcWidth;
-                currentCharIndex += charsForCodePoint;
-                while (currentCharIndex < charsUsedInLine && WcWidth.width(line, currentCharIndex) <= 0) {
-                    // Eat combining chars so that they are treated as part of the last non-combining code point,
-                    // instead of e.g. being considered inside the cursor in the next run.
-                    currentCharIndex += Character.isHighSurrogate(line[currentCharIndex]) ? 2 : 1;
                 }
+                measuredWidthForRun = 0.f;
+                lastRunStyle = style;
+                lastRunInsideCursor = insideCursor;
+                lastRunInsideSelection = insideSelection;
+                lastRunStartColumn = column;
+                lastRunStartIndex = currentCharIndex;
+                lastRunFontWidthMismatch = fontWidthMismatch;
             }
+            measuredWidthForRun += measuredCodePointWidth;
+        }
 
-            final int columnWidthSinceLastRun = columns - lastRunStartColumn;
-            final int charsSinceLastRun = currentCharIndex - lastRunStartIndex;
-            int cursorColor = lastRunInsideCursor ? mEmulator.mColors.mCurrentColors[TextStyle.COLOR_INDEX_CURSOR] : 0;
-            boolean invertCursorTextColor = lastRunInsideCursor && cursorShape == TerminalEmulator.TERMINAL_CURSOR_STYLE_BLOCK;
+        final int columnWidthSinceLastRun = columns - lastRunStartColumn;
+        final int charsSinceLastRun = layout.mEndCharIndex - lastRunStartIndex;
+        int cursorColor = lastRunInsideCursor ? mEmulator.mColors.mCurrentColors[TextStyle.COLOR_INDEX_CURSOR] : 0;
+        boolean invertCursorTextColor = lastRunInsideCursor && cursorShape == TerminalEmulator.TERMINAL_CURSOR_STYLE_BLOCK;
+        if (TextStyle.isImageCell(lastRunStyle)) {
+            drawImageRun(mEmulator, canvas, heightOffset, lastRunStartColumn, columnWidthSinceLastRun, lastRunStyle, cursorColor, cursorShape);
+        } else {
             drawTextRun(canvas, line, palette, heightOffset, lastRunStartColumn, columnWidthSinceLastRun, lastRunStartIndex, charsSinceLastRun,
                 measuredWidthForRun, cursorColor, cursorShape, lastRunStyle, reverseVideo || invertCursorTextColor || lastRunInsideSelection);
         }
     }
 
+    private static boolean isMatched(int[] matchedColumns, int column) {
+        if (matchedColumns == null) return false;
+        for (int i = 0; i < matchedColumns.length; i += 2)
+            if (column >= matchedColumns[i] && column < matchedColumns[i + 1]) return true;
+        return false;
+    }
+
+    /** Get the layout of a row from {@link #mRowLayouts}, computing it if missing or stale. */
+    private RowLayout getRowLayout(TerminalRow lineObject, int columns) {
+        RowLayout layout = mRowLayouts.get(lineObject);
+        if (layout != null && layout.mVersion == lineObject.getVersion() && layout.mColumnCount == columns) return layout;
+
+        if (layout == null) {
+            layout = new RowLayout();
+            mRowLayouts.put(lineObject, layout);
+        }
+        layout.mVersion = lineObject.getVersion();
+        layout.mColumnCount = columns;
+        layout.mCellCount = 0;
+
+        final char[] line = lineObject.mText;
+        final int charsUsedInLine = lineObject.getSpaceUsed();
+        int currentCharIndex = 0;
+        for (int column = 0; column < columns; ) {
+            final char charAtIndex = line[currentCharIndex];
+            final boolean charIsHighSurrogate = Character.isHighSurrogate(charAtIndex);
+            final int charsForCodePoint = charIsHighSurrogate ? 2 : 1;
+            final int codePoint = charIsHighSurrogate ? Character.toCodePoint(charAtIndex, line[currentCharIndex + 1]) : charAtIndex;
+            final int codePointWcWidth = WcWidth.width(codePoint);
+
+            // Check if the measured text width for this code point is not the same as that expected by wcwidth().
+            // This could happen for some fonts which are not truly monospace, or for more exotic characters such as
+            // smileys which android font renders as wide.
+            // If this is detected, we draw this code point scaled to match what wcwidth() expects.
+            final float measuredCodePointWidth = (codePoint < asciiMeasures.length) ? asciiMeasures[codePoint] : mTextPaint.measureText(line,
+                currentCharIndex, charsForCodePoint);
+            final boolean fontWidthMismatch = Math.abs(measuredCodePointWidth / mFontWidth - codePointWcWidth) > 0.01;
+            layout.add(column, currentCharIndex, codePointWcWidth, measuredCodePointWidth, fontWidthMismatch);
+
+            column += codePointWcWidth;
+            currentCharIndex += charsForCodePoint;
+            while (currentCharIndex < charsUsedInLine && WcWidth.width(line, currentCharIndex) <= 0) {
+                // Eat combining chars so that they are treated as part of the last non-combining code point,
+                // instead of e.g. being considered inside the cursor in the next run.
+                currentCharIndex += Character.isHighSurrogate(line[currentCharIndex]) ? 2 : 1;
+            }
+        }
+        layout.mEndCharIndex = currentCharIndex;
+        return layout;
+    }
+
     private void drawTextRun(Canvas canvas, char[] text, int[] palette, float y, int startColumn, int runWidthColumns,
                              int startCharIndex, int runWidthChars, float mes, int cursor, int cursorStyle,
                              long textStyle, boolean reverseVideo) {
@@ -233,6 +409,45 @@ public final class TerminalRenderer {
         if (savedMatrix) canvas.restore();
     }
 
+    /**
+     * Draw the part of an image shown in a run of cells starting with one of the specified style, scaled from the cell
+     * size the image was laid out with to the current one. Nothing is drawn if the image has been evicted.
+     */
+    private void drawImageRun(TerminalEmulator mEmulator, Canvas canvas, float y, int startColumn, int runWidthColumns,
+                              long imageStyle, int cursor, int cursorStyle) {
+        final TerminalImage image = mEmulator.getImageCache().get(TextStyle.decodeImageNumber(imageStyle));
+        final float left = startColumn * mFontWidth;
+        final float top = y - mFontLineSpacing;
+        mDrewImage = true;
+        if (image != null) {
+            final int cellWidth = image.getCellWidthPixels(), cellHeight = image.getCellHeightPixels();
+            final int sourceLeft = TextStyle.decodeImageColumn(imageStyle) * cellWidth;
+            final int sourceTop = TextStyle.decodeImageRow(imageStyle) * cellHeight;
+            final int sourceRight = Math.min(sourceLeft + runWidthColumns * cellWidth, image.getWidth());
+            final int sourceBottom = Math.min(sourceTop + cellHeight, image.getHeight());
+            if (sourceRight > sourceLeft && sourceBottom > sourceTop) {
+                Bitmap bitmap = mImageBitmaps.get(image);
+                if (bitmap == null) {
+                    bitmap = Bitmap.createBitmap(image.getPixels(), image.getWidth(), image.getHeight(), Bitmap.Config.ARGB_8888);
+                    mImageBitmaps.put(image, bitmap);
+                }
+                mImageSource.set(sourceLeft, sourceTop, sourceRight, sourceBottom);
+                mImageDestination.set(left, top, left + (sourceRight - sourceLeft) * mFontWidth / cellWidth,
+                    top + (sourceBottom - sourceTop) * (float) mFontLineSpacing / cellHeight);
+                canvas.drawBitmap(bitmap, mImageSource, mImageDestination, mImagePaint);
+            }
+        }
+
+        if (cursor != 0) {
+            mTextPaint.setColor(cursor);
+            float right = left + runWidthColumns * mFontWidth;
+            float cursorHeight = mFontLineSpacingAndAscent - mFontAscent;
+            if (cursorStyle == TerminalEmulator.TERMINAL_CURSOR_STYLE_UNDERLINE) cursorHeight /= 4.;
+            else if (cursorStyle == TerminalEmulator.TERMINAL_CURSOR_STYLE_BAR) right -= ((right - left) * 3) / 4.;
+            canvas.drawRect(left, y - cursorHeight, right, y, mTextPaint);
+        }
+    }
+
     public float getFontWidth() {
         return mFontWidth;
     }
@@ -240,4 +455,39 @@ public final class TerminalRenderer {
     public int getFontLineSpacing() {
         return mFontLineSpacing;
     }
+
+    /**
+     * The code points of a row as laid out for rendering, with combining characters included in the preceding code point.
+     * Only depends on the contents of the row, so it stays valid as long as {@link TerminalRow#getVersion()} is unchanged.
+     */
+    private static final class RowLayout {
+        int mVersion;
+        int mColumnCount;
+        int mCellCount;
+        /** The char index after the last code point, including combining characters. */
+        int mEndCharIndex;
+        int[] mColumns = new int[80];
+        int[] mCharIndices = new int[80];
+        int[] mWidths = new int[80];
+        float[] mMeasuredWidths = new float[80];
+        boolean[] mFontWidthMismatches = new boolean[80];
+
+        void add(int column, int charIndex, int width, float measuredWidth, boolean fontWidthMismatch) {
+            if (mCellCount == mColumns.length) {
+                final int newLength = mCellCount * 2;
+                mColumns = Arrays.copyOf(mColumns, newLength);
+                mCharIndices = Arrays.copyOf(mCharIndices, newLength);
+                mWidths = Arrays.copyOf(mWidths, newLength);
+                mMeasuredWidths = Arrays.copyOf(mMeasuredWidths, newLength);
+                mFontWidthMismatches = Arrays.copyOf(mFontWidthMismatches, newLength);
+            }
+            mColumns[mCellCount] = column;
+            mCharIndices[mCellCount] = charIndex;
+            mWidths[mCellCount] = width;
+            mMeasuredWidths[mCellCount] = measuredWidth;
+            mFontWidthMismatches[mCellCount] = fontWidthMismatch;
+            mCellCount++;
+        }
+    }
+
 }
@@ -14,6 +14,7 @@ import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.ActionMode;
+import android.view.Choreographer;
 import android.view.HapticFeedbackConstants;
 import android.view.InputDevice;
 import android.view.KeyCharacterMap;
@@ -36,6 +37,7 @@ import androidx.annotation.Nullable;
 import com.termux.terminal.KeyHandler;
 import com.termux.terminal.TerminalEmulator;
 import com.termux.terminal.TerminalSession;
+import com.termux.terminal.TranscriptSearch;
 
 /**
  * View displaying and interacting with a {@link TerminalSession}.
@@ -107,6 +109,26 @@ public final class TerminalView extends View {
 
     private final boolean mAccessibilityEnabled;
 
+    /** If {@link #mScreenUpdateFrameCallback} has been posted for the next frame. */
+    private boolean mScreenUpdateScheduled;
+
+    /** The number of screen updates merged into an update already scheduled for the next frame. */
+    private long mMergedScreenUpdates;
+
+    /** The number of screen updates dropped since the view was not attached to a window. */
+    private long mDroppedScreenUpdates;
+
+    /** If a screen update has been dropped since the view was last attached to a window. */
+    private boolean mScreenUpdateDropped;
+
+    /** The search whose matches are highlighted, if any. */
+    private TranscriptSearch mTranscriptSearch;
+
+    private final Choreographer.FrameCallback mScreenUpdateFrameCallback = frameTimeNanos -> {
+        mScreenUpdateScheduled = false;
+        onScreenUpdated();
+    };
+
     public TerminalView(Context context, AttributeSet attributes) { // NO_UCD (unused code)
         super(context, attributes);
         mGestureRecognizer = new GestureAndScaleRecognizer(context, new GestureAndScaleRecognizer.Listener() {
@@ -116,7 +138,7 @@ public final class TerminalView extends View {
             @Override
             public boolean onUp(MotionEvent event) {
                 mScrollRemainder = 0.0f;
-                if (mEmulator != null && mEmulator.isMouseTrackingActive() && !event.isFromSource(InputDevice.SOURCE_MOUSE) && !isSelectingText() && !scrolledWithFinger) {
+                if (mEmulator != null && isMouseTrackingActive() && !event.isFromSource(InputDevice.SOURCE_MOUSE) && !isSelectingText() && !scrolledWithFinger) {
                     // Quick event processing when mouse tracking is active - do not wait for check of double tapping
                     // for zooming.
                     sendMouseEventCode(event, TerminalEmulator.MOUSE_LEFT_BUTTON, true);
@@ -143,7 +165,7 @@ public final class TerminalView extends View {
             @Override
             public boolean onScroll(MotionEvent e, float distanceX, float distanceY) {
                 if (mEmulator == null) return true;
-                if (mEmulator.isMouseTrackingActive() && e.isFromSource(InputDevice.SOURCE_MOUSE)) {
+                if (isMouseTrackingActive() && e.isFromSource(InputDevice.SOURCE_MOUSE)) {
                     // If moving with mouse pointer while pressing button, report that instead of scroll.
                     // This means that we never report moving with button press-events for touch input,
                     // since we cannot just start sending these events without a starting press event,
@@ -173,12 +195,17 @@ public final class TerminalView extends View {
                 // Do not start scrolling until last fling has been taken care of:
                 if (!mScroller.isFinished()) return true;
 
-                final boolean mouseTrackingAtStartOfFling = mEmulator.isMouseTrackingActive();
+                final boolean mouseTrackingAtStartOfFling;
+                final int rowsInHistory;
+                synchronized (mEmulator) {
+                    mouseTrackingAtStartOfFling = mEmulator.isMouseTrackingActive();
+                    rowsInHistory = mEmulator.getScreen().getActiveTranscriptRows();
+                }
                 float SCALE = 0.25f;
                 if (mouseTrackingAtStartOfFling) {
                     mScroller.fling(0, 0, 0, -(int) (velocityY * SCALE), 0, 0, -mEmulator.mRows / 2, mEmulator.mRows / 2);
                 } else {
-                    mScroller.fling(0, mTopRow, 0, -(int) (velocityY * SCALE), 0, 0, -mEmulator.getScreen().getActiveTranscriptRows(), 0);
+                    mScroller.fling(0, mTopRow, 0, -(int) (velocityY * SCALE), 0, 0, -rowsInHistory, 0);
                 }
 
                 post(new Runnable() {
@@ -186,7 +213,7 @@ public final class TerminalView extends View {
 
                     @Override
                     public void run() {
-                        if (mouseTrackingAtStartOfFling != mEmulator.isMouseTrackingActive()) {
+                        if (mEmulator == null || mouseTrackingAtStartOfFling != isMouseTrackingActive()) {
                             mScroller.abortAnimation();
                             return;
                         }
@@ -251,6 +278,7 @@ public final class TerminalView extends View {
     public boolean attachSession(TerminalSession session) {
         if (session == mTermSession) return false;
         mTopRow = 0;
+        mTranscriptSearch = null;
 
         mTermSession = session;
         mEmulator = null;
@@ -401,7 +429,10 @@ public final class TerminalView extends View {
 
     @Override
     protected int computeVerticalScrollRange() {
-        return mEmulator == null ? 1 : mEmulator.getScreen().getActiveRows();
+        if (mEmulator == null) return 1;
+        synchronized (mEmulator) {
+            return mEmulator.getScreen().getActiveRows();
+        }
     }
 
     @Override
@@ -411,55 +442,87 @@ public final class TerminalView extends View {
 
     @Override
     protected int computeVerticalScrollOffset() {
-        return mEmulator == null ? 1 : mEmulator.getScreen().getActiveRows() + mTopRow - mEmulator.mRows;
+        if (mEmulator == null) return 1;
+        synchronized (mEmulator) {
+            return mEmulator.getScreen().getActiveRows() + mTopRow - mEmulator.mRows;
+        }
     }
 
     public void onScreenUpdated() {
         onScreenUpdated(false);
     }
 
+    /**
+     * Schedule a call to {@link #onScreenUpdated()} aligned with the next frame, merging all changes of the emulator
+     * until then into a single redraw. Unlike {@link #onScreenUpdated()}, this is cheap to call after every change.
+     */
+    public void scheduleScreenUpdate() {
+        if (mScreenUpdateScheduled) {
+            mMergedScreenUpdates++;
+        } else if (!isAttachedToWindow()) {
+            // Nothing is drawn, so update the screen once when attached again.
+            mDroppedScreenUpdates++;
+            mScreenUpdateDropped = true;
+        } else {
+            mScreenUpdateScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mScreenUpdateFrameCallback);
+        }
+    }
+
+    /** The number of calls to {@link #scheduleScreenUpdate()} merged into an update already scheduled for a frame. */
+    public long getMergedScreenUpdates() {
+        return mMergedScreenUpdates;
+    }
+
+    /** The number of calls to {@link #scheduleScreenUpdate()} dropped, or cancelled, since the view was not attached. */
+    public long getDroppedScreenUpdates() {
+        return mDroppedScreenUpdates;
+    }
+
     public void onScreenUpdated(boolean skipScrolling) {
         if (mEmulator == null) return;
 
-        int rowsInHistory = mEmulator.getScreen().getActiveTranscriptRows();
-        if (mTopRow < -rowsInHistory) mTopRow = -rowsInHistory;
+        synchronized (mEmulator) {
+            int rowsInHistory = mEmulator.getScreen().getActiveTranscriptRows();
+            if (mTopRow < -rowsInHistory) mTopRow = -rowsInHistory;
 
-        if (isSelectingText() || mEmulator.isAutoScrollDisabled()) {
+            if (isSelectingText() || mEmulator.isAutoScrollDisabled()) {
 
-            // Do not scroll when selecting text.
-            int rowShift = mEmulator.getScrollCounter();
-            if (-mTopRow + rowShift > rowsInHistory) {
-                // .. unless we're hitting the end of history transcript, in which
-                // case we abort text selection and scroll to end.
-                if (isSelectingText())
-                    stopTextSelectionMode();
+                // Do not scroll when selecting text.
+                int rowShift = mEmulator.getScrollCounter();
+                if (-mTopRow + rowShift > rowsInHistory) {
+                    // .. unless we're hitting the end of history transcript, in which
+                    // case we abort text selection and scroll to end.
+                    if (isSelectingText())
+                        stopTextSelectionMode();
 
-                if (mEmulator.isAutoScrollDisabled()) {
-                    mTopRow = -rowsInHistory;
+                    if (mEmulator.isAutoScrollDisabled()) {
+                        mTopRow = -rowsInHistory;
+                        skipScrolling = true;
+                    }
+                } else {
                     skipScrolling = true;
+                    mTopRow -= rowShift;
+                    decrementYTextSelectionCursors(rowShift);
                 }
-            } else {
-                skipScrolling = true;
-                mTopRow -= rowShift;
-                decrementYTextSelectionCursors(rowShift);
             }
-        }
 
-        if (!skipScrolling && mTopRow != 0) {
-            // Scroll down if not already there.
-            if (mTopRow < -3) {
-                // Awaken scroll bars only if scrolling a noticeable amount
-                // - we do not want visible scroll bars during normal typing
-                // of one row at a time.
-                awakenScrollBars();
+            if (!skipScrolling && mTopRow != 0) {
+                // Scroll down if not already there.
+                if (mTopRow < -3) {
+                    // Awaken scroll bars only if scrolling a noticeable amount
+                    // - we do not want visible scroll bars during normal typing
+                    // of one row at a time.
+                    awakenScrollBars();
+                }
+                mTopRow = 0;
             }
-            mTopRow = 0;
-        }
 
-        mEmulator.clearScrollCounter();
+            mEmulator.clearScrollCounter();
+            if (mAccessibilityEnabled) setContentDescription(getText());
+        }
 
         invalidate();
-        if (mAccessibilityEnabled) setContentDescription(getText());
     }
 
     /**
@@ -522,6 +585,16 @@ public final class TerminalView extends View {
      * Send a single mouse event code to the terminal.
      */
     void sendMouseEventCode(MotionEvent e, int button, boolean pressed) {
+        final byte[] code;
+        synchronized (mEmulator) {
+            code = getMouseEventCode(e, button, pressed);
+        }
+        // Written after releasing the lock, as writing blocks while the process is busy and not reading its input:
+        if (code != null) mTermSession.write(code, 0, code.length);
+    }
+
+    /** The code of a mouse event to write to the terminal, or null if none. Must be called with the emulator locked. */
+    private byte[] getMouseEventCode(MotionEvent e, int button, boolean pressed) {
         int[] columnAndRow = getColumnAndRow(e, false);
         int x = columnAndRow[0] + 1;
         int y = columnAndRow[1] + 1;
@@ -535,7 +608,7 @@ public final class TerminalView extends View {
                 mMouseScrollStartY = y;
             }
         }
-        mEmulator.sendMouseEvent(button, x, y, pressed, mShiftHeld, mAltHeld, mCtrlHeld);
+        return mEmulator.getMouseEventCode(button, x, y, pressed, mShiftHeld, mAltHeld, mCtrlHeld);
     }
 
     /**
@@ -545,16 +618,24 @@ public final class TerminalView extends View {
         boolean up = rowsDown < 0;
         int amount = Math.abs(rowsDown);
         for (int i = 0; i < amount; i++) {
-            if (mEmulator.isMouseTrackingActive()) {
-                sendMouseEventCode(event, up ? TerminalEmulator.MOUSE_WHEELUP_BUTTON : TerminalEmulator.MOUSE_WHEELDOWN_BUTTON, true);
-            } else if (mEmulator.isAlternateBufferActive()) {
-                // Send up and down key events for scrolling, which is what some terminals do to make scroll work in
-                // e.g. less, which shifts to the alt screen without mouse handling.
-                handleKeyCode(up ? KeyEvent.KEYCODE_DPAD_UP : KeyEvent.KEYCODE_DPAD_DOWN, 0);
-            } else {
-                mTopRow = Math.min(0, Math.max(-(mEmulator.getScreen().getActiveTranscriptRows()), mTopRow + (up ? -1 : 1)));
-                if (!awakenScrollBars()) invalidate();
+            byte[] mouseCode = null;
+            String keyCode = null;
+            synchronized (mEmulator) {
+                if (mEmulator.isMouseTrackingActive()) {
+                    mouseCode = getMouseEventCode(event, up ? TerminalEmulator.MOUSE_WHEELUP_BUTTON : TerminalEmulator.MOUSE_WHEELDOWN_BUTTON, true);
+                } else if (mEmulator.isAlternateBufferActive()) {
+                    // Send up and down key events for scrolling, which is what some terminals do to make scroll work in
+                    // e.g. less, which shifts to the alt screen without mouse handling.
+                    keyCode = KeyHandler.getCode(up ? KeyEvent.KEYCODE_DPAD_UP : KeyEvent.KEYCODE_DPAD_DOWN, 0,
+                        mEmulator.isCursorKeysApplicationMode(), mEmulator.isKeypadApplicationMode());
+                } else {
+                    mTopRow = Math.min(0, Math.max(-(mEmulator.getScreen().getActiveTranscriptRows()), mTopRow + (up ? -1 : 1)));
+                    if (!awakenScrollBars()) invalidate();
+                }
             }
+            // Written after releasing the lock, as writing blocks while the process is busy and not reading its input:
+            if (mouseCode != null) mTermSession.write(mouseCode, 0, mouseCode.length);
+            else if (keyCode != null) mTermSession.write(keyCode);
         }
     }
 
@@ -593,10 +674,10 @@ public final class TerminalView extends View {
                     ClipData.Item clipItem = clipData.getItemAt(0);
                     if (clipItem != null) {
                         CharSequence text = clipItem.coerceToText(getContext());
-                        if (!TextUtils.isEmpty(text)) mEmulator.paste(text.toString());
+                        if (!TextUtils.isEmpty(text)) paste(text.toString());
                     }
                 }
-            } else if (mEmulator.isMouseTrackingActive()) { // BUTTON_PRIMARY.
+            } else if (isMouseTrackingActive()) { // BUTTON_PRIMARY.
                 switch (event.getAction()) {
                     case MotionEvent.ACTION_DOWN:
                     case MotionEvent.ACTION_UP:
@@ -861,7 +942,10 @@ public final class TerminalView extends View {
         }
 
         TerminalEmulator term = mTermSession.getEmulator();
-        String code = KeyHandler.getCode(keyCode, keyMod, term.isCursorKeysApplicationMode(), term.isKeypadApplicationMode());
+        String code;
+        synchronized (term) {
+            code = KeyHandler.getCode(keyCode, keyMod, term.isCursorKeysApplicationMode(), term.isKeypadApplicationMode());
+        }
         if (code == null) {
             return false;
         }
@@ -970,15 +1054,20 @@ public final class TerminalView extends View {
             selectionX2 = mTextSelectionCursorController.mSelX2;
         }
 
-        mRenderer.render(
-            mEmulator,
-            canvas,
-            mTopRow,
-            selectionY1,
-            selectionY2,
-            selectionX1,
-            selectionX2
-        );
+        // The session may be parsing on a worker thread, so render a consistent screen by holding the emulator lock.
+        synchronized (mEmulator) {
+            mRenderer.render(
+                mEmulator,
+                canvas,
+                mTopRow,
+                selectionY1,
+                selectionY2,
+                selectionX1,
+                selectionX2,
+                // The search only applies to the buffer it was created for, and not e.g. the alternate screen:
+                (mTranscriptSearch != null && mTranscriptSearch.getBuffer() == mEmulator.getScreen()) ? mTranscriptSearch : null
+            );
+        }
 
         if (mTextSelectionCursorController != null) {
             mTextSelectionCursorController.render();
@@ -990,7 +1079,30 @@ public final class TerminalView extends View {
     }
 
     private CharSequence getText() {
-        return mEmulator.getScreen().getSelectedText(0, mTopRow, mEmulator.mColumns, mTopRow + mEmulator.mRows);
+        synchronized (mEmulator) {
+            return mEmulator.getScreen().getSelectedText(0, mTopRow, mEmulator.mColumns, mTopRow + mEmulator.mRows);
+        }
+    }
+
+    /**
+     * Whether the emulator reports mouse events. As the session may be parsing on a worker thread, the emulator is only
+     * read from the main thread while holding its lock, like when drawing.
+     */
+    private boolean isMouseTrackingActive() {
+        synchronized (mEmulator) {
+            return mEmulator.isMouseTrackingActive();
+        }
+    }
+
+    /** Paste text into the emulator, which wraps it in bracketed paste sequences if the program asked for them. */
+    public void paste(String text) {
+        if (mEmulator == null) return;
+        final boolean bracketed;
+        synchronized (mEmulator) {
+            bracketed = mEmulator.isBracketedPasteMode();
+        }
+        // Written after releasing the lock, as a large paste blocks while the process is busy and not reading its input:
+        mTermSession.write(TerminalEmulator.getPasteCode(text, bracketed));
     }
 
     public int getCursorX(float x) {
@@ -1020,6 +1132,28 @@ public final class TerminalView extends View {
         this.mTopRow = mTopRow;
     }
 
+    /** Highlight the matches of a search over the screen of the current emulator, or stop highlighting if null. */
+    public void setTranscriptSearch(TranscriptSearch search) {
+        mTranscriptSearch = search;
+        invalidate();
+    }
+
+    public TranscriptSearch getTranscriptSearch() {
+        return mTranscriptSearch;
+    }
+
+    /** Scroll so that a row, such as of a search match, is shown in the middle of the view unless already visible. */
+    public void scrollToRow(int row) {
+        if (mEmulator == null) return;
+        synchronized (mEmulator) {
+            if (row >= mTopRow && row < mTopRow + mEmulator.mRows) return;
+            final int rowsInHistory = mEmulator.getScreen().getActiveTranscriptRows();
+            mTopRow = Math.min(0, Math.max(-rowsInHistory, row - mEmulator.mRows / 2));
+        }
+        awakenScrollBars();
+        invalidate();
+    }
+
 
     /**
      * Define functions required for AutoFill API
@@ -1125,6 +1259,12 @@ public final class TerminalView extends View {
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
 
+        if (mScreenUpdateDropped) {
+            // Catch up with changes to the screen while detached.
+            mScreenUpdateDropped = false;
+            onScreenUpdated();
+        }
+
         if (mTextSelectionCursorController != null) {
             getViewTreeObserver().addOnTouchModeChangeListener(mTextSelectionCursorController);
         }
@@ -1134,6 +1274,13 @@ public final class TerminalView extends View {
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
 
+        if (mScreenUpdateScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mScreenUpdateFrameCallback);
+            mScreenUpdateScheduled = false;
+            mDroppedScreenUpdates++;
+            mScreenUpdateDropped = true;
+        }
+
         if (mTextSelectionCursorController != null) {
             // Might solve the following exception
             // android.view.WindowLeaked: Activity com.termux.app.TermuxActivity has leaked window android.widget.PopupWindow
@@ -0,0 +1,51 @@
+package com.termux.view;
+
+import com.termux.terminal.TerminalRow;
+
+import junit.framework.TestCase;
+
+public class RowNodeKeysTest extends TestCase {
+
+	private final TerminalRow mRow = new TerminalRow(10, 0);
+
+	public void testUnrecordedIsStale() {
+		RowNodeKeys keys = new RowNodeKeys(2);
+		assertEquals(2, keys.size());
+		assertTrue(keys.isStale(0, mRow, -1, -1, -1, null, 0));
+	}
+
+	public void testStaleWhenRowChanges() {
+		RowNodeKeys keys = new RowNodeKeys(1);
+		keys.setRecorded(0, mRow, -1, -1, -1, null, RowNodeKeys.NO_IMAGES);
+		assertFalse(keys.isStale(0, mRow, -1, -1, -1, null, 0));
+		assertTrue(keys.isStale(0, new TerminalRow(10, 0), -1, -1, -1, null, 0));
+		assertTrue(keys.isStale(0, mRow, 3, -1, -1, null, 0));
+		assertTrue(keys.isStale(0, mRow, -1, 0, 4, null, 0));
+		assertTrue(keys.isStale(0, mRow, -1, -1, -1, new int[]{1, 2}, 0));
+
+		mRow.setChar(0, 'a', 0);
+		assertTrue(keys.isStale(0, mRow, -1, -1, -1, null, 0));
+
+		keys.setRecorded(0, mRow, -1, -1, -1, null, RowNodeKeys.NO_IMAGES);
+		assertFalse(keys.isStale(0, mRow, -1, -1, -1, null, 0));
+		keys.invalidateAll();
+		assertTrue(keys.isStale(0, mRow, -1, -1, -1, null, 0));
+	}
+
+	public void testRowWithImagesStaleWhenImageGenerationChanges() {
+		RowNodeKeys keys = new RowNodeKeys(2);
+		TerminalRow imageRow = new TerminalRow(10, 0);
+		keys.setRecorded(0, mRow, -1, -1, -1, null, RowNodeKeys.NO_IMAGES);
+		keys.setRecorded(1, imageRow, -1, -1, -1, null, 7);
+		assertFalse(keys.isStale(0, mRow, -1, -1, -1, null, 7));
+		assertFalse(keys.isStale(1, imageRow, -1, -1, -1, null, 7));
+
+		// An image or its bitmap being evicted only makes rows which were drawn with images stale:
+		assertFalse(keys.isStale(0, mRow, -1, -1, -1, null, 8));
+		assertTrue(keys.isStale(1, imageRow, -1, -1, -1, null, 8));
+
+		keys.setRecorded(1, imageRow, -1, -1, -1, null, 8);
+		assertFalse(keys.isStale(1, imageRow, -1, -1, -1, null, 8));
+	}
+
+}
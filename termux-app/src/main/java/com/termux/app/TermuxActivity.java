@@ -433,7 +433,10 @@ public final class TermuxActivity extends AppCompatActivity implements ServiceCo
                     return;
                 }
                 try {
-                    mTermuxTerminalSessionActivityClient.addNewSession(isFailSafe, sessionName, executable, executableIntent);
+                    // Restore sessions of a killed process, unless asked to start a specific one:
+                    if (isFailSafe || executable != null || !mTermuxTerminalSessionActivityClient.restoreSessionSnapshots()) {
+                        mTermuxTerminalSessionActivityClient.addNewSession(isFailSafe, sessionName, executable, executableIntent);
+                    }
                 } catch (WindowManager.BadTokenException e) {
                     // Activity finished - ignore.
                 }
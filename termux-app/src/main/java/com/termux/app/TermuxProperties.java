@@ -2,6 +2,8 @@ package com.termux.app;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -15,7 +17,8 @@ public final class TermuxProperties {
     public static final String EXTRA_KEYS_DEFAULT = "[['ESC','/',{key: '-', popup: '|'},'HOME','UP','END','PGUP'], ['TAB','CTRL','ALT','LEFT','DOWN','RIGHT','PGDN']]";
     public static final String EXTRA_KEYS_STYLE_DEFAULT = "default";
 
-    void reloadProperties(TermuxActivity activity) {
+    /** Reload the properties files, reporting a syntax error in them on the activity if not null. */
+    void reloadProperties(@Nullable TermuxActivity activity) {
         properties.clear();
         try {
             for (String subPath : new String[]{".termux/termux.properties", ".config/termux/termux.properties"}) {
@@ -26,7 +29,8 @@ public final class TermuxProperties {
                             properties.load(in);
                         } catch (Exception e) {
                             Log.e(TermuxConstants.LOG_TAG, "Error reading termux properties", e);
-                            activity.showTransientMessage("Cannot read termux.properties - check syntax", true);
+                            if (activity != null)
+                                activity.showTransientMessage("Cannot read termux.properties - check syntax", true);
                         }
                     }
                 }
@@ -44,6 +48,22 @@ public final class TermuxProperties {
         return properties.getProperty("enforce-char-based-input", "false").equalsIgnoreCase("true");
     }
 
+    boolean isParsingOnWorkerThread() {
+        return properties.getProperty("terminal-worker-thread", "false").equalsIgnoreCase("true");
+    }
+
+    boolean isTranscriptArchived() {
+        return properties.getProperty("terminal-transcript-archive", "false").equalsIgnoreCase("true");
+    }
+
+    boolean isTranscriptShared() {
+        return properties.getProperty("terminal-transcript-share", "false").equalsIgnoreCase("true");
+    }
+
+    boolean areSessionSnapshotsEnabled() {
+        return properties.getProperty("terminal-session-snapshots", "false").equalsIgnoreCase("true");
+    }
+
     boolean areVirtualVolumeKeysDisabled() {
         return properties.getProperty("volume-keys", "normal").equalsIgnoreCase("volume");
     }
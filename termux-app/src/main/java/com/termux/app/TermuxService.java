@@ -25,12 +25,15 @@ import com.termux.R;
 import com.termux.app.api.TermuxApiHandler;
 import com.termux.terminal.TerminalSession;
 import com.termux.terminal.TerminalSessionClient;
+import com.termux.terminal.TranscriptRowInterner;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * A service holding a list of {@link TerminalSession} in {@link #mTerminalSessions} and background {@link TermuxAppShell}
@@ -72,6 +75,15 @@ public final class TermuxService extends Service {
 
     private final TermuxApiHandler mTermuxApiHandler = new TermuxApiHandler(this);
 
+    /** The properties setting up new sessions, reloaded for each, as sessions are also created without an activity. */
+    private final TermuxProperties mProperties = new TermuxProperties();
+
+    /** Where sessions share identical rows of their transcripts, if enabled. */
+    private final TranscriptRowInterner mTranscriptRowInterner = new TranscriptRowInterner();
+
+    /** Where sessions are checkpointed, one at a time off the main thread. */
+    private final ExecutorService mCheckpointExecutor = Executors.newSingleThreadExecutor();
+
     /**
      * The full implementation of the {@link TerminalSessionClient} interface to be used by {@link TerminalSession}
      * that holds activity references for activity related functions.
@@ -107,6 +119,40 @@ public final class TermuxService extends Service {
         super.onCreate();
 
         TermuxInstaller.setupAppLibSymlink(this);
+
+        // Sessions do not outlive the service, so any archived scroll history left is from a killed process:
+        File[] staleArchives = getTranscriptArchiveDirectory().listFiles();
+        if (staleArchives != null) {
+            for (File staleArchive : staleArchives) {
+                //noinspection ResultOfMethodCallIgnored
+                staleArchive.delete();
+            }
+        }
+    }
+
+    /** The directory in which sessions keep scroll history which does not fit in memory. */
+    public File getTranscriptArchiveDirectory() {
+        File directory = new File(getCacheDir(), "transcripts");
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        return directory;
+    }
+
+    /** The directory in which sessions checkpoint their state, to be restored if the process is killed. */
+    public File getSnapshotDirectory() {
+        File directory = new File(getCacheDir(), "snapshots");
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        return directory;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // The process may be killed after this, so checkpoint the sessions to restore them from:
+        for (TerminalSession session : getTermuxSessions()) {
+            mCheckpointExecutor.execute(session::checkpointSnapshot);
+        }
     }
 
     @SuppressLint("Wakelock")
@@ -158,6 +204,7 @@ public final class TermuxService extends Service {
         }
 
         mTermuxApiHandler.onDestroy();
+        mCheckpointExecutor.shutdown();
     }
 
     @Override
@@ -189,6 +236,10 @@ public final class TermuxService extends Service {
      */
     private void actionStopService() {
         mWantsToStop = true;
+        // Sessions the user exits are not restored:
+        for (TerminalSession session : getTermuxSessions()) {
+            session.deleteSnapshot();
+        }
         killAllTermuxExecutionCommands();
         requestStopService();
     }
@@ -372,6 +423,18 @@ public final class TermuxService extends Service {
 
         newTermuxSession.mSessionName = sessionName;
 
+        mProperties.reloadProperties(null);
+        newTermuxSession.setParseOnWorkerThread(mProperties.isParsingOnWorkerThread());
+        if (mProperties.isTranscriptArchived()) {
+            newTermuxSession.setTranscriptArchiveDirectory(getTranscriptArchiveDirectory());
+        }
+        if (mProperties.isTranscriptShared()) {
+            newTermuxSession.setTranscriptRowInterner(mTranscriptRowInterner);
+        }
+        if (mProperties.areSessionSnapshotsEnabled()) {
+            newTermuxSession.setSnapshotFile(new File(getSnapshotDirectory(), newTermuxSession.mHandle));
+        }
+
         mTerminalSessions.add(newTermuxSession);
 
         if (mTerminalSessionClient != null) {
@@ -403,6 +466,8 @@ public final class TermuxService extends Service {
      */
     public void onTermuxSessionExited(@NonNull final TerminalSession termuxSession) {
         mTerminalSessions.remove(termuxSession);
+        termuxSession.closeTranscriptArchive();
+        termuxSession.deleteSnapshot();
         if (mTerminalSessionClient != null) {
             mTerminalSessionClient.termuxSessionListNotifyUpdated();
         }
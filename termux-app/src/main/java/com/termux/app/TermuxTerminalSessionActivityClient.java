@@ -31,6 +31,8 @@ import com.termux.terminal.TextStyle;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Properties;
 
 /**
@@ -160,7 +162,9 @@ public final class TermuxTerminalSessionActivityClient implements TerminalSessio
             TerminalColors.COLOR_SCHEME.updateWith(props);
             TerminalSession session = mActivity.getCurrentSession();
             if (session != null && session.getEmulator() != null) {
-                session.getEmulator().mColors.reset();
+                synchronized (session.getEmulator()) {
+                    session.getEmulator().mColors.reset();
+                }
             }
             updateBackgroundColor();
 
@@ -174,7 +178,7 @@ public final class TermuxTerminalSessionActivityClient implements TerminalSessio
     @Override
     public void onTextChanged(@NonNull TerminalSession changedSession) {
         if (mActivity.isVisible() && mActivity.getCurrentSession() == changedSession) {
-            mActivity.getTerminalView().onScreenUpdated();
+            mActivity.getTerminalView().scheduleScreenUpdate();
         }
     }
 
@@ -245,7 +249,7 @@ public final class TermuxTerminalSessionActivityClient implements TerminalSessio
 
         String text = TermuxUrlUtils.getTextStringFromClipboardIfSet(mActivity, true);
         if (text != null)
-            mActivity.getTerminalView().mEmulator.paste(text);
+            mActivity.getTerminalView().paste(text);
     }
 
     @Override
@@ -385,6 +389,35 @@ public final class TermuxTerminalSessionActivityClient implements TerminalSessio
     }
 
     public void addNewSession(boolean isFailSafe, String sessionName, File executable, @Nullable Intent sessionIntent) {
+        addNewSession(isFailSafe, sessionName, executable, sessionIntent, null);
+    }
+
+    /**
+     * Add a session for each checkpoint left by sessions of a process which was killed, restoring their screens and
+     * scroll history with a new shell. Returns false if there were none, or session snapshots are disabled.
+     */
+    public boolean restoreSessionSnapshots() {
+        var service = mActivity.getTermuxService();
+        if (service == null || !mActivity.mProperties.areSessionSnapshotsEnabled()) {
+            return false;
+        }
+        File[] snapshotFiles = service.getSnapshotDirectory().listFiles();
+        if (snapshotFiles == null || snapshotFiles.length == 0) {
+            return false;
+        }
+        Arrays.sort(snapshotFiles, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < snapshotFiles.length; i++) {
+            if (i < snapshotFiles.length - MAX_SESSIONS) {
+                //noinspection ResultOfMethodCallIgnored
+                snapshotFiles[i].delete();
+            } else {
+                addNewSession(false, null, null, null, snapshotFiles[i]);
+            }
+        }
+        return true;
+    }
+
+    private void addNewSession(boolean isFailSafe, String sessionName, File executable, @Nullable Intent sessionIntent, @Nullable File snapshotFile) {
         var service = mActivity.getTermuxService();
         if (service == null) {
             return;
@@ -410,6 +443,8 @@ public final class TermuxTerminalSessionActivityClient implements TerminalSessio
                 workingDirectory = currentSession == null ? TermuxConstants.HOME_PATH : currentSession.getCwd();
             }
             var newTermuxSession = service.createTermuxSession(executable, arguments, null, workingDirectory, isFailSafe, sessionName);
+            // Restore a session of a killed process from its own checkpoint rather than one for the new session:
+            if (snapshotFile != null) newTermuxSession.setSnapshotFile(snapshotFile);
             setCurrentSession(newTermuxSession);
             mActivity.getDrawer().closeDrawers();
         }
@@ -498,7 +533,10 @@ public final class TermuxTerminalSessionActivityClient implements TerminalSessio
         if (!mActivity.isVisible()) return;
         TerminalSession session = mActivity.getCurrentSession();
         if (session != null && session.getEmulator() != null) {
-            var backgroundColor = session.getEmulator().mColors.mCurrentColors[TextStyle.COLOR_INDEX_BACKGROUND];
+            int backgroundColor;
+            synchronized (session.getEmulator()) {
+                backgroundColor = session.getEmulator().mColors.mCurrentColors[TextStyle.COLOR_INDEX_BACKGROUND];
+            }
             var decorView = mActivity.getWindow().getDecorView();
             decorView.setBackgroundColor(backgroundColor);
             var wic = decorView.getWindowInsetsController();
@@ -20,9 +20,19 @@ import com.termux.terminal.TerminalEmulator;
 import com.termux.terminal.TerminalSession;
 import com.termux.view.TerminalViewClient;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.NonNull;
 import androidx.drawerlayout.widget.DrawerLayout;
@@ -38,6 +48,19 @@ public final class TermuxTerminalViewClient implements TerminalViewClient {
 
     private static final String LOG_TAG = "TermuxTerminalViewClient";
 
+    /**
+     * The maximum size in chars of a transcript shared as text. Larger transcripts would not fit
+     * in the intent, so they are written to a file and shared as that.
+     */
+    private static final int MAX_SHARED_TRANSCRIPT_TEXT_LENGTH = 100_000;
+
+    /** The directory in the cache directory where larger transcripts are written to be shared as files. */
+    private static final String SHARED_TRANSCRIPTS_DIRECTORY = "shared-transcripts";
+    /** How long a shared transcript file is kept for its receiver, after which the next share deletes it. */
+    private static final long SHARED_TRANSCRIPT_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    /** Writes transcripts to be shared as files, one at a time off the main thread. */
+    private static final ExecutorService TRANSCRIPT_WRITER = Executors.newSingleThreadExecutor();
+
     public TermuxTerminalViewClient(@NonNull TermuxActivity activity, TermuxTerminalSessionActivityClient termuxTerminalSessionActivityClient) {
         this.mActivity = activity;
         this.mTermuxTerminalSessionActivityClient = termuxTerminalSessionActivityClient;
@@ -69,7 +92,11 @@ public final class TermuxTerminalViewClient implements TerminalViewClient {
         TerminalSession session = mActivity.getCurrentSession();
         if (session != null) {
             TerminalEmulator term = mActivity.getCurrentSession().getEmulator();
-            if (!term.isMouseTrackingActive() && !e.isFromSource(InputDevice.SOURCE_MOUSE)) {
+            boolean mouseTrackingActive;
+            synchronized (term) {
+                mouseTrackingActive = term.isMouseTrackingActive();
+            }
+            if (!mouseTrackingActive && !e.isFromSource(InputDevice.SOURCE_MOUSE)) {
                 mActivity.getSystemService(InputMethodManager.class).showSoftInput(mActivity.getTerminalView(), 0);
             }
         }
@@ -331,7 +358,11 @@ public final class TermuxTerminalViewClient implements TerminalViewClient {
 
             if (resultingKeyCode != -1) {
                 TerminalEmulator term = session.getEmulator();
-                session.write(KeyHandler.getCode(resultingKeyCode, 0, term.isCursorKeysApplicationMode(), term.isKeypadApplicationMode()));
+                String code;
+                synchronized (term) {
+                    code = KeyHandler.getCode(resultingKeyCode, 0, term.isCursorKeysApplicationMode(), term.isKeypadApplicationMode());
+                }
+                session.write(code);
             } else if (resultingCodePoint != -1) {
                 session.writeCodePoint(altDown, resultingCodePoint);
             }
@@ -367,9 +398,61 @@ public final class TermuxTerminalViewClient implements TerminalViewClient {
         if (terminalEmulator == null) return;
         TerminalBuffer terminalBuffer = terminalEmulator.getScreen();
         if (terminalBuffer == null) return;
-        String sessionTranscript = terminalBuffer.getTranscriptTextWithoutJoinedLines().trim();
-        TermuxUrlUtils.shareText(mActivity, mActivity.getString(R.string.title_share_transcript),
-            sessionTranscript, mActivity.getString(R.string.title_share_transcript_with));
+
+        if ((long) terminalBuffer.getActiveRows() * terminalEmulator.mColumns <= MAX_SHARED_TRANSCRIPT_TEXT_LENGTH) {
+            String sessionTranscript;
+            synchronized (terminalEmulator) {
+                sessionTranscript = terminalBuffer.getTranscriptTextWithoutJoinedLines().trim();
+            }
+            TermuxUrlUtils.shareText(mActivity, mActivity.getString(R.string.title_share_transcript),
+                sessionTranscript, mActivity.getString(R.string.title_share_transcript_with));
+            return;
+        }
+
+        // Write the transcript a row at a time instead of building a string of it all, and off the main thread as
+        // with archived pages it may be of any size. Each share has a file of its own, as an earlier receiver may still
+        // be reading its file.
+        final File directory = new File(mActivity.getCacheDir(), SHARED_TRANSCRIPTS_DIRECTORY);
+        TRANSCRIPT_WRITER.execute(() -> {
+            deleteOldSharedTranscripts(directory);
+            final File transcriptFile;
+            try {
+                //noinspection ResultOfMethodCallIgnored
+                directory.mkdirs();
+                transcriptFile = File.createTempFile("transcript", ".txt", directory);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to create transcript file in " + directory, e);
+                return;
+            }
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(transcriptFile), StandardCharsets.UTF_8))) {
+                synchronized (terminalEmulator) {
+                    terminalBuffer.writeTranscriptText(writer, false, false);
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to write transcript to " + transcriptFile, e);
+                //noinspection ResultOfMethodCallIgnored
+                transcriptFile.delete();
+                return;
+            }
+            mActivity.runOnUiThread(() -> {
+                if (!mActivity.isVisible()) return;
+                TermuxUrlUtils.shareTextFile(mActivity, mActivity.getString(R.string.title_share_transcript),
+                    transcriptFile, mActivity.getString(R.string.title_share_transcript_with));
+            });
+        });
+    }
+
+    /** Delete the files of transcripts shared long enough ago for their receivers to be done reading them. */
+    private static void deleteOldSharedTranscripts(File directory) {
+        File[] transcriptFiles = directory.listFiles();
+        if (transcriptFiles == null) return;
+        final long now = System.currentTimeMillis();
+        for (File transcriptFile : transcriptFiles) {
+            if (now - transcriptFile.lastModified() > SHARED_TRANSCRIPT_MAX_AGE_MILLIS) {
+                //noinspection ResultOfMethodCallIgnored
+                transcriptFile.delete();
+            }
+        }
     }
 
     public void shareSelectedText() {
@@ -387,7 +470,10 @@ public final class TermuxTerminalViewClient implements TerminalViewClient {
         if (terminalEmulator == null) return;
         TerminalBuffer terminalBuffer = terminalEmulator.getScreen();
         if (terminalBuffer == null) return;
-        String sessionTranscript = terminalBuffer.getTranscriptTextWithFullLinesJoined().trim();
+        String sessionTranscript;
+        synchronized (terminalEmulator) {
+            sessionTranscript = terminalBuffer.getTranscriptTextWithFullLinesJoined().trim();
+        }
 
         LinkedHashSet<CharSequence> urlSet = TermuxUrlUtils.extractUrls(sessionTranscript);
         if (urlSet.isEmpty()) {
@@ -426,7 +512,7 @@ public final class TermuxTerminalViewClient implements TerminalViewClient {
 
         String text = TermuxUrlUtils.getTextStringFromClipboardIfSet(mActivity, true);
         if (text != null) {
-            session.getEmulator().paste(text);
+            mActivity.getTerminalView().paste(text);
         }
     }
 
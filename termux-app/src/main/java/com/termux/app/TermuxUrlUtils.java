@@ -11,6 +11,7 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.File;
 import java.util.LinkedHashSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -161,6 +162,26 @@ public class TermuxUrlUtils {
         openSystemAppChooser(context, shareTextIntent, (title == null) ? context.getString(com.termux.R.string.title_share_with) : title);
     }
 
+    /**
+     * Share a text file, for text too large to fit in an intent. The file is read through the
+     * content provider used by termux-share.
+     *
+     * @param context The context for operations.
+     * @param subject The subject for sharing.
+     * @param file The text file to share.
+     * @param title The title for share menu.
+     */
+    public static void shareTextFile(@NonNull Context context, String subject, @NonNull File file, @Nullable final String title) {
+        Uri uri = new Uri.Builder().scheme("content").authority("com.termux.sharedfile").path(file.getAbsolutePath()).build();
+        var shareFileIntent = new Intent(Intent.ACTION_SEND)
+            .setType("text/plain")
+            .putExtra(Intent.EXTRA_SUBJECT, subject)
+            .putExtra(Intent.EXTRA_STREAM, uri)
+            .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+        openSystemAppChooser(context, shareFileIntent, (title == null) ? context.getString(com.termux.R.string.title_share_with) : title);
+    }
+
 
 
     /** Wrapper for {@link #copyTextToClipboard(Context, String, String, String)} with `null` `clipDataLabel` and `toastString`. */